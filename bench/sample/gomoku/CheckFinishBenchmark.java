@@ -0,0 +1,74 @@
+package sample.gomoku;
+
+import java.util.Random;
+
+import vip2011.tic.Board;
+import vip2011.tic.HeadlessRunner;
+import vip2011.tic.bench.Benchmark;
+
+/**
+ * {@link Gomoku#checkFinish(int, int)} を計測するベンチマークです。
+ * 
+ * <p>指定した割合のマスに石をランダムに置いた局面で、石の置かれたマスを順に判定します。</p>
+ */
+public class CheckFinishBenchmark extends Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private static final int SIZE = 20;
+
+	private final double density;
+
+	private Gomoku game;
+	private int[] xs, ys;
+	private int cursor;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した割合で石が置かれた局面で計測するベンチマークを作成します。
+	 * 
+	 * @param density 石が置かれたマスの割合
+	 */
+	public CheckFinishBenchmark(double density) {
+		super("Gomoku.checkFinish(" + (int)(density * 100) + "% filled)");
+		this.density = density;
+	}
+
+	@Override
+	public void setup() {
+		game = new Gomoku();
+		game.setComputer(Board.NODATA);
+		new HeadlessRunner(game, 640, 480).initialize();
+
+		Board board = new Board(SIZE, SIZE);
+		Random random = new Random(42);
+		int n = 0;
+		for (int y = 0; y < SIZE; ++y)
+			for (int x = 0; x < SIZE; ++x)
+				if (random.nextDouble() < density) {
+					board.setData(x, y, random.nextBoolean() ? Gomoku.FIRST : Gomoku.SECOND);
+					++n;
+				}
+		game.load(board);
+
+		xs = new int[Math.max(1, n)];
+		ys = new int[xs.length];
+		n = 0;
+		for (int y = 0; y < SIZE; ++y)
+			for (int x = 0; x < SIZE; ++x)
+				if (board.getData(x, y) != Board.NODATA) {
+					xs[n] = x;
+					ys[n] = y;
+					++n;
+				}
+	}
+
+	@Override
+	public int operation(int thread) {
+		int i = cursor;
+		cursor = (i + 1 < xs.length) ? i + 1 : 0;
+		return game.checkFinish(xs[i], ys[i]) ? 1 : 0;
+	}
+}
@@ -0,0 +1,41 @@
+package sample.gomoku;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import vip2011.tic.bench.Benchmark;
+import vip2011.tic.bench.BenchmarkRunner;
+
+/**
+ * 五目並べのサンプルのベンチマークを実行するプログラムです。
+ * 引数は {@link BenchmarkRunner} と同じです。
+ * <code><pre>
+ * java -cp bin sample.gomoku.GomokuBenchmarkRunner [-wi 回数] [-i 回数] [-r ミリ秒] [名前の一部 ...]
+ * </pre></code>
+ */
+public class GomokuBenchmarkRunner {
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 五目並べのサンプルの全てのベンチマークを作成します。
+	 * 
+	 * @return ベンチマークのリスト
+	 */
+	public static List<Benchmark> createAll() {
+		List<Benchmark> list = new ArrayList<Benchmark>();
+		list.add(new CheckFinishBenchmark(0.1));
+		list.add(new CheckFinishBenchmark(0.9));
+		list.add(new ReplayBenchmark(10000));
+		return list;
+	}
+
+	/**
+	 * コマンドライン引数に従ってベンチマークを実行します。
+	 * 
+	 * @param args コマンドライン引数
+	 */
+	public static void main(String[] args) {
+		BenchmarkRunner.runAll(createAll(), args);
+	}
+}
@@ -0,0 +1,87 @@
+package sample.gomoku;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import vip2011.tic.Board;
+import vip2011.tic.HeadlessRunner;
+import vip2011.tic.InputRecorder;
+import vip2011.tic.InputReplay;
+import vip2011.tic.bench.Benchmark;
+
+/**
+ * 記録した入力による {@link Gomoku} の再生を、1フレームずつ計測するベンチマークです。
+ * 
+ * <p>二人対戦のゲームに、固定の種から作ったマウスの移動とクリックを与えて記録し、
+ * その記録を {@link InputReplay} で繰り返し再生します。記録の最後まで再生したら、新しいゲームで最初から再生し直します。</p>
+ */
+public class ReplayBenchmark extends Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private static final int WIDTH  = 640;
+	private static final int HEIGHT = 480;
+
+	private final int frames;
+
+	private byte[] log;
+	private InputReplay replay;
+	private HeadlessRunner runner;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したフレーム数の記録を再生するベンチマークを作成します。
+	 * 
+	 * @param frames 記録のフレーム数
+	 */
+	public ReplayBenchmark(int frames) {
+		super("Gomoku.replay(" + frames + " frames)");
+		this.frames = frames;
+	}
+
+	@Override
+	public void setup() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		InputRecorder recorder = new InputRecorder(out);
+		HeadlessRunner r = createRunner();
+		Gomoku game = (Gomoku)r.getGame();
+		r.setInputRecorder(recorder);
+		Random random = new Random(42);
+		for (int i = 0; i < frames; ++i) {
+			if (random.nextInt(4) == 0)
+				game.getInput().moveMouse(random.nextInt(WIDTH), random.nextInt(HEIGHT));
+			if (random.nextInt(20) == 0) {
+				game.getInput().pressButton(1);
+				game.getInput().releaseButton(1);
+			}
+			r.step();
+		}
+		try {
+			recorder.close();
+			log = out.toByteArray();
+			replay = new InputReplay(log);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		runner = createRunner();
+	}
+
+	private static HeadlessRunner createRunner() {
+		Gomoku game = new Gomoku();
+		game.setComputer(Board.NODATA);
+		return new HeadlessRunner(game, WIDTH, HEIGHT);
+	}
+
+	@Override
+	public int operation(int thread) {
+		if (!replay.step(runner)) {
+			replay.rewind();
+			runner = createRunner();
+			replay.step(runner);
+		}
+		return (int)replay.getFrameCount();
+	}
+}
@@ -0,0 +1,89 @@
+package vip2011.tic.bench;
+
+/**
+ * {@link BenchmarkRunner} で計測する1つのベンチマークを表すクラスです。
+ * 
+ * <p>{@link #setup()} で計測対象を準備し、{@link #operation(int)} に計測したい処理を1回分だけ書いてください。
+ * 処理の結果は戻り値として返すと、JIT コンパイラによって処理そのものが消されることを防げます。
+ * 複数のスレッドで計測する場合、{@link #operation(int)} は各スレッドから同時に呼び出されます。</p>
+ */
+public abstract class Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final String name;
+	private final int threads;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 1つのスレッドで計測するベンチマークを作成します。
+	 * 
+	 * @param name ベンチマークの名前
+	 */
+	protected Benchmark(String name) {
+		this(name, 1);
+	}
+
+	/**
+	 * 指定したスレッド数で計測するベンチマークを作成します。
+	 * 
+	 * @param name ベンチマークの名前
+	 * @param threads スレッド数
+	 */
+	protected Benchmark(String name, int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("不正なスレッド数です。");
+		this.name = name;
+		this.threads = threads;
+	}
+
+	/**
+	 * 計測の前に一度だけ呼び出されます。
+	 */
+	public void setup() {
+	}
+
+	/**
+	 * 計測する処理を1回分実行します。
+	 * 
+	 * @param thread 呼び出したスレッドの番号（0 から {@link #getThreads()} - 1）
+	 * @return 処理の結果
+	 */
+	public abstract int operation(int thread);
+
+	/**
+	 * 計測の後に一度だけ呼び出されます。
+	 */
+	public void teardown() {
+	}
+
+	/**
+	 * レイテンシの標本1つあたりの処理回数を取得します。
+	 * 1回の処理が時間的に十分に長い場合は、オーバライドして小さな値を返してください。
+	 * 
+	 * @return 標本1つあたりの処理回数
+	 */
+	public int getBatchSize() {
+		return BenchmarkRunner.DEFAULT_BATCH;
+	}
+
+	/**
+	 * ベンチマークの名前を取得します。
+	 * 
+	 * @return ベンチマークの名前
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 計測に使うスレッド数を取得します。
+	 * 
+	 * @return スレッド数
+	 */
+	public int getThreads() {
+		return threads;
+	}
+}
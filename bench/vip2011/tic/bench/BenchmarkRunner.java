@@ -0,0 +1,342 @@
+package vip2011.tic.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * tic フレームワークの主要な処理のスループットとレイテンシを計測するプログラムです。
+ * 
+ * <p>ベンチマークごとに、ウォームアップの後で一定時間の計測を繰り返し、1秒あたりの処理回数の平均と
+ * 99.9% 信頼区間を出力します。レイテンシは {@link Benchmark#getBatchSize()} 回の処理をまとめて計った1回あたりの時間を
+ * 標本として、その分位点を出力します。乱数の種は固定されているため、同じ環境では同じ処理が計測されます。</p>
+ * <code><pre>
+ * java -cp bin vip2011.tic.bench.BenchmarkRunner [-wi 回数] [-i 回数] [-r ミリ秒] [名前の一部 ...]
+ * </pre></code>
+ * 
+ * <p>名前の一部を指定した場合は、名前にそれを含むベンチマークだけを実行します。
+ * サンプルのベンチマークは、それぞれのパッケージの実行クラス（sample.gomoku.GomokuBenchmarkRunner など）から
+ * {@link #runAll(List, String[])} で実行します。</p>
+ */
+public class BenchmarkRunner {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** レイテンシの標本1つあたりの処理回数の既定値です。 */
+	public static final int DEFAULT_BATCH = 64;
+
+	/* 1スレッド・1回の計測で保持する標本数の上限 */
+	private static final int MAX_SAMPLES = 1 << 16;
+
+	/* 99.9% 信頼区間に対応する正規分布の分位点 */
+	private static final double Z_999 = 3.291;
+
+	/* 処理の結果の書き込み先 */
+	private static volatile long sink;
+
+	private int warmupIterations = 5;
+	private int iterations = 10;
+	private long iterationTime = 500;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * フレームワークの全てのベンチマークを作成します。
+	 * 
+	 * @return ベンチマークのリスト
+	 */
+	public static List<Benchmark> createAll() {
+		List<Benchmark> list = new ArrayList<Benchmark>();
+		for (int size : new int[] { 20, 64, 256 }) {
+			list.add(new BoardBenchmark(BoardBenchmark.SET_DATA, size));
+			list.add(new BoardBenchmark(BoardBenchmark.GET_DATA, size));
+			list.add(new BoardBenchmark(BoardBenchmark.FILL_RECT, size));
+			list.add(new BoardBenchmark(BoardBenchmark.FILL_OVAL, size));
+			list.add(new BoardBenchmark(BoardBenchmark.MOVE_DATA, size));
+		}
+		list.add(new DrawerBenchmark(20, 20));
+		list.add(new DrawerBenchmark(64, 8));
+		list.add(new DrawerBenchmark(256, 2));
+		list.add(new DrawerBenchmark(20, 20, true));
+		list.add(new DrawerBenchmark(64, 8, true));
+		list.add(new DrawerBenchmark(256, 2, true));
+		list.add(new DrawerBenchmark(512, 2, true));
+		list.add(new ViewportBenchmark(1024, 0));
+		list.add(new ViewportBenchmark(4096, 0));
+		list.add(new ViewportBenchmark(4096, -4));
+		list.add(new InputSourceBenchmark(1));
+		list.add(new InputSourceBenchmark(2));
+		return list;
+	}
+
+	/**
+	 * コマンドライン引数に従ってベンチマークを実行します。
+	 * 
+	 * @param args コマンドライン引数
+	 */
+	public static void main(String[] args) {
+		runAll(createAll(), args);
+	}
+
+	/**
+	 * コマンドライン引数に従って、指定したベンチマークのうち名前が一致するものを実行し、結果を出力します。
+	 * 
+	 * @param benchmarks ベンチマークのリスト
+	 * @param args コマンドライン引数
+	 */
+	public static void runAll(List<Benchmark> benchmarks, String[] args) {
+		BenchmarkRunner runner = new BenchmarkRunner();
+		List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("-wi"))
+				runner.setWarmupIterations(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-i"))
+				runner.setIterations(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-r"))
+				runner.setIterationTime(Long.parseLong(args[++i]));
+			else
+				filters.add(args[i]);
+		}
+
+		System.out.println("# " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version")
+				+ ", " + Runtime.getRuntime().availableProcessors() + " processors");
+		System.out.println("# warmup " + runner.warmupIterations + " x " + runner.iterationTime + " ms, measurement "
+				+ runner.iterations + " x " + runner.iterationTime + " ms");
+		System.out.println(String.format("%-40s %3s %14s %12s %9s %9s %9s %9s",
+				"Benchmark", "Thr", "ops/s", "error", "p50(ns)", "p90(ns)", "p99(ns)", "max(ns)"));
+
+		for (Benchmark b : benchmarks) {
+			if (!filters.isEmpty()) {
+				boolean match = false;
+				for (String f : filters)
+					match |= b.getName().contains(f);
+				if (!match)
+					continue;
+			}
+			System.out.println(runner.run(b));
+		}
+	}
+
+	/**
+	 * ウォームアップの回数を設定します。
+	 * 
+	 * @param warmupIterations ウォームアップの回数
+	 */
+	public void setWarmupIterations(int warmupIterations) {
+		this.warmupIterations = warmupIterations;
+	}
+
+	/**
+	 * 計測の回数を設定します。
+	 * 
+	 * @param iterations 計測の回数
+	 */
+	public void setIterations(int iterations) {
+		if (iterations <= 0)
+			throw new IllegalArgumentException("不正な計測回数です。");
+		this.iterations = iterations;
+	}
+
+	/**
+	 * 1回の計測の時間を設定します。
+	 * 
+	 * @param iterationTime 1回の計測の時間(ms)
+	 */
+	public void setIterationTime(long iterationTime) {
+		if (iterationTime <= 0)
+			throw new IllegalArgumentException("不正な計測時間です。");
+		this.iterationTime = iterationTime;
+	}
+
+	/**
+	 * 指定したベンチマークを実行します。
+	 * 
+	 * @param benchmark ベンチマーク
+	 * @return 計測結果
+	 */
+	public Result run(Benchmark benchmark) {
+		benchmark.setup();
+		try {
+			for (int i = 0; i < warmupIterations; ++i)
+				iterate(benchmark, null);
+
+			double[] throughput = new double[iterations];
+			List<long[]> samples = new ArrayList<long[]>();
+			for (int i = 0; i < iterations; ++i) {
+				System.gc();
+				throughput[i] = iterate(benchmark, samples);
+			}
+			return new Result(benchmark, throughput, merge(samples));
+		} finally {
+			benchmark.teardown();
+		}
+	}
+
+	/*
+	 * 1回分の計測を行い、スループット(ops/s)を返す。samples が null でなければ標本を追加する。
+	 */
+	private double iterate(final Benchmark benchmark, List<long[]> samples) {
+		int n = benchmark.getThreads();
+		final CountDownLatch ready = new CountDownLatch(n);
+		final CountDownLatch start = new CountDownLatch(1);
+		final Worker[] workers = new Worker[n];
+		Thread[] threads = new Thread[n];
+		for (int i = 0; i < n; ++i) {
+			workers[i] = new Worker(benchmark, i, ready, start);
+			threads[i] = new Thread(workers[i], benchmark.getName() + "-" + i);
+			threads[i].start();
+		}
+
+		try {
+			ready.await();
+			start.countDown();
+			Thread.sleep(iterationTime);
+			for (Worker w : workers)
+				w.running = false;
+			for (Thread t : threads)
+				t.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		long ops = 0, elapsed = 0;
+		for (Worker w : workers) {
+			if (w.error != null)
+				throw new RuntimeException(w.error);
+			ops += w.ops;
+			elapsed = Math.max(elapsed, w.elapsed);
+			if (samples != null)
+				samples.add(Arrays.copyOf(w.samples, Math.min(w.count, MAX_SAMPLES)));
+		}
+		return ops * 1e9 / elapsed;
+	}
+
+	/*
+	 * 標本を1つの整列済み配列にまとめる
+	 */
+	private static long[] merge(List<long[]> samples) {
+		int length = 0;
+		for (long[] s : samples)
+			length += s.length;
+		long[] all = new long[length];
+		int offset = 0;
+		for (long[] s : samples) {
+			System.arraycopy(s, 0, all, offset, s.length);
+			offset += s.length;
+		}
+		Arrays.sort(all);
+		return all;
+	}
+
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/**
+	 * 1つのベンチマークの計測結果です。
+	 */
+	public static class Result {
+		private final Benchmark benchmark;
+		private final double mean, error;
+		private final long[] latency;
+
+		Result(Benchmark benchmark, double[] throughput, long[] latency) {
+			this.benchmark = benchmark;
+			this.latency = latency;
+
+			double sum = 0;
+			for (double t : throughput)
+				sum += t;
+			mean = sum / throughput.length;
+			double var = 0;
+			for (double t : throughput)
+				var += (t - mean) * (t - mean);
+			error = (throughput.length > 1)
+					? Z_999 * Math.sqrt(var / (throughput.length - 1)) / Math.sqrt(throughput.length) : 0;
+		}
+
+		/**
+		 * 1秒あたりの処理回数の平均を取得します。
+		 * 
+		 * @return スループット(ops/s)
+		 */
+		public double getThroughput() {
+			return mean;
+		}
+
+		/**
+		 * スループットの 99.9% 信頼区間の幅（片側）を取得します。
+		 * 
+		 * @return スループットの誤差(ops/s)
+		 */
+		public double getError() {
+			return error;
+		}
+
+		/**
+		 * 1回あたりの処理時間の分位点を取得します。
+		 * 
+		 * @param p 0 以上 1 以下の割合
+		 * @return 処理時間(ns)、標本が無い場合は 0
+		 */
+		public long getLatency(double p) {
+			if (latency.length == 0)
+				return 0;
+			int i = (int)Math.ceil(p * latency.length) - 1;
+			return latency[Math.max(0, Math.min(latency.length - 1, i))];
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-40s %3d %,14.0f %,12.0f %9d %9d %9d %9d",
+					benchmark.getName(), benchmark.getThreads(), mean, error,
+					getLatency(0.5), getLatency(0.9), getLatency(0.99), getLatency(1.0));
+		}
+	}
+
+	/*
+	 * 計測スレッド。指定された回数ごとに時間を計り、標本を環状に保持する。
+	 */
+	private static class Worker implements Runnable {
+		private final Benchmark benchmark;
+		private final int index;
+		private final CountDownLatch ready, start;
+
+		volatile boolean running = true;
+		long ops, elapsed;
+		long[] samples = new long[MAX_SAMPLES];
+		int count;
+		Throwable error;
+
+		Worker(Benchmark benchmark, int index, CountDownLatch ready, CountDownLatch start) {
+			this.benchmark = benchmark;
+			this.index = index;
+			this.ready = ready;
+			this.start = start;
+		}
+
+		public void run() {
+			try {
+				ready.countDown();
+				start.await();
+				int batch = benchmark.getBatchSize();
+				long result = 0;
+				long begin = System.nanoTime();
+				while (running) {
+					long t0 = System.nanoTime();
+					for (int i = 0; i < batch; ++i)
+						result += benchmark.operation(index);
+					long t1 = System.nanoTime();
+					samples[count++ & (MAX_SAMPLES - 1)] = (t1 - t0) / batch;
+					ops += batch;
+				}
+				elapsed = System.nanoTime() - begin;
+				sink += result;
+			} catch (Throwable e) {
+				error = e;
+			}
+		}
+	}
+}
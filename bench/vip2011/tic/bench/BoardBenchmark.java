@@ -0,0 +1,114 @@
+package vip2011.tic.bench;
+
+import java.util.Random;
+
+import vip2011.tic.Board;
+import vip2011.tic.DirtyRegion;
+
+/**
+ * {@link Board} の読み書きを計測するベンチマークです。
+ * 
+ * <p>座標や大きさは固定の種から作った乱数の表を順に使うため、毎回同じ順序で処理されます。</p>
+ */
+public class BoardBenchmark extends Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** {@link Board#setData(int, int, int)} を計測します。 */
+	public static final int SET_DATA  = 0;
+
+	/** {@link Board#getData(int, int)} を計測します。 */
+	public static final int GET_DATA  = 1;
+
+	/** {@link Board#fillRect(int, int, int, int, int)} を計測します。 */
+	public static final int FILL_RECT = 2;
+
+	/** {@link Board#fillOval(int, int, int, int, int)} を計測します。 */
+	public static final int FILL_OVAL = 3;
+
+	/** {@link Board#moveData(int, int, int, int)} を計測します。 */
+	public static final int MOVE_DATA = 4;
+
+	private static final String[] NAMES = { "setData", "getData", "fillRect", "fillOval", "moveData" };
+
+	/* 乱数の表の大きさ */
+	private static final int TABLE = 1024;
+
+	private final int kind;
+	private final int size;
+
+	private Board board;
+	private DirtyRegion dirty;
+	private int[] xs, ys, ws, hs, values;
+	private int cursor;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した処理を、指定した大きさの正方形のボードで計測するベンチマークを作成します。
+	 * 
+	 * @param kind 計測する処理（{@link #SET_DATA} など）
+	 * @param size ボードの一辺のマス数
+	 */
+	public BoardBenchmark(int kind, int size) {
+		super("Board." + NAMES[kind] + "(" + size + "x" + size + ")");
+		this.kind = kind;
+		this.size = size;
+	}
+
+	@Override
+	public void setup() {
+		board = new Board(size, size);
+		dirty = new DirtyRegion();
+		Random random = new Random(42);
+		for (int y = 0; y < size; ++y)
+			for (int x = 0; x < size; ++x)
+				if (random.nextInt(4) == 0)
+					board.setData(x, y, 1 + random.nextInt(3));
+
+		xs = new int[TABLE];
+		ys = new int[TABLE];
+		ws = new int[TABLE];
+		hs = new int[TABLE];
+		values = new int[TABLE];
+		// fillOval は細長い楕円や周囲1マスで矩形からはみ出すことがあるため、円にして周囲を1マス空ける
+		int maxExtent = Math.max(1, size / 4);
+		for (int i = 0; i < TABLE; ++i) {
+			ws[i] = 1 + random.nextInt(maxExtent);
+			hs[i] = (kind == FILL_OVAL) ? ws[i] : 1 + random.nextInt(maxExtent);
+			xs[i] = 1 + random.nextInt(size - ws[i] - 1);
+			ys[i] = 1 + random.nextInt(size - hs[i] - 1);
+			values[i] = random.nextInt(4);
+		}
+	}
+
+	@Override
+	public int operation(int thread) {
+		int i = cursor;
+		int j = (i + 1) & (TABLE - 1);
+		cursor = j;
+
+		switch (kind) {
+		case SET_DATA:
+			board.setData(xs[i], ys[i], values[i]);
+			break;
+		case GET_DATA:
+			return board.getData(xs[i], ys[i]);
+		case FILL_RECT:
+			board.fillRect(xs[i], ys[i], ws[i], hs[i], values[i]);
+			break;
+		case FILL_OVAL:
+			board.fillOval(xs[i], ys[i], ws[i], hs[i], values[i]);
+			break;
+		case MOVE_DATA:
+			board.moveData(xs[i], ys[i], xs[j], ys[j]);
+			break;
+		}
+
+		// 描画側と同じように、変更されたマスを定期的に回収する
+		if (j == 0)
+			board.drainDirty(dirty);
+		return i;
+	}
+}
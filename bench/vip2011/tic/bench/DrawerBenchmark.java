@@ -0,0 +1,93 @@
+package vip2011.tic.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import vip2011.tic.Board;
+import vip2011.tic.BoardDrawer;
+
+/**
+ * {@link BoardDrawer#draw(java.awt.Graphics, int, int)} でオフスクリーンの画像に描画する処理を計測するベンチマークです。
+ * 直接描画を指定した場合は {@link BoardDrawer#draw(BufferedImage, int, int)} を計測します。
+ */
+public class DrawerBenchmark extends Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final int size;
+	private final int cellSize;
+	private final boolean direct;
+
+	private Board board;
+	private BoardDrawer drawer;
+	private BufferedImage image;
+	private Graphics2D graphics;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した大きさのボードを、指定したマスのサイズで描画するベンチマークを作成します。
+	 * 
+	 * @param size ボードの一辺のマス数
+	 * @param cellSize マスのサイズ
+	 */
+	public DrawerBenchmark(int size, int cellSize) {
+		this(size, cellSize, false);
+	}
+
+	/**
+	 * 指定した大きさのボードを、指定したマスのサイズと方法で描画するベンチマークを作成します。
+	 * 
+	 * @param size ボードの一辺のマス数
+	 * @param cellSize マスのサイズ
+	 * @param direct 画像の画素に直接描画するかどうか
+	 */
+	public DrawerBenchmark(int size, int cellSize, boolean direct) {
+		super("BoardDrawer.draw" + (direct ? "Direct" : "") + "(" + size + "x" + size + ", cell " + cellSize + ")");
+		this.size = size;
+		this.cellSize = cellSize;
+		this.direct = direct;
+	}
+
+	@Override
+	public void setup() {
+		board = new Board(size, size);
+		Random random = new Random(42);
+		for (int y = 0; y < size; ++y)
+			for (int x = 0; x < size; ++x)
+				if (random.nextInt(3) == 0)
+					board.setData(x, y, 1 + random.nextInt(2));
+
+		drawer = board.createDrawer(cellSize, 1, Color.BLACK);
+		drawer.bindColor(1, Color.BLUE);
+		drawer.bindColor(2, Color.RED);
+		drawer.bindColor(3, new Color(128, 128, 128, 128));
+		drawer.setCursor(size / 2, size / 2, 3);
+
+		int pixels = size * (cellSize + 1) + 1;
+		image = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
+		graphics = image.createGraphics();
+	}
+
+	@Override
+	public int operation(int thread) {
+		if (direct)
+			drawer.draw(image, 0, 0);
+		else
+			drawer.draw(graphics, 0, 0);
+		return image.getRGB(0, 0);
+	}
+
+	@Override
+	public int getBatchSize() {
+		return 1;
+	}
+
+	@Override
+	public void teardown() {
+		graphics.dispose();
+	}
+}
@@ -0,0 +1,72 @@
+package vip2011.tic.bench;
+
+import java.awt.event.KeyEvent;
+
+import vip2011.tic.event.InputSource;
+import vip2011.tic.event.Key;
+
+/**
+ * 入力の通知からゲームループでの問い合わせまでの処理を計測するベンチマークです。
+ * 
+ * <p>ホストと同じく、通知は1つのスレッドから {@link InputSource#pressKey(int)} と
+ * {@link InputSource#releaseKey(int)} で行い、ゲームループに相当する1つのスレッドが
+ * {@link InputSource#latch()} でフレームを進めてから {@link Key#isDown()} と {@link Key#isHold()} で状態を問い合わせます。
+ * スレッド数が1の場合は {@link vip2011.tic.HeadlessRunner} と同じく同じスレッドで、
+ * 2の場合はアプレットと同じく通知するスレッドとゲームループのスレッドに分けて計測します。</p>
+ */
+public class InputSourceBenchmark extends Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/* スレッドごとのカウンタの間隔（偽共有を避ける） */
+	private static final int PADDING = 16;
+
+	private InputSource input;
+	private Key key;
+	private int[] counters;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したスレッド数で計測するベンチマークを作成します。
+	 * 
+	 * @param threads スレッド数（1：通知と問い合わせを同じスレッドで行う、2：別のスレッドで行う）
+	 */
+	public InputSourceBenchmark(int threads) {
+		super("InputSource(" + ((threads == 1) ? "1 thread" : "producer+consumer") + ")", threads);
+		if (threads > 2)
+			throw new IllegalArgumentException("不正なスレッド数です。");
+	}
+
+	@Override
+	public void setup() {
+		input = new InputSource();
+		key = input.getKey(KeyEvent.VK_SPACE);
+		counters = new int[getThreads() * PADDING];
+	}
+
+	@Override
+	public int operation(int thread) {
+		int n = counters[thread * PADDING]++;
+		if (getThreads() == 1) {
+			// 1フレームに押して離す通知を1組ずつ入れる
+			switch (n & 7) {
+			case 0: input.latch(); return 0;
+			case 1: input.pressKey(KeyEvent.VK_SPACE); return 0;
+			case 5: input.releaseKey(KeyEvent.VK_SPACE); return 0;
+			}
+		} else if (thread == 0) {
+			// 通知するスレッド。リングバッファが満杯の間は捨てられる
+			if ((n & 1) == 0)
+				input.pressKey(KeyEvent.VK_SPACE);
+			else
+				input.releaseKey(KeyEvent.VK_SPACE);
+			return n;
+		} else if ((n & 7) == 0) {
+			input.latch();
+			return input.getEventCount();
+		}
+		return ((n & 1) == 0) ? (key.isDown() ? 1 : 0) : (key.isHold() ? 1 : 0);
+	}
+}
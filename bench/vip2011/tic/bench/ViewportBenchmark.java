@@ -0,0 +1,94 @@
+package vip2011.tic.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import vip2011.tic.Board;
+import vip2011.tic.BoardViewport;
+
+/**
+ * {@link BoardViewport} で大きなボードをスクロールしながら描画する処理を計測するベンチマークです。
+ * 
+ * <p>1回の処理は1フレームに相当し、ボードのランダムなマスを数個変更してから表示範囲を少し動かし、
+ * 800x600 の画像に描画します。描画時間がボードの大きさに依存しないことを確認するために利用します。</p>
+ */
+public class ViewportBenchmark extends Benchmark {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private static final int SCREEN_WIDTH  = 800;
+	private static final int SCREEN_HEIGHT = 600;
+
+	/* 1フレームあたりに変更するマスの数 */
+	private static final int CHANGES = 8;
+
+	private final int size;
+	private final int zoom;
+
+	private Board board;
+	private BoardViewport viewport;
+	private BufferedImage image;
+	private Graphics2D graphics;
+	private Random random;
+	private int frame;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した大きさのボードを、指定した拡大率で表示するベンチマークを作成します。
+	 * 
+	 * @param size ボードの一辺のマス数
+	 * @param zoom 拡大率
+	 */
+	public ViewportBenchmark(int size, int zoom) {
+		super("BoardViewport.draw(" + size + "x" + size + ", zoom " + zoom + ")");
+		this.size = size;
+		this.zoom = zoom;
+	}
+
+	@Override
+	public void setup() {
+		board = new Board(size, size);
+		random = new Random(42);
+		for (int i = size * size / 8; i > 0; --i)
+			board.setData(random.nextInt(size), random.nextInt(size), 1 + random.nextInt(2));
+
+		viewport = board.createViewport(4, 1, Color.BLACK);
+		viewport.bindColor(1, Color.BLUE);
+		viewport.bindColor(2, Color.RED);
+		viewport.setSize(SCREEN_WIDTH, SCREEN_HEIGHT);
+		viewport.setZoom(zoom);
+		viewport.centerOn(size / 2, size / 2);
+
+		image = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		graphics = image.createGraphics();
+	}
+
+	@Override
+	public int operation(int thread) {
+		for (int i = 0; i < CHANGES; ++i)
+			board.setData(random.nextInt(size), random.nextInt(size), random.nextInt(3));
+
+		// 中央付近を円を描くように動かす
+		int f = frame++ & 255;
+		int dx = (f < 64 || f >= 192) ? 3 : -3;
+		int dy = (f < 128) ? 2 : -2;
+		viewport.scrollBy(dx, dy);
+
+		viewport.draw(graphics, 0, 0);
+		return image.getRGB(0, 0);
+	}
+
+	@Override
+	public int getBatchSize() {
+		return 1;
+	}
+
+	@Override
+	public void teardown() {
+		graphics.dispose();
+	}
+}
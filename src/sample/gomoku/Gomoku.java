@@ -4,38 +4,71 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.event.MouseEvent;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import vip2011.tic.Board;
 import vip2011.tic.BoardDrawer;
-import vip2011.tic.TICApplet;
+import vip2011.tic.TICGame;
 import vip2011.tic.event.Mouse;
 import vip2011.tic.event.MouseButton;
 
 /**
  * 五目並べっぽい何か
  * 三三とかは無視してます。
+ * 
+ * <p>アプレットとして動かす場合は {@link GomokuApplet} を利用してください。</p>
  */
-public class Gomoku extends TICApplet {
+public class Gomoku extends TICGame {
 	//-------------------------------------------------------------------------
 	// フィールド
 	//-------------------------------------------------------------------------
-	private static final long serialVersionUID = 7430678560091910053L;
-	
 	private static final int BOARD_WIDTH    = 20;
 	private static final int BOARD_HEIGHT   = 20;
 	private static final int BOARD_CELLSIZE = 20;
 
-	private static final int FIRST  = 1;
-	private static final int SECOND = 2;
+	/** 先攻のプレイヤーのID（ボードの値）です。最初の手はこのプレイヤーが置きます。 */
+	public static final int FIRST  = 1;
+	
+	/** 後攻のプレイヤーのID（ボードの値）です。 */
+	public static final int SECOND = 2;
+	
 	private static final int CURSOR = 3;
 	
+	/* 描画に使うフォントと文字列（フレームごとに作らない） */
+	private static final Font TURN_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 16);
+	private static final Font INFO_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+	private static final String[] TURN_TEXT = { "先攻の番です。", "後攻の番です。" };
+	private static final String[] WIN_TEXT  = { "先攻の勝利！", "後攻の勝利！" };
+	private static final String DRAW_TEXT = "引き分け";
+	
+	/* コンピュータの探索の深さと1手あたりの制限時間(ms) */
+	private static final int  AI_DEPTH = 10;
+	private static final long AI_TIME  = 2000;
+	
 	private Board board;
+	private GomokuBitBoard bits;
 	private BoardDrawer viewer;
 	
 	private Mouse mouse;
 	private MouseButton button1;
+	private int cursorX = -1, cursorY = -1;
+	private boolean cursorMoved;
+	
+	/* この更新で盤面や勝敗が変わったかどうか（更新の最初に消去する） */
+	private boolean changed;
 	
 	private boolean turn, finished;
+	
+	/* 勝ったプレイヤーのID（対戦中または引き分けの場合は Board.NODATA）と、置かれた石の数 */
+	private int winner = Board.NODATA;
+	private int moves;
+	
+	private int computer = Board.NODATA;
+	private GomokuAI ai;
+	private Future<SearchResult> thinking;
+	private SearchResult lastResult;
+	private String resultText;
 
 	//-------------------------------------------------------------------------
 	// メソッド
@@ -47,6 +80,7 @@ public class Gomoku extends TICApplet {
 	public void initialize() {
 		// ボードの作成
 		board = new Board(BOARD_WIDTH, BOARD_HEIGHT);
+		bits = new GomokuBitBoard(BOARD_WIDTH, BOARD_HEIGHT);
 		viewer = board.createDrawer(BOARD_CELLSIZE, 1, Color.BLACK);
 		
 		// 色を設定
@@ -60,35 +94,165 @@ public class Gomoku extends TICApplet {
 		// マウスボタンの取得
 		button1 = getButton(MouseEvent.BUTTON1);
 		
+		// コンピュータの作成
+		if (computer != Board.NODATA)
+			ai = new GomokuAI(AI_DEPTH, AI_TIME);
+		
 		// FPSを設定
 		setRequestFPS(30);
 	}
+	
+	/**
+	 * コンピュータが担当するプレイヤーを設定します。
+	 * 既定値の {@link Board#NODATA} では、二人のプレイヤーがマウスで対戦します。
+	 * このメソッドは {@link #initialize()} より前に呼び出してください。
+	 * 
+	 * <p>コンピュータの探索スレッドと置換表は、ゲームが終了した時点で解放されます。</p>
+	 * 
+	 * @param id コンピュータが担当するプレイヤーのID（{@link #FIRST}、{@link #SECOND} または {@link Board#NODATA}）
+	 */
+	public void setComputer(int id) {
+		this.computer = id;
+	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
 	public void updateFrame(long elapsed) {
+		changed = false;
 		int boardX = viewer.getCenteringX(getWidth());
 		int boardY = viewer.getCenteringY(getHeight());
 		int selX = viewer.getBoardXFromMouseX(boardX, mouse.getX());
 		int selY = viewer.getBoardYFromMouseY(boardY, mouse.getY());
 		
 		// マウスの重なっているマスの色付け
+		if (selX < 0 || selY < 0)
+			selX = selY = -1;
+		cursorMoved = (selX != cursorX || selY != cursorY);
+		cursorX = selX;
+		cursorY = selY;
 		if (0 <= selX && 0 <= selY) {
 			viewer.setCursor(selX, selY, CURSOR);
 			
 			// クリックされたマスに手を置く
-			if (!finished && button1.isDown() && board.getData(selX, selY) == Board.NODATA) {
-				board.setData(selX, selY, (turn) ? FIRST : SECOND);
-				if (checkFinish(selX, selY)) {
-					finished = true;
-				} else {
-					turn = !turn;
-				}
-			}
+			if (!finished && !isComputerTurn() && button1.isDown() && board.getData(selX, selY) == Board.NODATA)
+				put(selX, selY);
 		} else
 			viewer.removeCursor();
+		
+		// コンピュータの手番
+		if (!finished && isComputerTurn())
+			updateComputer();
+	}
+	
+	/**
+	 * この更新で盤面とカーソルが変わらず、コンピュータの思考も待っていない場合は、入力があるまで何もしません。
+	 * 盤面の変化はボードの変更の記録（描画で取り出される）ではなく、更新の中で手を置いたかどうかで判定します。
+	 */
+	@Override
+	public boolean isIdle() {
+		return !changed && !cursorMoved && (finished || !isComputerTurn());
+	}
+	
+	/**
+	 * コンピュータの探索スレッドと置換表を解放します。
+	 */
+	@Override
+	public void dispose() {
+		if (ai != null) {
+			ai.shutdown();
+			ai = null;
+		}
+		thinking = null;
+	}
+	
+	/*
+	 * コンピュータの思考を開始し、終わっていれば手を置く
+	 */
+	private void updateComputer() {
+		if (thinking == null) {
+			thinking = ai.start(board, computer);
+			return;
+		}
+		if (!thinking.isDone())
+			return;
+		
+		try {
+			lastResult = thinking.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			thinking = null;
+		}
+		if (lastResult != null) {
+			resultText = String.format("深さ %d  %,d nodes  %,.0f nodes/sec  %d threads",
+					lastResult.getDepth(), lastResult.getNodes(), lastResult.getNodesPerSecond(), lastResult.getThreads());
+			put(lastResult.getX(), lastResult.getY());
+		} else {
+			resultText = null;
+			finish(Board.NODATA);
+		}
+	}
+	
+	/*
+	 * 手番のプレイヤーの石を置いて、手番を交代する
+	 */
+	private void put(int x, int y) {
+		int id = (turn) ? SECOND : FIRST;
+		board.setData(x, y, id);
+		bits.set(x, y, id);
+		++moves;
+		changed = true;
+		if (checkFinish(x, y)) {
+			finish(id);
+		} else if (moves == board.getWidth() * board.getHeight()) {
+			finish(Board.NODATA);
+		} else {
+			turn = !turn;
+		}
+	}
+	
+	/*
+	 * ゲームを終了し、コンピュータの探索スレッドを止める（winner が Board.NODATA の場合は引き分け）
+	 */
+	private void finish(int winner) {
+		this.winner = winner;
+		finished = true;
+		changed = true;
+		dispose();
+	}
+	
+	/*
+	 * 指定した局面を盤面に読み込む（ベンチマークなどで局面を直接用意する場合に使う）
+	 */
+	void load(Board src) {
+		board.copyFrom(src);
+		bits.load(board);
+		moves = 0;
+		for (int y = 0; y < board.getHeight(); ++y) {
+			for (int x = 0; x < board.getWidth(); ++x) {
+				if (board.getData(x, y) != Board.NODATA)
+					++moves;
+			}
+		}
+		requestRedraw();
+	}
+	
+	/**
+	 * 盤面を取得します。
+	 * 
+	 * @return 盤面
+	 */
+	public Board getBoard() {
+		return board;
+	}
+	
+	private boolean isComputerTurn() {
+		return ai != null && computer == ((turn) ? SECOND : FIRST);
 	}
 
 	/**
@@ -103,47 +267,37 @@ public class Gomoku extends TICApplet {
 		int y = viewer.getCenteringY(getHeight());
 		viewer.draw(g, x, y);
 		
-		String turnStr = (turn) ? "後攻" : "先攻";
+		int turnIndex = (turn) ? 1 : 0;
 		g.setColor(Color.BLACK);
-		g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 16));
-		g.drawString(turnStr + "の番です。", x, y - 30);
+		g.setFont(TURN_FONT);
+		g.drawString(TURN_TEXT[turnIndex], x, y - 30);
 		
 		if (finished) {
 			g.setColor(Color.RED);
-			g.drawString(turnStr + "の勝利！", x + 200, y - 30);
+			g.drawString((winner == Board.NODATA) ? DRAW_TEXT : WIN_TEXT[turnIndex], x + 200, y - 30);
+		}
+		
+		// コンピュータの探索の情報（文字列は探索が終わったときに作成済み）
+		if (resultText != null) {
+			g.setColor(Color.GRAY);
+			g.setFont(INFO_FONT);
+			g.drawString(resultText, x, y - 10);
 		}
 	}
 	
 	/**
 	 * ゲーム終了をチェックします。
+	 * 指定した座標に置かれた石を含む線のいずれかに、同じ色の石が5つ以上並んでいれば終了です。
+	 * 判定はビットボードのシフトとANDだけで行われます。
 	 * 
-	 * @return
+	 * @param x 最後に石を置いたX座標
+	 * @param y 最後に石を置いたY座標
+	 * @return ゲームが終了したかどうか
 	 */
 	public boolean checkFinish(int x, int y) {
 		int id = board.getData(x, y);
-		return checkFinishInner(x, y, -1, -1, id, 1) |
-		       checkFinishInner(x, y,  0, -1, id, 1) |
-		       checkFinishInner(x, y,  1, -1, id, 1) |
-		       checkFinishInner(x, y, -1,  0, id, 1) |
-		       checkFinishInner(x, y,  1,  0, id, 1) |
-		       checkFinishInner(x, y, -1,  1, id, 1) |
-		       checkFinishInner(x, y,  0,  1, id, 1) |
-		       checkFinishInner(x, y,  1,  1, id, 1);
-	}
-	
-	/*
-	 * 指定した座標の8近傍を調べて同じIDのマスがあるか調べる
-	 * 
-	 * #こういう関数は内部関数にしたいなあ
-	 */
-	private boolean checkFinishInner(int x, int y, int dx, int dy, int id, int count) {
-		int tx = x + dx, ty = y + dy;
-		if (0 <= tx && tx < board.getWidth() && 0 <= ty && ty < board.getHeight()) {
-			if (count == 5)
-				return true;
-			else if (board.getData(tx, ty) == id)
-				return checkFinishInner(tx, ty, dx, dy, id, count + 1);
-		}
-		return false;
+		if (id != FIRST && id != SECOND)
+			return false;
+		return bits.isFive(x, y, id);
 	}
 }
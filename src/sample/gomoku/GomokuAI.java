@@ -0,0 +1,328 @@
+package sample.gomoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import vip2011.tic.Board;
+
+/**
+ * 五目並べのコンピュータプレイヤーです。
+ * 
+ * <p>alpha-beta 枝刈り付きのネガマックス法で、反復深化を行いながら探索します。
+ * 探索は全てのスレッドが同じ局面を独立に探索し、ロックを使わない {@link TranspositionTable}
+ * だけを共有する Lazy SMP 方式で並列化されています。
+ * 探索は指定した深さに到達するか、1手あたりの制限時間を過ぎた時点で終了します。</p>
+ * <code><pre>
+ * GomokuAI ai = new GomokuAI(8, 1000);
+ * SearchResult result = ai.search(board, Gomoku.FIRST);
+ * board.setData(result.getX(), result.getY(), Gomoku.FIRST);
+ * </pre></code>
+ */
+public class GomokuAI {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/* 各局面で探索する候補手の最大数 */
+	private static final int BEAM = 16;
+
+	/* 探索の最大深さ */
+	private static final int MAX_PLY = 64;
+
+	/* 置換表の既定のエントリ数 */
+	private static final int TT_ENTRIES = 1 << 20;
+
+	private static final int INFINITY = GomokuPosition.WIN + MAX_PLY + 1;
+
+	private final int threads;
+	private final int maxDepth;
+	private final long timeLimit;
+	private final TranspositionTable tt;
+	private final ExecutorService pool;
+	private final ExecutorService coordinator;
+
+	private volatile boolean stopped;
+	private long deadline;
+
+	private int bestDepth, bestMove, bestScore;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 利用可能な全てのプロセッサを使って探索するプレイヤーを作成します。
+	 * 
+	 * @param maxDepth 探索する最大の深さ
+	 * @param timeLimit 1手あたりの制限時間(ms)
+	 */
+	public GomokuAI(int maxDepth, long timeLimit) {
+		this(Runtime.getRuntime().availableProcessors(), maxDepth, timeLimit);
+	}
+
+	/**
+	 * 指定したスレッド数で探索するプレイヤーを作成します。
+	 * 
+	 * @param threads 探索スレッド数
+	 * @param maxDepth 探索する最大の深さ
+	 * @param timeLimit 1手あたりの制限時間(ms)
+	 */
+	public GomokuAI(int threads, int maxDepth, long timeLimit) {
+		if (threads <= 0 || maxDepth <= 0 || maxDepth >= MAX_PLY)
+			throw new IllegalArgumentException("不正な探索パラメータです。");
+		this.threads = threads;
+		this.maxDepth = maxDepth;
+		this.timeLimit = timeLimit * 1000000L;
+		this.tt = new TranspositionTable(TT_ENTRIES);
+		ThreadFactory factory = new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "GomokuAI");
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		this.pool = Executors.newFixedThreadPool(threads, factory);
+		this.coordinator = Executors.newSingleThreadExecutor(factory);
+	}
+	
+	/**
+	 * 指定したボードの局面で、指定したプレイヤーの手の探索をバックグラウンドで開始します。
+	 * ボードの内容はこのメソッドを呼び出した時点でコピーされるため、呼び出し後にボードを変更しても構いません。
+	 * ゲームループを止めずに思考させたい場合に利用してください。
+	 * 
+	 * @param board ボード
+	 * @param id 手番のプレイヤーのID
+	 * @return 探索結果を受け取るための {@link Future}
+	 */
+	public Future<SearchResult> start(Board board, final int id) {
+		final Board snapshot = new Board(board.getWidth(), board.getHeight());
+		snapshot.copyFrom(board);
+		return coordinator.submit(new Callable<SearchResult>() {
+			public SearchResult call() {
+				return search(snapshot, id);
+			}
+		});
+	}
+
+	/**
+	 * 指定したボードの局面で、指定したプレイヤーの手を探索します。
+	 * ボードの内容は探索の開始時にコピーされます。
+	 * 
+	 * @param board ボード
+	 * @param id 手番のプレイヤーのID
+	 * @return 探索結果、置ける場所が無い場合は null
+	 */
+	public SearchResult search(Board board, int id) {
+		long start = System.nanoTime();
+
+		// 時間切れに備えて、並べ替えで先頭になる手を用意しておく
+		GomokuPosition root = new GomokuPosition(board);
+		int[] moves = new int[board.getWidth() * board.getHeight()];
+		int n = root.generateMoves(moves);
+		if (n == 0)
+			return null;
+		int other = opponent(id);
+		int fallback = moves[0], fallbackKey = Integer.MIN_VALUE;
+		for (int i = 0; i < n; ++i) {
+			int key = root.gain(moves[i], id) + root.gain(moves[i], other);
+			if (key > fallbackKey) {
+				fallbackKey = key;
+				fallback = moves[i];
+			}
+		}
+
+		synchronized (this) {
+			bestDepth = 0;
+			bestMove = fallback;
+			bestScore = 0;
+		}
+		stopped = false;
+		deadline = start + timeLimit;
+
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+		for (int i = 0; i < threads; ++i)
+			futures.add(pool.submit(new Worker(i, board, id)));
+
+		long nodes = 0;
+		try {
+			for (Future<Long> f : futures)
+				nodes += f.get();
+		} catch (InterruptedException e) {
+			stopped = true;
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			stopped = true;
+			throw new RuntimeException(e.getCause());
+		}
+		long elapsed = System.nanoTime() - start;
+
+		synchronized (this) {
+			int w = board.getWidth();
+			return new SearchResult(bestMove % w, bestMove / w, bestScore, bestDepth, nodes, elapsed, threads);
+		}
+	}
+
+	/**
+	 * 探索スレッドを終了します。
+	 */
+	public void shutdown() {
+		stopped = true;
+		coordinator.shutdownNow();
+		pool.shutdownNow();
+	}
+
+	/*
+	 * 深さ depth の探索を完了したスレッドが結果を報告する
+	 */
+	private synchronized void report(int depth, int move, int score) {
+		if (depth > bestDepth) {
+			bestDepth = depth;
+			bestMove = move;
+			bestScore = score;
+		}
+		if (depth >= maxDepth || Math.abs(score) >= GomokuPosition.WIN - MAX_PLY)
+			stopped = true;
+	}
+
+	private static int opponent(int id) {
+		return (id == Gomoku.FIRST) ? Gomoku.SECOND : Gomoku.FIRST;
+	}
+
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/*
+	 * 探索スレッド。局面はスレッドごとにコピーを持ち、置換表だけを共有する。
+	 */
+	private class Worker implements Callable<Long> {
+		private final int index;
+		private final Board board;
+		private final int id;
+
+		private GomokuPosition pos;
+		private int[][] moves;
+		private int[][] keys;
+		private long nodes;
+		private int rootMove;
+
+		Worker(int index, Board board, int id) {
+			this.index = index;
+			this.board = board;
+			this.id = id;
+		}
+
+		public Long call() {
+			pos = new GomokuPosition(board);
+			int size = board.getWidth() * board.getHeight();
+			moves = new int[maxDepth + 1][size];
+			keys  = new int[maxDepth + 1][size];
+
+			// ヘルパースレッドは開始する深さをずらして、探索する局面をばらけさせる
+			for (int depth = 1 + (index & 1); depth <= maxDepth && !stopped; ++depth) {
+				rootMove = -1;
+				int score = negamax(depth, -INFINITY, INFINITY, 0, id);
+				if (stopped || rootMove < 0)
+					break;
+				report(depth, rootMove, score);
+			}
+			return nodes;
+		}
+
+		private int negamax(int depth, int alpha, int beta, int ply, int id) {
+			if ((++nodes & 1023) == 0 && System.nanoTime() > deadline)
+				stopped = true;
+			if (stopped)
+				return 0;
+
+			long hash = pos.hash();
+			int ttMove = -1;
+			long entry = tt.probe(hash);
+			if (entry != 0) {
+				ttMove = TranspositionTable.move(entry);
+				if (ply > 0 && TranspositionTable.depth(entry) >= depth) {
+					int s = fromTT(TranspositionTable.score(entry), ply);
+					switch (TranspositionTable.flag(entry)) {
+					case TranspositionTable.EXACT: return s;
+					case TranspositionTable.LOWER: if (s >= beta)  return s; break;
+					case TranspositionTable.UPPER: if (s <= alpha) return s; break;
+					}
+				}
+			}
+
+			if (depth == 0)
+				return pos.evaluate(id);
+
+			int other = opponent(id);
+			int[] mv = moves[ply];
+			int[] key = keys[ply];
+			int n = pos.generateMoves(mv);
+			if (n == 0)
+				return 0;
+			for (int i = 0; i < n; ++i)
+				key[i] = (mv[i] == ttMove) ? Integer.MAX_VALUE : pos.gain(mv[i], id) + pos.gain(mv[i], other);
+			int m = Math.min(n, BEAM);
+
+			int best = -INFINITY, bestMove = -1;
+			int origAlpha = alpha;
+			for (int i = 0; i < m; ++i) {
+				selectBest(mv, key, i, n);
+				int move = mv[i];
+
+				pos.play(move, id);
+				int s = pos.isFive(move) ? GomokuPosition.WIN - ply
+				                         : -negamax(depth - 1, -beta, -alpha, ply + 1, other);
+				pos.undo();
+				if (stopped)
+					return 0;
+
+				if (s > best) {
+					best = s;
+					bestMove = move;
+					if (ply == 0)
+						rootMove = move;
+				}
+				if (s > alpha)
+					alpha = s;
+				if (alpha >= beta)
+					break;
+			}
+
+			int flag = (best <= origAlpha) ? TranspositionTable.UPPER
+			         : (best >= beta)      ? TranspositionTable.LOWER
+			                               : TranspositionTable.EXACT;
+			tt.store(hash, bestMove, toTT(best, ply), depth, flag);
+			return best;
+		}
+
+		/*
+		 * mv[i..n) のうちキーが最大の手を mv[i] に移す
+		 */
+		private void selectBest(int[] mv, int[] key, int i, int n) {
+			int bi = i;
+			for (int j = i + 1; j < n; ++j)
+				if (key[j] > key[bi])
+					bi = j;
+			int tm = mv[i];  mv[i]  = mv[bi];  mv[bi]  = tm;
+			int tk = key[i]; key[i] = key[bi]; key[bi] = tk;
+		}
+
+		/*
+		 * 勝敗の評価値は置換表には現局面からの手数で格納する
+		 */
+		private int toTT(int score, int ply) {
+			if (score >= GomokuPosition.WIN - MAX_PLY)  return score + ply;
+			if (score <= -GomokuPosition.WIN + MAX_PLY) return score - ply;
+			return score;
+		}
+
+		private int fromTT(int score, int ply) {
+			if (score >= GomokuPosition.WIN - MAX_PLY)  return score - ply;
+			if (score <= -GomokuPosition.WIN + MAX_PLY) return score + ply;
+			return score;
+		}
+	}
+}
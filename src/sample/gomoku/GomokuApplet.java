@@ -0,0 +1,29 @@
+package sample.gomoku;
+
+import vip2011.tic.TICApplet;
+
+/**
+ * {@link Gomoku} をアプレットとして動かすクラスです。
+ */
+public class GomokuApplet extends TICApplet {
+	private static final long serialVersionUID = 7430678560091910053L;
+
+	public GomokuApplet() {
+		super(createGame());
+		
+		// 毎フレーム画面全体を描き直すので、BufferStrategy で直接表示する
+		setBufferCount(2);
+		
+		// クリックを待っている間はループを停止する
+		setIdleMode(true);
+	}
+	
+	/*
+	 * 後攻をコンピュータが担当するゲームを作成する
+	 */
+	private static Gomoku createGame() {
+		Gomoku game = new Gomoku();
+		game.setComputer(Gomoku.SECOND);
+		return game;
+	}
+}
@@ -0,0 +1,199 @@
+package sample.gomoku;
+
+import java.util.Arrays;
+
+import vip2011.tic.Board;
+
+/**
+ * 五目並べの石の配置をプレイヤーごとのビットボードで保持するクラスです。
+ *
+ * <p>各プレイヤーについて、横・縦・斜め(＼)・斜め(／)の4方向それぞれの線を
+ * long のビット列として保持しています。五連の判定はシフトとANDだけで行われるため、
+ * 分岐やオブジェクトの生成がありません。</p>
+ *
+ * <p>ボードの横幅、縦幅はそれぞれ64以下である必要があります。
+ * {@link Board} の値を変更した場合は、{@link #set(int, int, int)} で同じ変更を反映してください。</p>
+ */
+public class GomokuBitBoard {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final int width, height;
+
+	/* [プレイヤー][y] の各ビットがX座標に対応 */
+	private final long[][] rows;
+
+	/* [プレイヤー][x] の各ビットがY座標に対応 */
+	private final long[][] cols;
+
+	/* [プレイヤー][x - y + height - 1] の各ビットがY座標に対応 */
+	private final long[][] diags;
+
+	/* [プレイヤー][x + y] の各ビットがY座標に対応 */
+	private final long[][] antiDiags;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したサイズの、空のビットボードを作成します。
+	 *
+	 * @param width ボードの横幅
+	 * @param height ボードの縦幅
+	 */
+	public GomokuBitBoard(int width, int height) {
+		if (width <= 0 || width > 64 || height <= 0 || height > 64)
+			throw new IllegalArgumentException("ボードのサイズは64以下である必要があります。");
+		this.width = width;
+		this.height = height;
+
+		this.rows      = new long[2][height];
+		this.cols      = new long[2][width];
+		this.diags     = new long[2][width + height - 1];
+		this.antiDiags = new long[2][width + height - 1];
+	}
+
+	/**
+	 * 指定したボードの内容からビットボードを作成します。
+	 *
+	 * @param board ボード
+	 */
+	public GomokuBitBoard(Board board) {
+		this(board.getWidth(), board.getHeight());
+		load(board);
+	}
+
+	/**
+	 * 全ての石を取り除きます。
+	 */
+	public void clear() {
+		for (int p = 0; p < 2; ++p) {
+			Arrays.fill(rows[p], 0L);
+			Arrays.fill(cols[p], 0L);
+			Arrays.fill(diags[p], 0L);
+			Arrays.fill(antiDiags[p], 0L);
+		}
+	}
+
+	/**
+	 * 指定したビットボードの内容をコピーします。
+	 * ボードのサイズは同じである必要があります。
+	 *
+	 * @param src コピー元のビットボード
+	 */
+	public void copyFrom(GomokuBitBoard src) {
+		if (src.width != width || src.height != height)
+			throw new IllegalArgumentException("ボードのサイズが一致しません。");
+		for (int p = 0; p < 2; ++p) {
+			System.arraycopy(src.rows[p],      0, rows[p],      0, height);
+			System.arraycopy(src.cols[p],      0, cols[p],      0, width);
+			System.arraycopy(src.diags[p],     0, diags[p],     0, diags[p].length);
+			System.arraycopy(src.antiDiags[p], 0, antiDiags[p], 0, antiDiags[p].length);
+		}
+	}
+
+	/**
+	 * 指定したボードの内容を読み込みます。
+	 * ボードのサイズはこのビットボードと同じである必要があります。
+	 *
+	 * @param board ボード
+	 */
+	public void load(Board board) {
+		if (board.getWidth() != width || board.getHeight() != height)
+			throw new IllegalArgumentException("ボードのサイズが一致しません。");
+		clear();
+		for (int y = 0; y < height; ++y) {
+			int index = board.getRowOffset(y);
+			for (int x = 0; x < width; ++x, ++index)
+				set(x, y, board.getDataAt(index));
+		}
+	}
+
+	/**
+	 * 指定した座標に、指定したプレイヤーの石を置きます。
+	 * id が {@link Gomoku#FIRST}、{@link Gomoku#SECOND} 以外の場合は、その座標の石を取り除きます。
+	 * 座標の範囲チェックは行いません。
+	 *
+	 * @param x X座標
+	 * @param y Y座標
+	 * @param id プレイヤーのID
+	 */
+	public void set(int x, int y, int id) {
+		int d = x - y + height - 1;
+		int a = x + y;
+		long rowBit = ~(1L << x);
+		long colBit = ~(1L << y);
+		for (int p = 0; p < 2; ++p) {
+			rows[p][y]      &= rowBit;
+			cols[p][x]      &= colBit;
+			diags[p][d]     &= colBit;
+			antiDiags[p][a] &= colBit;
+		}
+		if (id == Gomoku.FIRST || id == Gomoku.SECOND) {
+			int p = id - 1;
+			rows[p][y]      |= ~rowBit;
+			cols[p][x]      |= ~colBit;
+			diags[p][d]     |= ~colBit;
+			antiDiags[p][a] |= ~colBit;
+		}
+	}
+
+	/**
+	 * 指定した座標を通る4方向の線のいずれかに、指定したプレイヤーの五連があるかどうかを調べます。
+	 * 座標の範囲チェックは行いません。
+	 *
+	 * @param x X座標
+	 * @param y Y座標
+	 * @param id プレイヤーのID（{@link Gomoku#FIRST} または {@link Gomoku#SECOND}）
+	 * @return 五連があるかどうか
+	 */
+	public boolean isFive(int x, int y, int id) {
+		int p = id - 1;
+		return (five(rows[p][y]) | five(cols[p][x]) |
+		        five(diags[p][x - y + height - 1]) | five(antiDiags[p][x + y])) != 0;
+	}
+
+	/**
+	 * 指定した空きマスに指定したプレイヤーの石を置いたとすると、五連ができるかどうかを調べます。
+	 * ビットボードの内容は変更しません。座標の範囲チェックは行いません。
+	 *
+	 * @param x X座標
+	 * @param y Y座標
+	 * @param id プレイヤーのID（{@link Gomoku#FIRST} または {@link Gomoku#SECOND}）
+	 * @return 五連ができるかどうか
+	 */
+	public boolean isFiveWith(int x, int y, int id) {
+		int p = id - 1;
+		long rowBit = 1L << x;
+		long colBit = 1L << y;
+		return (five(rows[p][y] | rowBit) | five(cols[p][x] | colBit) |
+		        five(diags[p][x - y + height - 1] | colBit) | five(antiDiags[p][x + y] | colBit)) != 0;
+	}
+
+	/**
+	 * ボードの横幅を取得します。
+	 *
+	 * @return ボードの横幅
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * ボードの縦幅を取得します。
+	 *
+	 * @return ボードの縦幅
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * 5つ以上連続したビットがあれば、その先頭のビットを立てた値を返す
+	 */
+	private static long five(long w) {
+		long w2 = w  & (w  >>> 1);
+		long w4 = w2 & (w2 >>> 2);
+		return w4 & (w >>> 4);
+	}
+}
@@ -0,0 +1,359 @@
+package sample.gomoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import vip2011.tic.Board;
+
+/**
+ * モンテカルロ木探索（MCTS）による五目並べのコンピュータプレイヤーです。
+ * 
+ * <p>全てのスレッドが1本の探索木を共有する木並列化（tree parallelism）で探索します。
+ * 節点を下るときに訪問回数だけを先に加算する仮想損失（virtual loss）によって、
+ * 複数のスレッドが同じ経路に集中しないようにしています。</p>
+ * 
+ * <p>節点は固定容量のプールに配列として確保されるため、長時間考えさせてもメモリ使用量は増えません。
+ * プールが一杯になると木の展開を止めてプレイアウトだけを続けます。プールは探索のたびに再利用されます。
+ * プレイアウトはスレッドごとに再利用する作業用の {@link Board} と {@link GomokuBitBoard} の上で行われ、
+ * オブジェクトを生成しません。</p>
+ * 
+ * <p>結果の {@link SearchResult} では、局面数としてプレイアウト数を、評価値として勝率（千分率）を、
+ * 深さとして探索木の最大の深さを報告します。</p>
+ */
+public class GomokuMCTS {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/* UCB1 の探索項の係数 */
+	private static final double EXPLORATION = 1.0;
+
+	/* この回数だけ訪問された葉を展開する */
+	private static final int EXPAND_THRESHOLD = 2;
+
+	/* 節点の状態 */
+	private static final int LEAF      = 0;
+	private static final int EXPANDING = 1;
+	private static final int EXPANDED  = 2;
+	private static final int FULL      = 3;
+
+	private final int threads;
+	private final int capacity;
+	private final ExecutorService pool;
+
+	/* 節点プール（構造体の配列） */
+	private final int[] move;
+	private final int[] mover;
+	private final int[] firstChild;
+	private final int[] childCount;
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray score;
+	private final AtomicIntegerArray state;
+	private final AtomicInteger allocated = new AtomicInteger();
+
+	private Board rootBoard;
+	private GomokuBitBoard rootBits;
+	private volatile long deadline;
+	private volatile int maxDepth;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 利用可能な全てのプロセッサを使って探索するプレイヤーを作成します。
+	 * 
+	 * @param capacity 探索木の節点数の上限
+	 */
+	public GomokuMCTS(int capacity) {
+		this(Runtime.getRuntime().availableProcessors(), capacity);
+	}
+
+	/**
+	 * 指定したスレッド数で探索するプレイヤーを作成します。
+	 * 
+	 * @param threads 探索スレッド数
+	 * @param capacity 探索木の節点数の上限
+	 */
+	public GomokuMCTS(int threads, int capacity) {
+		if (threads <= 0 || capacity <= 1)
+			throw new IllegalArgumentException("不正な探索パラメータです。");
+		this.threads = threads;
+		this.capacity = capacity;
+
+		this.move       = new int[capacity];
+		this.mover      = new int[capacity];
+		this.firstChild = new int[capacity];
+		this.childCount = new int[capacity];
+		this.visits = new AtomicIntegerArray(capacity);
+		this.score  = new AtomicIntegerArray(capacity);
+		this.state  = new AtomicIntegerArray(capacity);
+
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "GomokuMCTS");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * 指定したボードの局面で、指定したプレイヤーの手を制限時間いっぱいまで探索します。
+	 * 
+	 * @param board ボード
+	 * @param id 手番のプレイヤーのID
+	 * @param timeLimit 制限時間(ms)
+	 * @return 探索結果、置ける場所が無い場合は null
+	 */
+	public synchronized SearchResult search(Board board, int id, long timeLimit) {
+		long start = System.nanoTime();
+		int width = board.getWidth();
+
+		rootBoard = new Board(width, board.getHeight());
+		rootBoard.copyFrom(board);
+		rootBits = new GomokuBitBoard(rootBoard);
+		deadline = start + timeLimit * 1000000L;
+		maxDepth = 0;
+
+		// 根を確保して展開しておく
+		allocated.set(1);
+		initNode(0, -1, opponent(id));
+		GomokuPosition root = new GomokuPosition(rootBoard);
+		if (!expand(0, root, id, new int[width * board.getHeight()]))
+			return null;
+
+		List<Future<Long>> futures = new ArrayList<Future<Long>>(threads);
+		for (int i = 0; i < threads; ++i)
+			futures.add(pool.submit(new Worker(i, id)));
+
+		long playouts = 0;
+		try {
+			for (Future<Long> f : futures)
+				playouts += f.get();
+		} catch (InterruptedException e) {
+			deadline = 0;
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			deadline = 0;
+			throw new RuntimeException(e.getCause());
+		}
+		long elapsed = System.nanoTime() - start;
+
+		// 最も多く訪問された手を選ぶ
+		int best = firstChild[0];
+		for (int c = firstChild[0]; c < firstChild[0] + childCount[0]; ++c)
+			if (visits.get(c) > visits.get(best))
+				best = c;
+		int v = visits.get(best);
+		int rate = (v > 0) ? (int)(score.get(best) * 500L / v) : 0;
+		return new SearchResult(move[best] % width, move[best] / width, rate, maxDepth, playouts, elapsed, threads);
+	}
+
+	/**
+	 * 探索スレッドを終了します。
+	 */
+	public void shutdown() {
+		deadline = 0;
+		pool.shutdownNow();
+	}
+
+	/*
+	 * 節点を初期化する。他のスレッドに公開される前に呼び出すこと。
+	 */
+	private void initNode(int node, int m, int p) {
+		move[node] = m;
+		mover[node] = p;
+		firstChild[node] = 0;
+		childCount[node] = 0;
+		visits.set(node, 0);
+		score.set(node, 0);
+		state.set(node, LEAF);
+	}
+
+	/*
+	 * 節点の子を、pos の候補手からプールに確保する。
+	 * プールが一杯か候補手が無い場合は、以後展開しない節点として false を返す。
+	 * 呼び出し側で state を EXPANDING にしておくこと。
+	 */
+	private boolean expand(int node, GomokuPosition pos, int toMove, int[] moves) {
+		int n = pos.generateMoves(moves);
+		if (n == 0 || allocated.get() + n > capacity) {
+			state.set(node, FULL);
+			return false;
+		}
+		int first = allocated.getAndAdd(n);
+		if (first + n > capacity) {
+			state.set(node, FULL);
+			return false;
+		}
+		for (int i = 0; i < n; ++i)
+			initNode(first + i, moves[i], toMove);
+		firstChild[node] = first;
+		childCount[node] = n;
+		state.set(node, EXPANDED);
+		return true;
+	}
+
+	private static int opponent(int id) {
+		return (id == Gomoku.FIRST) ? Gomoku.SECOND : Gomoku.FIRST;
+	}
+
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/*
+	 * 探索スレッド。作業用のボードと経路の配列を再利用して、選択・展開・プレイアウト・逆伝播を繰り返す。
+	 */
+	private class Worker implements Callable<Long> {
+		private final int id;
+		private long seed;
+
+		private GomokuPosition pos;
+		private Board scratch;
+		private GomokuBitBoard bits;
+		private int[] path;
+		private int[] empties;
+		private int[] moves;
+
+		Worker(int index, int id) {
+			this.id = id;
+			this.seed = System.nanoTime() ^ ((index + 1) * 0x9E3779B97F4A7C15L);
+		}
+
+		public Long call() {
+			int width = rootBoard.getWidth(), height = rootBoard.getHeight();
+			pos = new GomokuPosition(rootBoard);
+			scratch = new Board(width, height);
+			bits = new GomokuBitBoard(width, height);
+			path = new int[width * height + 1];
+			empties = new int[width * height];
+			moves = new int[width * height];
+
+			long playouts = 0;
+			while (System.nanoTime() < deadline) {
+				for (int i = 0; i < 64; ++i)
+					iterate();
+				playouts += 64;
+			}
+			return playouts;
+		}
+
+		/*
+		 * 1回分の探索
+		 */
+		private void iterate() {
+			scratch.copyFrom(rootBoard);
+			bits.copyFrom(rootBits);
+
+			int node = 0, depth = 0, toMove = id, winner = Board.NODATA;
+			path[depth++] = 0;
+			visits.incrementAndGet(0);
+
+			while (true) {
+				if (state.get(node) != EXPANDED) {
+					if (visits.get(node) < EXPAND_THRESHOLD || !state.compareAndSet(node, LEAF, EXPANDING))
+						break;
+					// 木の局面を再現して展開する
+					pos.load(rootBoard);
+					for (int i = 1; i < depth; ++i)
+						pos.play(move[path[i]], mover[path[i]]);
+					if (!expand(node, pos, toMove, moves))
+						break;
+				}
+
+				// 選択：訪問回数を先に加算して仮想損失とする
+				node = select(node);
+				visits.incrementAndGet(node);
+				path[depth++] = node;
+
+				int m = move[node];
+				int y = m / scratch.getWidth(), x = m - y * scratch.getWidth();
+				scratch.setDataAt(m, toMove);
+				bits.set(x, y, toMove);
+				if (bits.isFive(x, y, toMove)) {
+					winner = toMove;
+					break;
+				}
+				toMove = opponent(toMove);
+			}
+			if (depth > maxDepth)
+				maxDepth = depth;
+
+			if (winner == Board.NODATA)
+				winner = playout(toMove);
+
+			// 逆伝播：勝ちは2点、引き分けは1点
+			for (int i = 0; i < depth; ++i) {
+				int n = path[i];
+				int s = (winner == mover[n]) ? 2 : (winner == Board.NODATA) ? 1 : 0;
+				if (s > 0)
+					score.addAndGet(n, s);
+			}
+		}
+
+		/*
+		 * UCB1 が最大の子を選ぶ
+		 */
+		private int select(int node) {
+			int first = firstChild[node], n = childCount[node];
+			double logN = Math.log(Math.max(1, visits.get(node)));
+			int best = first;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int c = first; c < first + n; ++c) {
+				int v = visits.get(c);
+				if (v == 0)
+					return c;
+				double value = score.get(c) / (2.0 * v) + EXPLORATION * Math.sqrt(logN / v);
+				if (value > bestValue) {
+					bestValue = value;
+					best = c;
+				}
+			}
+			return best;
+		}
+
+		/*
+		 * 作業用ボードで、空きマスにランダムに石を置いて終局させる
+		 */
+		private int playout(int toMove) {
+			int width = scratch.getWidth();
+			int n = 0;
+			for (int i = 0; i < empties.length; ++i)
+				if (scratch.getDataAt(i) == Board.NODATA)
+					empties[n++] = i;
+
+			while (n > 0) {
+				int k = nextInt(n);
+				int m = empties[k];
+				empties[k] = empties[--n];
+
+				int y = m / width, x = m - y * width;
+				scratch.setDataAt(m, toMove);
+				bits.set(x, y, toMove);
+				if (bits.isFive(x, y, toMove))
+					return toMove;
+				toMove = opponent(toMove);
+			}
+			return Board.NODATA;
+		}
+
+		/*
+		 * xorshift による [0, bound) の乱数
+		 */
+		private int nextInt(int bound) {
+			long s = seed;
+			s ^= s << 13;
+			s ^= s >>> 7;
+			s ^= s << 17;
+			seed = s;
+			return (int)(((s >>> 33) * bound) >>> 31);
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package sample.gomoku;
+
+import java.util.Arrays;
+
+import vip2011.tic.Board;
+
+/**
+ * 探索用の五目並べの局面を表すクラスです。
+ * 
+ * <p>{@link Board} のコピーと {@link GomokuBitBoard}、手の履歴をまとめて保持し、
+ * {@link #play(int, int)} と {@link #undo()} で局面を進めたり戻したりします。
+ * 盤面のZobristハッシュ、石の周辺のマス、評価値は手を打つたびに差分で更新されます。</p>
+ * 
+ * <p>マスはボードと同じ行優先のインデックス（<code>y * width + x</code>）で指定します。</p>
+ */
+public class GomokuPosition {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** 五連の評価値です。これより大きな絶対値の評価値は勝敗が決まっていることを表します。 */
+	public static final int WIN = 1000000;
+
+	/* 5マスの窓に含まれる自分の石の数ごとの重み（相手の石が無い窓のみ） */
+	private static final int[] WEIGHTS = { 0, 1, 12, 150, 2000, 50000 };
+
+	/* 候補手として扱う、既存の石からの距離 */
+	private static final int NEAR = 2;
+
+	private static final int[] DX = { 1, 0, 1,  1 };
+	private static final int[] DY = { 0, 1, 1, -1 };
+
+	private final Board board;
+	private final Board work;
+	private final GomokuBitBoard bits;
+	private final int width, height;
+
+	private final int[] near;
+	private final int[] history;
+	private final int[] scores;
+	private int count;
+	private int score;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したボードの内容をコピーして、局面を作成します。
+	 * 
+	 * @param src コピー元のボード
+	 */
+	public GomokuPosition(Board src) {
+		this.width  = src.getWidth();
+		this.height = src.getHeight();
+		this.board  = new Board(width, height);
+		this.work   = new Board(width, height);
+		this.bits   = new GomokuBitBoard(width, height);
+		this.near   = new int[width * height];
+		this.history = new int[width * height];
+		this.scores  = new int[width * height + 1];
+		load(src);
+	}
+
+	/**
+	 * 指定したボードの内容を読み込み、手の履歴を消去します。
+	 * 
+	 * @param src コピー元のボード
+	 */
+	public void load(Board src) {
+		board.copyFrom(src);
+		if (!board.isHashEnabled())
+			board.enableHash();
+		bits.load(board);
+		count = 0;
+
+		Arrays.fill(near, 0);
+		score = 0;
+		work.clear();
+		for (int y = 0; y < height; ++y)
+			for (int x = 0; x < width; ++x) {
+				int id = board.getDataAt(board.indexOf(x, y));
+				if (id == Gomoku.FIRST || id == Gomoku.SECOND) {
+					addNear(x, y, 1);
+					// 空のボードに順に置いていくことで評価値を求める
+					int delta = windowDelta(work, x, y, id);
+					score += (id == Gomoku.FIRST) ? delta : -delta;
+					work.setDataAt(work.indexOf(x, y), id);
+				}
+			}
+	}
+
+	/**
+	 * 指定したマスに、指定したプレイヤーの石を置きます。
+	 * マスは空である必要があります。
+	 * 
+	 * @param index マスのインデックス
+	 * @param id プレイヤーのID
+	 */
+	public void play(int index, int id) {
+		int y = index / width;
+		int x = index - y * width;
+		int delta = windowDelta(board, x, y, id);
+
+		scores[count] = score;
+		history[count++] = index;
+		score += (id == Gomoku.FIRST) ? delta : -delta;
+
+		board.setDataAt(index, id);
+		bits.set(x, y, id);
+		addNear(x, y, 1);
+	}
+
+	/**
+	 * 最後に置いた石を取り除きます。
+	 */
+	public void undo() {
+		int index = history[--count];
+		score = scores[count];
+		int y = index / width;
+		int x = index - y * width;
+		board.setDataAt(index, Board.NODATA);
+		bits.set(x, y, Board.NODATA);
+		addNear(x, y, -1);
+	}
+
+	/**
+	 * 指定したマスの石が五連を作っているかどうかを調べます。
+	 * 
+	 * @param index マスのインデックス
+	 * @return 五連を作っているかどうか
+	 */
+	public boolean isFive(int index) {
+		int id = board.getDataAt(index);
+		if (id != Gomoku.FIRST && id != Gomoku.SECOND)
+			return false;
+		int y = index / width;
+		return bits.isFive(index - y * width, y, id);
+	}
+
+	/**
+	 * 指定したプレイヤーから見た局面の評価値を取得します。
+	 * 
+	 * @param id プレイヤーのID
+	 * @return 評価値
+	 */
+	public int evaluate(int id) {
+		return (id == Gomoku.FIRST) ? score : -score;
+	}
+
+	/**
+	 * 指定した空きマスに指定したプレイヤーが石を置いた場合の、そのプレイヤーから見た評価値の変化量を取得します。
+	 * 手の並べ替えに利用します。
+	 * 
+	 * @param index マスのインデックス
+	 * @param id プレイヤーのID
+	 * @return 評価値の変化量
+	 */
+	public int gain(int index, int id) {
+		int y = index / width;
+		return windowDelta(board, index - y * width, y, id);
+	}
+
+	/**
+	 * 候補手（既存の石の近くにある空きマス）を列挙します。
+	 * 石が一つも無い場合は中央のマスを返します。
+	 * 
+	 * @param dst 候補手を格納する配列（マスの数以上の長さが必要です）
+	 * @return 候補手の数
+	 */
+	public int generateMoves(int[] dst) {
+		if (count == 0 && isEmptyBoard()) {
+			dst[0] = board.indexOf(width / 2, height / 2);
+			return 1;
+		}
+		int n = 0;
+		for (int i = 0; i < near.length; ++i)
+			if (near[i] > 0 && board.getDataAt(i) == Board.NODATA)
+				dst[n++] = i;
+		return n;
+	}
+
+	/**
+	 * 指定したマスの値を取得します。
+	 * 
+	 * @param index マスのインデックス
+	 * @return マスの値
+	 */
+	public int get(int index) {
+		return board.getDataAt(index);
+	}
+
+	/**
+	 * 局面のZobristハッシュ値を取得します。
+	 * 
+	 * @return ハッシュ値
+	 */
+	public long hash() {
+		return board.hash();
+	}
+
+	/**
+	 * {@link #play(int, int)} で置いた石の数を取得します。
+	 * 
+	 * @return 置いた石の数
+	 */
+	public int getMoveCount() {
+		return count;
+	}
+
+	/**
+	 * 局面のボードを取得します。
+	 * このボードの値を直接変更しないでください。
+	 * 
+	 * @return ボード
+	 */
+	public Board getBoard() {
+		return board;
+	}
+
+	/**
+	 * 局面のビットボードを取得します。
+	 * このビットボードの値を直接変更しないでください。
+	 * 
+	 * @return ビットボード
+	 */
+	public GomokuBitBoard getBitBoard() {
+		return bits;
+	}
+
+	/**
+	 * ボードの横幅を取得します。
+	 * 
+	 * @return ボードの横幅
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * ボードの縦幅を取得します。
+	 * 
+	 * @return ボードの縦幅
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/*
+	 * 石が一つも無いかどうか
+	 */
+	private boolean isEmptyBoard() {
+		for (int i = 0; i < near.length; ++i)
+			if (near[i] > 0)
+				return false;
+		return true;
+	}
+
+	/*
+	 * (x, y) の周辺のマスの近傍カウンタを増減する
+	 */
+	private void addNear(int x, int y, int d) {
+		int x0 = Math.max(0, x - NEAR), x1 = Math.min(width  - 1, x + NEAR);
+		int y0 = Math.max(0, y - NEAR), y1 = Math.min(height - 1, y + NEAR);
+		for (int ty = y0; ty <= y1; ++ty) {
+			int index = ty * width + x0;
+			for (int tx = x0; tx <= x1; ++tx, ++index)
+				near[index] += d;
+		}
+	}
+
+	/*
+	 * 空きマス (x, y) に id の石を置いたときの、id から見た評価値の変化量。
+	 * (x, y) を含む全ての5マスの窓について、石の数の変化を重みに換算する。
+	 */
+	private int windowDelta(Board b, int x, int y, int id) {
+		int delta = 0;
+		for (int dir = 0; dir < 4; ++dir) {
+			int dx = DX[dir], dy = DY[dir];
+			for (int k = -4; k <= 0; ++k) {
+				int sx = x + dx * k, sy = y + dy * k;
+				int ex = sx + dx * 4, ey = sy + dy * 4;
+				if (sx < 0 || sx >= width || ex < 0 || ex >= width ||
+				    sy < 0 || sy >= height || ey < 0 || ey >= height)
+					continue;
+				int own = 0, opp = 0;
+				int index = b.indexOf(sx, sy), step = b.indexOf(dx, dy);
+				for (int i = 0; i < 5; ++i, index += step) {
+					int v = b.getDataAt(index);
+					if (v == id) ++own;
+					else if (v != Board.NODATA) ++opp;
+				}
+				if (opp == 0)
+					delta += WEIGHTS[own + 1] - WEIGHTS[own];
+				else if (own == 0)
+					delta += WEIGHTS[opp];
+			}
+		}
+		return delta;
+	}
+}
@@ -2,23 +2,34 @@ package sample.gomoku;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
+import java.util.ArrayDeque;
 
 import vip2011.tic.Board;
 import vip2011.tic.BoardDrawer;
-import vip2011.tic.TICApplet;
+import vip2011.tic.TICGame;
 
-public class Sample01 extends TICApplet {
+public class Sample01 extends TICGame {
 
+	private static final int CELL_SIZE = 10;
+	private static final int GRID_WIDTH = 1;
+	
 	private Board board;
 	private BoardDrawer drawer;
 	
 	private float ballX, ballY;
 	private float ballVX, ballVY;
 	
+	// 描画スレッドから返された、再利用できるスナップショット（更新スレッドだけが使う）
+	private final ArrayDeque<Frame> freeFrames = new ArrayDeque<Frame>();
+	
+	// 描画スレッド側のボード
+	private Board view;
+	private BoardDrawer viewDrawer;
+	
 	@Override
 	public void initialize() {
 		this.board = new Board(40, 40);
-		this.drawer = board.createDrawer(10, 1, Color.GRAY);
+		this.drawer = board.createDrawer(CELL_SIZE, GRID_WIDTH, Color.GRAY);
 		
 		// ボードの色を設定
 		drawer.bindColor(1, Color.BLUE);
@@ -60,13 +71,72 @@ public class Sample01 extends TICApplet {
 		
 		// データの更新
 		board.moveData(oldX, oldY, (int)ballX, (int)ballY);
-		
-		System.out.println(ballX + "," + ballY);
+	}
+	
+	/**
+	 * ボールが動いているボードを取得します。
+	 * 
+	 * @return ボード
+	 */
+	public Board getBoard() {
+		return board;
 	}
 	
 	@Override
 	public void drawCanvas(Graphics2D g) {
 		drawer.draw(g, 0, 0);
 	}
+	
+	@Override
+	public Object snapshot() {
+		// ボールを除いたボードと、ボールの位置を記録する（返されたスナップショットがあれば再利用する）
+		Frame f = freeFrames.poll();
+		if (f == null)
+			f = new Frame(new Board(board.getWidth(), board.getHeight()));
+		f.board.copyFrom(board);
+		f.board.setData((int)ballX, (int)ballY, Board.NODATA);
+		f.ballX = ballX;
+		f.ballY = ballY;
+		return f;
+	}
+	
+	@Override
+	public void releaseSnapshot(Object snapshot) {
+		freeFrames.push((Frame)snapshot);
+	}
+	
+	@Override
+	public void drawSnapshot(Graphics2D g, Object prev, Object curr, float alpha) {
+		Frame p = (Frame)prev;
+		Frame c = (Frame)curr;
+		if (view == null) {
+			view = new Board(c.board.getWidth(), c.board.getHeight());
+			viewDrawer = view.createDrawer(CELL_SIZE, GRID_WIDTH, Color.GRAY);
+			viewDrawer.bindColor(1, Color.BLUE);
+		}
+		// 前回から変化したマスだけがコピーされ、描き直される
+		view.copyFrom(c.board);
+		viewDrawer.draw(g, 0, 0);
+		
+		// ボールは2回の更新の間を補間した位置に描画する
+		float x = p.ballX + (c.ballX - p.ballX) * alpha;
+		float y = p.ballY + (c.ballY - p.ballY) * alpha;
+		int origin = GRID_WIDTH / 2 + GRID_WIDTH;
+		g.setColor(Color.BLUE);
+		g.fillRect(origin + Math.round(x * (CELL_SIZE + GRID_WIDTH)), origin + Math.round(y * (CELL_SIZE + GRID_WIDTH)),
+				CELL_SIZE, CELL_SIZE);
+	}
+	
+	/*
+	 * 描画スレッドに渡すスナップショット
+	 */
+	private static class Frame {
+		final Board board;
+		float ballX, ballY;
+		
+		Frame(Board board) {
+			this.board = board;
+		}
+	}
 
 }
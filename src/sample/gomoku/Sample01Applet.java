@@ -0,0 +1,14 @@
+package sample.gomoku;
+
+import vip2011.tic.TICApplet;
+
+public class Sample01Applet extends TICApplet {
+	private static final long serialVersionUID = -2315780472160915126L;
+
+	public Sample01Applet() {
+		super(new Sample01());
+		
+		// 10FPSの更新を、描画スレッドで補間して60FPSで表示する
+		setThreadedLoop(true);
+	}
+}
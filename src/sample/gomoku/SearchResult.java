@@ -0,0 +1,121 @@
+package sample.gomoku;
+
+/**
+ * 思考ルーチンの探索結果を表すクラスです。
+ */
+public class SearchResult {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final int x, y;
+	private final int score;
+	private final int depth;
+	private final long nodes;
+	private final long elapsed;
+	private final int threads;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 探索結果を作成します。
+	 * 
+	 * @param x 選ばれた手のX座標
+	 * @param y 選ばれた手のY座標
+	 * @param score 評価値
+	 * @param depth 探索を完了した深さ
+	 * @param nodes 探索した局面数（全スレッドの合計）
+	 * @param elapsed 探索にかかった時間(ns)
+	 * @param threads 探索に利用したスレッド数
+	 */
+	public SearchResult(int x, int y, int score, int depth, long nodes, long elapsed, int threads) {
+		this.x = x;
+		this.y = y;
+		this.score = score;
+		this.depth = depth;
+		this.nodes = nodes;
+		this.elapsed = elapsed;
+		this.threads = threads;
+	}
+
+	/**
+	 * 選ばれた手のX座標を取得します。
+	 * 
+	 * @return X座標
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * 選ばれた手のY座標を取得します。
+	 * 
+	 * @return Y座標
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * 手番のプレイヤーから見た評価値を取得します。
+	 * 
+	 * @return 評価値
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * 探索を完了した深さを取得します。
+	 * 
+	 * @return 深さ
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * 探索した局面数を取得します。
+	 * 
+	 * @return 局面数
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * 探索にかかった時間を取得します。
+	 * 
+	 * @return 時間(ns)
+	 */
+	public long getElapsed() {
+		return elapsed;
+	}
+
+	/**
+	 * 探索に利用したスレッド数を取得します。
+	 * 
+	 * @return スレッド数
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * 1秒あたりの探索局面数を取得します。
+	 * 
+	 * @return 探索速度(nodes/sec)
+	 */
+	public double getNodesPerSecond() {
+		return (elapsed > 0) ? nodes * 1000000000.0 / elapsed : 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return String.format("(%d, %d) score=%d depth=%d nodes=%d %.0fnps threads=%d",
+				x, y, score, depth, nodes, getNodesPerSecond(), threads);
+	}
+}
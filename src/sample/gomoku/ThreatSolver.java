@@ -0,0 +1,398 @@
+package sample.gomoku;
+
+import vip2011.tic.Board;
+
+/**
+ * 五目並べの局面で、連続して脅威を与え続ける勝ち筋を探索するクラスです。
+ * 
+ * <p>攻め方の手を「四」（次に五連を作れる手）だけに絞った探索を VCF（Victory by Continuous Fours）、
+ * 「四」と「三」（次に防げない四を作れる手）に広げた探索を VCT（Victory by Continuous Threats）と呼びます。
+ * 受け方の手は脅威を止める手と、受け方自身の四に限られるため、全幅探索よりもはるかに少ない局面数で
+ * 勝ち筋を見つけたり、勝ち筋が無いことを示したりできます。五連の判定は {@link Gomoku#checkFinish(int, int)}
+ * と同じく {@link GomokuBitBoard} で行います。</p>
+ * <code><pre>
+ * ThreatSolver solver = new ThreatSolver(20, 1000000);
+ * int[] line = solver.solveVCF(board, Gomoku.FIRST);
+ * if (line != null) {
+ *     // line[0], line[2], ... が攻め方の手、line[1], line[3], ... が受け方の手
+ * } else if (solver.isComplete()) {
+ *     // 勝ち筋が存在しないことが示された
+ * }
+ * </pre></code>
+ */
+public class ThreatSolver {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private static final int[] DX = { 1, 0, 1,  1 };
+	private static final int[] DY = { 0, 1, 1, -1 };
+
+	private final int maxDepth;
+	private final long maxNodes;
+
+	private GomokuPosition pos;
+	private GomokuBitBoard bits;
+	private int width, height;
+	private int attacker, defender;
+	private boolean vct;
+
+	private long nodes;
+	private long nodeLimit;
+	private boolean limitHit;
+
+	/* 手番ごとの作業用配列 */
+	private int[][] moves;
+	private int[][] points;
+	private int[] best;
+	private int[] firstDefense;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した深さと局面数を上限として探索するソルバを作成します。
+	 * 
+	 * @param maxDepth 攻め方の手数の上限
+	 * @param maxNodes 1回の探索で調べる局面数の上限
+	 */
+	public ThreatSolver(int maxDepth, long maxNodes) {
+		if (maxDepth <= 0 || maxNodes <= 0)
+			throw new IllegalArgumentException("不正な探索パラメータです。");
+		this.maxDepth = maxDepth;
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * 指定した局面で、攻め方が四だけを連続して勝つ手順（VCF）を探索します。
+	 * 局面は攻め方の手番であるものとして扱います。
+	 * 
+	 * @param board ボード
+	 * @param attacker 攻め方のプレイヤーのID
+	 * @return 勝ち筋（攻め方と受け方の手のインデックスを交互に並べたもの）、見つからない場合は null
+	 */
+	public int[] solveVCF(Board board, int attacker) {
+		return solve(board, attacker, false);
+	}
+
+	/**
+	 * 指定した局面で、攻め方が四と三を連続して勝つ手順（VCT）を探索します。
+	 * 局面は攻め方の手番であるものとして扱います。
+	 * 受け方の応手が複数ある場合、返される勝ち筋はそのうちの一つの変化です。
+	 * 
+	 * @param board ボード
+	 * @param attacker 攻め方のプレイヤーのID
+	 * @return 勝ち筋（攻め方と受け方の手のインデックスを交互に並べたもの）、見つからない場合は null
+	 */
+	public int[] solveVCT(Board board, int attacker) {
+		return solve(board, attacker, true);
+	}
+
+	/**
+	 * 直前の探索で、上限に達することなく全ての手順を調べ終えたかどうかを取得します。
+	 * 探索が勝ち筋を返さず、このメソッドが true を返す場合、その局面に勝ち筋が存在しないことが示されています。
+	 * 
+	 * @return 全ての手順を調べ終えたかどうか
+	 */
+	public boolean isComplete() {
+		return !limitHit;
+	}
+
+	/**
+	 * 直前の探索で調べた局面数を取得します。
+	 * 
+	 * @return 局面数
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/*
+	 * 探索の本体。勝ちが証明できたら主要な変化を1本取り出して返す。
+	 */
+	private int[] solve(Board board, int attacker, boolean vct) {
+		if (attacker != Gomoku.FIRST && attacker != Gomoku.SECOND)
+			throw new IllegalArgumentException("不正なプレイヤーIDです。");
+		if (pos == null || pos.getWidth() != board.getWidth() || pos.getHeight() != board.getHeight()) {
+			pos = new GomokuPosition(board);
+			width  = board.getWidth();
+			height = board.getHeight();
+			int size = width * height;
+			int plies = maxDepth * 2 + 2;
+			moves  = new int[plies][size];
+			points = new int[plies][size];
+			best = new int[plies];
+			firstDefense = new int[plies];
+		} else {
+			pos.load(board);
+		}
+		this.bits = pos.getBitBoard();
+		this.attacker = attacker;
+		this.defender = (attacker == Gomoku.FIRST) ? Gomoku.SECOND : Gomoku.FIRST;
+		this.vct = vct;
+		this.nodes = 0;
+
+		// 反復深化で、短い勝ち筋から順に探す
+		this.nodeLimit = maxNodes;
+		int depth;
+		boolean found = false;
+		for (depth = 1; depth <= maxDepth; ++depth) {
+			limitHit = false;
+			found = attack(depth, 0);
+			if (found || !limitHit || nodes > maxNodes)
+				break;
+		}
+		if (!found)
+			return null;
+
+		// 証明済みの局面を、受け方の最初の応手に沿ってたどり直す（勝ちは証明済みなので局面数で打ち切らない）
+		long searched = nodes;
+		boolean hit = limitHit;
+		int[] line = new int[depth * 2 + 1];
+		int n = 0;
+		nodeLimit = Long.MAX_VALUE;
+		try {
+			for (int ply = 0; depth >= 0; --depth, ply += 2) {
+				if (!attack(depth, ply))
+					break;
+				int move = best[ply];
+				line[n++] = move;
+				pos.play(move, attacker);
+				if (pos.isFive(move))
+					break;
+				int d = firstDefense[ply];
+				line[n++] = d;
+				pos.play(d, defender);
+			}
+		} finally {
+			while (pos.getMoveCount() > 0)
+				pos.undo();
+			nodes = searched;
+			limitHit = hit;
+		}
+
+		int[] result = new int[n];
+		System.arraycopy(line, 0, result, 0, n);
+		return result;
+	}
+
+	/*
+	 * 攻め方の手番（OR節点）。勝てる手があれば best[ply] に記録して true を返す。
+	 */
+	private boolean attack(int depth, int ply) {
+		if (++nodes > nodeLimit) {
+			limitHit = true;
+			return false;
+		}
+
+		int[] mv = moves[ply];
+		int n = pos.generateMoves(mv);
+
+		// 五連が作れれば勝ち
+		for (int i = 0; i < n; ++i) {
+			if (isFiveWith(mv[i], attacker)) {
+				best[ply] = mv[i];
+				return true;
+			}
+		}
+		if (depth == 0) {
+			limitHit = true;
+			return false;
+		}
+
+		// 受け方の四が残っていれば、そこを止める手しか選べない
+		int forced = -1;
+		for (int i = 0; i < n; ++i) {
+			if (isFiveWith(mv[i], defender)) {
+				if (forced >= 0)
+					return false;
+				forced = mv[i];
+			}
+		}
+		if (forced >= 0) {
+			mv[0] = forced;
+			n = 1;
+		}
+
+		// 四を先に、三を後に調べる
+		int passes = vct ? 2 : 1;
+		for (int pass = 0; pass < passes; ++pass) {
+			for (int i = 0; i < n; ++i) {
+				if (threat(mv[i], pass == 1, depth, ply)) {
+					best[ply] = mv[i];
+					return true;
+				}
+				if (limitHit && nodes > nodeLimit)
+					return false;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * 攻め方が move に四（threes が true の場合は三）を打って勝てるかどうか
+	 */
+	private boolean threat(int move, boolean threes, int depth, int ply) {
+		int my = move / width, mx = move - my * width;
+		int[] pt = points[ply];
+
+		// 脅威にならない手は、ビットボードだけで判定して局面を進めずに捨てる
+		bits.set(mx, my, attacker);
+		int fives = fivePoints(move, attacker, pt, 0);
+		boolean three = (threes && fives == 0 && isThree(move));
+		bits.set(mx, my, Board.NODATA);
+		if (threes ? !three : fives == 0)
+			return false;
+
+		pos.play(move, attacker);
+		boolean win;
+		if (fives > 0) {
+			// 四：受け方は五連になる点を止めるしかない
+			win = defend(pt, 0, fives, depth, ply);
+		} else {
+			// 三：受け方は三の周辺で止めるか、自分の四で反撃する
+			int m = threeDefenses(move, pt);
+			win = defend(pt, 0, m, depth, ply);
+		}
+		pos.undo();
+		return win;
+	}
+
+	/*
+	 * 受け方の手番（AND節点）。全ての応手に対して攻め方が勝てれば true を返す。
+	 */
+	private boolean defend(int[] defenses, int from, int to, int depth, int ply) {
+		for (int i = from; i < to; ++i) {
+			int d = defenses[i];
+			pos.play(d, defender);
+			boolean win = !pos.isFive(d) && attack(depth - 1, ply + 2);
+			pos.undo();
+			if (!win)
+				return false;
+			if (i == from)
+				firstDefense[ply] = d;
+		}
+		return to > from;
+	}
+
+	/*
+	 * move に置いた（ビットボード上に置かれている）id の石を通る線上で、id が五連を作れる空きマスを dst[offset..] に列挙する
+	 */
+	private int fivePoints(int move, int id, int[] dst, int offset) {
+		int n = offset;
+		int y = move / width, x = move - y * width;
+		for (int dir = 0; dir < 4; ++dir) {
+			for (int k = -4; k <= 4; ++k) {
+				int tx = x + DX[dir] * k, ty = y + DY[dir] * k;
+				if (k == 0 || tx < 0 || tx >= width || ty < 0 || ty >= height)
+					continue;
+				int index = ty * width + tx;
+				if (pos.get(index) == Board.NODATA && bits.isFiveWith(tx, ty, id))
+					dst[n++] = index;
+			}
+		}
+		return n - offset;
+	}
+
+	/*
+	 * move に置いた（ビットボード上に置かれている）攻め方の石が三（次に五連の点が2つある四を作れる）かどうか
+	 */
+	private boolean isThree(int move) {
+		int y = move / width, x = move - y * width;
+		for (int dir = 0; dir < 4; ++dir) {
+			if (countOnLine(x, y, dir, attacker) < 2)
+				continue;
+			for (int k = -4; k <= 4; ++k) {
+				int tx = x + DX[dir] * k, ty = y + DY[dir] * k;
+				if (k == 0 || tx < 0 || tx >= width || ty < 0 || ty >= height)
+					continue;
+				int index = ty * width + tx;
+				if (pos.get(index) != Board.NODATA)
+					continue;
+				bits.set(tx, ty, attacker);
+				int count = 0;
+				for (int j = -4; j <= 4 && count < 2; ++j) {
+					int ux = tx + DX[dir] * j, uy = ty + DY[dir] * j;
+					if (j == 0 || ux < 0 || ux >= width || uy < 0 || uy >= height)
+						continue;
+					int u = uy * width + ux;
+					if (u != move && pos.get(u) == Board.NODATA && bits.isFiveWith(ux, uy, attacker))
+						++count;
+				}
+				bits.set(tx, ty, Board.NODATA);
+				if (count >= 2)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * 三に対する受け方の候補手：三を通る線上の近くの空きマスと、受け方の四を作る手
+	 */
+	private int threeDefenses(int move, int[] dst) {
+		int n = 0;
+		int y = move / width, x = move - y * width;
+		for (int dir = 0; dir < 4; ++dir) {
+			for (int k = -5; k <= 5; ++k) {
+				int tx = x + DX[dir] * k, ty = y + DY[dir] * k;
+				if (k == 0 || tx < 0 || tx >= width || ty < 0 || ty >= height)
+					continue;
+				int index = ty * width + tx;
+				if (pos.get(index) == Board.NODATA)
+					dst[n++] = index;
+			}
+		}
+
+		// 受け方の四（攻め方は止めざるを得ないので、手番を取り返せる）
+		int[] mv = moves[moves.length - 1];
+		int c = pos.generateMoves(mv);
+		for (int i = 0; i < c; ++i) {
+			int index = mv[i];
+			if (contains(dst, n, index))
+				continue;
+			int ty = index / width, tx = index - ty * width;
+			bits.set(tx, ty, defender);
+			boolean four = false;
+			for (int dir = 0; dir < 4 && !four; ++dir) {
+				for (int k = -4; k <= 4; ++k) {
+					int ux = tx + DX[dir] * k, uy = ty + DY[dir] * k;
+					if (k == 0 || ux < 0 || ux >= width || uy < 0 || uy >= height)
+						continue;
+					if (pos.get(uy * width + ux) == Board.NODATA && bits.isFiveWith(ux, uy, defender)) {
+						four = true;
+						break;
+					}
+				}
+			}
+			bits.set(tx, ty, Board.NODATA);
+			if (four)
+				dst[n++] = index;
+		}
+		return n;
+	}
+
+	/*
+	 * (x, y) を通る dir 方向の線上で、距離4以内にある id の石の数（(x, y) 自身は含まない）
+	 */
+	private int countOnLine(int x, int y, int dir, int id) {
+		int count = 0;
+		for (int k = -4; k <= 4; ++k) {
+			int tx = x + DX[dir] * k, ty = y + DY[dir] * k;
+			if (k != 0 && 0 <= tx && tx < width && 0 <= ty && ty < height && pos.get(ty * width + tx) == id)
+				++count;
+		}
+		return count;
+	}
+
+	private boolean isFiveWith(int index, int id) {
+		int y = index / width;
+		return bits.isFiveWith(index - y * width, y, id);
+	}
+
+	private static boolean contains(int[] a, int n, int value) {
+		for (int i = 0; i < n; ++i)
+			if (a[i] == value)
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,119 @@
+package sample.gomoku;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 複数の探索スレッドで共有する、ロックを使わない置換表です。
+ * 
+ * <p>各エントリは「キー XOR データ」と「データ」の2つのlongで構成されます。
+ * 書き込みが別のスレッドと競合してエントリが壊れた場合は、読み出し時にキーが一致しなくなるため、
+ * 単にヒットしなかったものとして扱われます（Hyattのロックレスハッシュ）。</p>
+ */
+public class TranspositionTable {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** 評価値が正確な値であることを表す定数です。 */
+	public static final int EXACT = 0;
+
+	/** 評価値が下限値（beta cut）であることを表す定数です。 */
+	public static final int LOWER = 1;
+
+	/** 評価値が上限値（alpha 以下）であることを表す定数です。 */
+	public static final int UPPER = 2;
+
+	private final AtomicLongArray table;
+	private final int mask;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したエントリ数（2のべき乗に切り上げられます）の置換表を作成します。
+	 * 
+	 * @param entries エントリ数
+	 */
+	public TranspositionTable(int entries) {
+		int size = Integer.highestOneBit(Math.max(1, entries - 1)) << 1;
+		this.table = new AtomicLongArray(size * 2);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * 指定したハッシュ値のエントリを取得します。
+	 * 得られた値は {@link #move(long)} などで分解してください。
+	 * 
+	 * @param hash 局面のハッシュ値
+	 * @return エントリのデータ、見つからない場合は 0
+	 */
+	public long probe(long hash) {
+		int i = ((int)hash & mask) << 1;
+		long key  = table.get(i);
+		long data = table.get(i + 1);
+		return ((key ^ data) == hash) ? data : 0;
+	}
+
+	/**
+	 * エントリを書き込みます。
+	 * 
+	 * @param hash 局面のハッシュ値
+	 * @param move 最善手のインデックス（無い場合は -1）
+	 * @param score 評価値
+	 * @param depth 残り深さ
+	 * @param flag {@link #EXACT}、{@link #LOWER}、{@link #UPPER} のいずれか
+	 */
+	public void store(long hash, int move, int score, int depth, int flag) {
+		long data = ((long)score << 32) | ((long)(move + 1) & 0xFFFF) << 16 | (depth & 0xFF) << 8 | (flag & 0x3) | 0x4;
+		int i = ((int)hash & mask) << 1;
+		table.lazySet(i, hash ^ data);
+		table.lazySet(i + 1, data);
+	}
+
+	/**
+	 * 全てのエントリを消去します。
+	 */
+	public void clear() {
+		for (int i = 0; i < table.length(); ++i)
+			table.set(i, 0);
+	}
+
+	/**
+	 * エントリのデータから最善手を取り出します。
+	 * 
+	 * @param data {@link #probe(long)} で得たデータ
+	 * @return 最善手のインデックス、無い場合は -1
+	 */
+	public static int move(long data) {
+		return (int)((data >>> 16) & 0xFFFF) - 1;
+	}
+
+	/**
+	 * エントリのデータから評価値を取り出します。
+	 * 
+	 * @param data {@link #probe(long)} で得たデータ
+	 * @return 評価値
+	 */
+	public static int score(long data) {
+		return (int)(data >> 32);
+	}
+
+	/**
+	 * エントリのデータから残り深さを取り出します。
+	 * 
+	 * @param data {@link #probe(long)} で得たデータ
+	 * @return 残り深さ
+	 */
+	public static int depth(long data) {
+		return (int)((data >>> 8) & 0xFF);
+	}
+
+	/**
+	 * エントリのデータから評価値の種類を取り出します。
+	 * 
+	 * @param data {@link #probe(long)} で得たデータ
+	 * @return {@link #EXACT}、{@link #LOWER}、{@link #UPPER} のいずれか
+	 */
+	public static int flag(long data) {
+		return (int)(data & 0x3);
+	}
+}
@@ -0,0 +1,284 @@
+package sample.gomoku.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * 五目並べの対戦サーバ（{@link GomokuServer}）に接続するクライアントです。
+ * 
+ * <p>接続した後のソケットはノンブロッキングで、{@link #join()} や {@link #move(int, int)} は送信バッファに
+ * メッセージを追加して書けるだけ書き込むだけです。受信したメッセージは {@link #poll(Listener, long)} で
+ * {@link Listener} に渡されます。ゲームループから毎フレーム待ち時間 0 で呼び出すことを想定しています。</p>
+ * 
+ * <p>ゲームループから接続する場合は、接続の完了を待たない {@link #open(InetSocketAddress)} を利用してください。
+ * 接続は {@link #poll(Listener, long)} の中で完了し、それまでに送ったメッセージは接続した後で書き込まれます。</p>
+ * <code><pre>
+ * GomokuClient client = GomokuClient.open(new InetSocketAddress("localhost", GomokuProtocol.DEFAULT_PORT));
+ * client.join();
+ * while (...) {
+ *     client.poll(listener, 0);
+ * }
+ * client.close();
+ * </pre></code>
+ * 
+ * <p>このクラスはスレッドセーフではありません。1つのスレッドから利用してください。</p>
+ */
+public class GomokuClient {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final SocketChannel channel;
+	private final Selector selector;
+	private final SelectionKey key;
+	private final ByteBuffer in = ByteBuffer.allocate(1024);
+	private final ByteBuffer out = ByteBuffer.allocate(1024);
+	private boolean connecting;
+	private boolean closed;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	private GomokuClient(SocketChannel channel, boolean connecting) throws IOException {
+		this.channel = channel;
+		this.connecting = connecting;
+		this.selector = Selector.open();
+		channel.configureBlocking(false);
+		this.key = channel.register(selector, connecting ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * 指定したアドレスのサーバに接続します。接続が完了するまで待ちます。
+	 * 
+	 * @param address サーバのアドレス
+	 * @return クライアント
+	 * @throws IOException 接続できない場合
+	 */
+	public static GomokuClient connect(InetSocketAddress address) throws IOException {
+		SocketChannel ch = SocketChannel.open(address);
+		try {
+			ch.socket().setTcpNoDelay(true);
+			return new GomokuClient(ch, false);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 指定したアドレスのサーバへの接続を開始します。接続の完了は待ちません。
+	 * 接続は {@link #poll(Listener, long)} で完了し、失敗した場合はそこで {@link IOException} がスローされます。
+	 * 
+	 * @param address サーバのアドレス
+	 * @return クライアント
+	 * @throws IOException 接続を開始できない場合
+	 */
+	public static GomokuClient open(InetSocketAddress address) throws IOException {
+		SocketChannel ch = SocketChannel.open();
+		try {
+			ch.configureBlocking(false);
+			ch.socket().setTcpNoDelay(true);
+			boolean connected = ch.connect(address);
+			return new GomokuClient(ch, !connected);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * 対戦相手を待つことを要求します。
+	 * 
+	 * @throws IOException 送信に失敗した場合
+	 */
+	public void join() throws IOException {
+		send(GomokuProtocol.JOIN, 0, 0);
+	}
+	
+	/**
+	 * 指定したマスに石を置くことを要求します。
+	 * 置けたかどうかは {@link Listener#moved(int, int, int)} または {@link Listener#rejected(int)} で知らされます。
+	 * 
+	 * @param x X座標
+	 * @param y Y座標
+	 * @throws IOException 送信に失敗した場合
+	 */
+	public void move(int x, int y) throws IOException {
+		if (x < 0 || x > 0xFF || y < 0 || y > 0xFF)
+			throw new IllegalArgumentException("座標が範囲外です。");
+		send(GomokuProtocol.MOVE, x, y);
+	}
+	
+	private void send(int type, int a, int b) throws IOException {
+		if (closed)
+			throw new IOException("接続は閉じられています。");
+		int length = GomokuProtocol.getLength(type);
+		if (out.remaining() < length)
+			throw new IOException("送信バッファが一杯です。");
+		out.put((byte)type);
+		if (length > 1)
+			out.put((byte)a);
+		if (length > 2)
+			out.put((byte)b);
+		flush();
+	}
+	
+	/*
+	 * 送信バッファを書けるだけ書き込む（接続中は溜めておく）
+	 */
+	private void flush() throws IOException {
+		if (connecting)
+			return;
+		out.flip();
+		channel.write(out);
+		out.compact();
+		key.interestOps((out.position() > 0) ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ);
+	}
+	
+	/**
+	 * 受信したメッセージを処理します。
+	 * 
+	 * @param listener メッセージを受け取るリスナ
+	 * @param timeout メッセージが無い場合に待つ時間(ms)。0 なら待たない
+	 * @return 処理したメッセージの数、サーバが接続を閉じた場合は -1
+	 * @throws IOException 通信に失敗した場合
+	 */
+	public int poll(Listener listener, long timeout) throws IOException {
+		if (closed)
+			return -1;
+		if (timeout > 0)
+			selector.select(timeout);
+		else
+			selector.selectNow();
+		selector.selectedKeys().clear();
+		if (connecting) {
+			if (!channel.finishConnect())
+				return 0;
+			connecting = false;
+			key.interestOps(SelectionKey.OP_READ);
+		}
+		if (out.position() > 0)
+			flush();
+		
+		int count = 0;
+		while (true) {
+			int n = channel.read(in);
+			in.flip();
+			while (in.hasRemaining()) {
+				int type = in.get(in.position()) & 0xFF;
+				int length = GomokuProtocol.getLength(type);
+				if (length < 0)
+					throw new IOException("不明なメッセージです: " + type);
+				if (in.remaining() < length)
+					break;
+				in.get();
+				dispatch(listener, type);
+				++count;
+			}
+			in.compact();
+			if (n < 0) {
+				close();
+				return (count > 0) ? count : -1;
+			}
+			if (n == 0)
+				return count;
+		}
+	}
+	
+	private void dispatch(Listener listener, int type) {
+		switch (type) {
+		case GomokuProtocol.START:
+			listener.started(in.get() & 0xFF, in.get() & 0xFF, in.get() & 0xFF);
+			break;
+		case GomokuProtocol.MOVED:
+			listener.moved(in.get() & 0xFF, in.get() & 0xFF, in.get() & 0xFF);
+			break;
+		case GomokuProtocol.REJECT:
+			listener.rejected(in.get() & 0xFF);
+			break;
+		case GomokuProtocol.END:
+			listener.ended(in.get() & 0xFF, in.get() & 0xFF);
+			break;
+		default:
+			in.position(in.position() + GomokuProtocol.getLength(type) - 1);
+			break;
+		}
+	}
+	
+	/**
+	 * 接続が完了しているかどうかを取得します。
+	 * 
+	 * @return 接続が完了していて、閉じていないかどうか
+	 */
+	public boolean isConnected() {
+		return !connecting && !closed;
+	}
+	
+	/**
+	 * 接続が閉じているかどうかを取得します。
+	 * 
+	 * @return 閉じているかどうか
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	/**
+	 * 接続を閉じます。
+	 */
+	public void close() {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			selector.close();
+			channel.close();
+		} catch (IOException e) {
+			// 閉じられない場合は無視
+		}
+	}
+	
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/**
+	 * サーバからのメッセージを受け取るインタフェースです。
+	 */
+	public interface Listener {
+		/**
+		 * 対戦が始まったときに呼び出されます。
+		 * 
+		 * @param id 自分のプレイヤーのID
+		 * @param width ボードの横幅
+		 * @param height ボードの縦幅
+		 */
+		void started(int id, int width, int height);
+		
+		/**
+		 * どちらかのプレイヤーが石を置いたときに呼び出されます。
+		 * 
+		 * @param id 石を置いたプレイヤーのID
+		 * @param x X座標
+		 * @param y Y座標
+		 */
+		void moved(int id, int x, int y);
+		
+		/**
+		 * 要求が受け付けられなかったときに呼び出されます。
+		 * 
+		 * @param reason 理由（{@link GomokuProtocol#NOT_YOUR_TURN} など）
+		 */
+		void rejected(int reason);
+		
+		/**
+		 * 対戦が終わったときに呼び出されます。
+		 * 
+		 * @param winner 勝ったプレイヤーのID、引き分けの場合は 0
+		 * @param reason 理由（{@link GomokuProtocol#FIVE} など）
+		 */
+		void ended(int winner, int reason);
+	}
+}
@@ -0,0 +1,140 @@
+package sample.gomoku.net;
+
+import sample.gomoku.Gomoku;
+import sample.gomoku.GomokuBitBoard;
+import vip2011.tic.Board;
+
+/**
+ * 1つの対戦の盤面と手番を保持し、石を置く要求を検証するクラスです。
+ * 
+ * <p>盤面は {@link Board} と {@link GomokuBitBoard} で保持し、終了の判定は {@link Gomoku#checkFinish(int, int)} と
+ * 同じく、置いた石を含む線に同じ色の石が5つ以上並んだかどうかで行います。通信には依存しません。</p>
+ */
+public class GomokuMatch {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** ボードの横幅の既定値です。 */
+	public static final int DEFAULT_WIDTH  = 20;
+	
+	/** ボードの縦幅の既定値です。 */
+	public static final int DEFAULT_HEIGHT = 20;
+	
+	private final Board board;
+	private final GomokuBitBoard bits;
+	private int turn = Gomoku.FIRST;
+	private int winner;
+	private boolean finished;
+	private int moves;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 既定の大きさのボードで対戦を作成します。
+	 */
+	public GomokuMatch() {
+		this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+	}
+	
+	/**
+	 * 指定した大きさのボードで対戦を作成します。
+	 * 
+	 * @param width ボードの横幅（64以下）
+	 * @param height ボードの縦幅（64以下）
+	 */
+	public GomokuMatch(int width, int height) {
+		this.board = new Board(width, height);
+		this.bits = new GomokuBitBoard(width, height);
+	}
+	
+	/**
+	 * 指定したプレイヤーの石を置きます。
+	 * 
+	 * @param id プレイヤーのID
+	 * @param x X座標
+	 * @param y Y座標
+	 * @return 置いた場合は 0、置けない場合は理由（{@link GomokuProtocol#NOT_YOUR_TURN} など）
+	 */
+	public int play(int id, int x, int y) {
+		if (finished)
+			return GomokuProtocol.NOT_IN_GAME;
+		if (id != turn)
+			return GomokuProtocol.NOT_YOUR_TURN;
+		if (x < 0 || y < 0 || x >= board.getWidth() || y >= board.getHeight())
+			return GomokuProtocol.OUT_OF_BOARD;
+		if (board.getData(x, y) != Board.NODATA)
+			return GomokuProtocol.OCCUPIED;
+		
+		board.setData(x, y, id);
+		bits.set(x, y, id);
+		++moves;
+		if (bits.isFive(x, y, id)) {
+			finished = true;
+			winner = id;
+		} else if (moves == board.getWidth() * board.getHeight()) {
+			finished = true;
+		} else {
+			turn = opponent(id);
+		}
+		return 0;
+	}
+	
+	/**
+	 * 指定したプレイヤーが対戦を放棄したものとして終了します。
+	 * 
+	 * @param id 放棄したプレイヤーのID
+	 */
+	public void abandon(int id) {
+		if (!finished) {
+			finished = true;
+			winner = opponent(id);
+		}
+	}
+	
+	/**
+	 * 相手のプレイヤーのIDを取得します。
+	 * 
+	 * @param id プレイヤーのID
+	 * @return 相手のプレイヤーのID
+	 */
+	public static int opponent(int id) {
+		return (id == Gomoku.FIRST) ? Gomoku.SECOND : Gomoku.FIRST;
+	}
+	
+	/**
+	 * 対戦が終わったかどうかを取得します。
+	 * 
+	 * @return 終わったかどうか
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+	
+	/**
+	 * 勝ったプレイヤーのIDを取得します。
+	 * 
+	 * @return プレイヤーのID、対戦中または引き分けの場合は 0
+	 */
+	public int getWinner() {
+		return winner;
+	}
+	
+	/**
+	 * 次に石を置くプレイヤーのIDを取得します。
+	 * 
+	 * @return プレイヤーのID
+	 */
+	public int getTurn() {
+		return turn;
+	}
+	
+	/**
+	 * 盤面を取得します。
+	 * 
+	 * @return 盤面
+	 */
+	public Board getBoard() {
+		return board;
+	}
+}
@@ -0,0 +1,95 @@
+package sample.gomoku.net;
+
+/**
+ * 対戦サーバ（{@link GomokuServer}）とクライアント（{@link GomokuClient}）の間でやり取りするメッセージの定義です。
+ * 
+ * <p>メッセージは先頭1バイトの型と、型ごとに長さの決まった1バイト単位の値からなります。
+ * 長さは型から決まるので、長さの欄はありません。座標は 0 から始まるマスの位置です。</p>
+ * <table border="1">
+ * <tr><th>型</th><th>向き</th><th>値</th></tr>
+ * <tr><td>{@link #JOIN}</td><td>クライアント→サーバ</td><td>なし</td></tr>
+ * <tr><td>{@link #MOVE}</td><td>クライアント→サーバ</td><td>X座標、Y座標</td></tr>
+ * <tr><td>{@link #START}</td><td>サーバ→クライアント</td><td>自分のプレイヤーのID、ボードの横幅、縦幅</td></tr>
+ * <tr><td>{@link #MOVED}</td><td>サーバ→クライアント</td><td>石を置いたプレイヤーのID、X座標、Y座標</td></tr>
+ * <tr><td>{@link #REJECT}</td><td>サーバ→クライアント</td><td>理由（{@link #NOT_IN_GAME} など）</td></tr>
+ * <tr><td>{@link #END}</td><td>サーバ→クライアント</td><td>勝ったプレイヤーのID（引き分けは 0）、理由（{@link #FIVE} など）</td></tr>
+ * </table>
+ * <p>プレイヤーのIDは {@link sample.gomoku.Gomoku#FIRST} と {@link sample.gomoku.Gomoku#SECOND} で、
+ * 先攻（{@link sample.gomoku.Gomoku#FIRST}）から交互に石を置きます。</p>
+ */
+public final class GomokuProtocol {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** 既定のポート番号です。 */
+	public static final int DEFAULT_PORT = 7650;
+	
+	/** 対戦相手を待つことを要求するメッセージです。 */
+	public static final int JOIN   = 0x01;
+	
+	/** 石を置くことを要求するメッセージです。 */
+	public static final int MOVE   = 0x02;
+	
+	/** 対戦が始まったことを知らせるメッセージです。 */
+	public static final int START  = 0x81;
+	
+	/** 石が置かれたことを対戦中の二人に知らせるメッセージです。 */
+	public static final int MOVED  = 0x82;
+	
+	/** 要求が受け付けられなかったことを知らせるメッセージです。 */
+	public static final int REJECT = 0x83;
+	
+	/** 対戦が終わったことを知らせるメッセージです。 */
+	public static final int END    = 0x84;
+	
+	/** 拒否の理由: 対戦していません。 */
+	public static final int NOT_IN_GAME   = 1;
+	
+	/** 拒否の理由: 相手の手番です。 */
+	public static final int NOT_YOUR_TURN = 2;
+	
+	/** 拒否の理由: ボードの範囲外です。 */
+	public static final int OUT_OF_BOARD  = 3;
+	
+	/** 拒否の理由: 既に石が置かれています。 */
+	public static final int OCCUPIED      = 4;
+	
+	/** 拒否の理由: 既に対戦しているか、対戦相手を待っています。 */
+	public static final int ALREADY_JOINED = 5;
+	
+	/** 終了の理由: 五連ができました。 */
+	public static final int FIVE      = 1;
+	
+	/** 終了の理由: 置ける場所が無くなりました（引き分け）。 */
+	public static final int DRAW      = 2;
+	
+	/** 終了の理由: 対戦相手の接続が切れました。 */
+	public static final int ABANDONED = 3;
+	
+	/** メッセージの長さの最大値です。 */
+	public static final int MAX_LENGTH = 4;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	private GomokuProtocol() {
+	}
+	
+	/**
+	 * 指定した型のメッセージの長さ（型の1バイトを含む）を取得します。
+	 * 
+	 * @param type メッセージの型
+	 * @return 長さ(バイト)、未知の型の場合は -1
+	 */
+	public static int getLength(int type) {
+		switch (type) {
+		case JOIN:   return 1;
+		case MOVE:   return 3;
+		case START:  return 4;
+		case MOVED:  return 4;
+		case REJECT: return 2;
+		case END:    return 3;
+		default:     return -1;
+		}
+	}
+}
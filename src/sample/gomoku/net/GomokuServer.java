@@ -0,0 +1,502 @@
+package sample.gomoku.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import sample.gomoku.Gomoku;
+
+/**
+ * 五目並べの対戦サーバです。
+ * 
+ * <p>1つのスレッドが {@link Selector} で全ての接続を扱います。{@link GomokuProtocol#JOIN} を送った
+ * クライアントを順に二人ずつ組にして対戦させ、{@link GomokuProtocol#MOVE} は {@link GomokuMatch} で検証してから
+ * 対戦中の二人に {@link GomokuProtocol#MOVED} として知らせます。</p>
+ * 
+ * <p>送信するメッセージは接続ごとのバッファに溜められ、選択されたイベントを全て処理した後で接続ごとに1回だけ書き込まれます。
+ * 書き切れなかった場合だけ書き込みの準備を待つため、待機中の接続は小さな受信バッファ1つ分のメモリしか使いません。
+ * 接続の切断もメッセージの処理中には行わず、同じく処理の後でまとめて行うため、対戦の状態が処理の途中で変わることはありません。</p>
+ * <code><pre>
+ * java -cp bin sample.gomoku.net.GomokuServer [ポート番号]
+ * </pre></code>
+ */
+public class GomokuServer implements Runnable {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/* 接続ごとの受信バッファの大きさ */
+	private static final int READ_BUFFER = 64;
+	
+	/* 送信バッファの初期の大きさと、これを超えたら受信しない相手として切断する大きさ */
+	private static final int WRITE_BUFFER = 64;
+	private static final int MAX_WRITE_BUFFER = 1 << 16;
+	
+	/* 受け付けに失敗した後、受け付けを再開するまでの時間(ms) */
+	private static final long ACCEPT_BACKOFF = 100;
+	
+	private final ServerSocketChannel server;
+	private final Selector selector;
+	private final SelectionKey acceptKey;
+	private final int boardWidth, boardHeight;
+	
+	/* 以下はサーバのスレッドだけが読み書きする */
+	private final List<Connection> dirty = new ArrayList<Connection>();
+	private final List<Connection> closing = new ArrayList<Connection>();
+	private Connection waiting;
+	private boolean acceptPaused;
+	private long acceptResume;
+	
+	private volatile boolean running;
+	private volatile int connections, matches;
+	private Thread thread;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したアドレスで接続を待つサーバを作成します。
+	 * ポート番号に 0 を指定すると、空いているポートが使われます。
+	 * 
+	 * @param address 接続を待つアドレス
+	 * @throws IOException ソケットを開けない場合
+	 */
+	public GomokuServer(InetSocketAddress address) throws IOException {
+		this(address, GomokuMatch.DEFAULT_WIDTH, GomokuMatch.DEFAULT_HEIGHT);
+	}
+	
+	/**
+	 * 指定したアドレスで接続を待ち、指定した大きさのボードで対戦させるサーバを作成します。
+	 * 
+	 * @param address 接続を待つアドレス
+	 * @param boardWidth ボードの横幅（64以下）
+	 * @param boardHeight ボードの縦幅（64以下）
+	 * @throws IOException ソケットを開けない場合
+	 */
+	public GomokuServer(InetSocketAddress address, int boardWidth, int boardHeight) throws IOException {
+		if (boardWidth <= 0 || boardWidth > 64 || boardHeight <= 0 || boardHeight > 64)
+			throw new IllegalArgumentException("ボードのサイズは64以下である必要があります。");
+		this.boardWidth = boardWidth;
+		this.boardHeight = boardHeight;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.configureBlocking(false);
+		server.socket().setReuseAddress(true);
+		server.socket().bind(address, 1024);
+		this.acceptKey = server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+	
+	/**
+	 * サーバを起動します。
+	 * 
+	 * @param args ポート番号（省略時は {@link GomokuProtocol#DEFAULT_PORT}）
+	 * @throws IOException ソケットを開けない場合
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : GomokuProtocol.DEFAULT_PORT;
+		GomokuServer server = new GomokuServer(new InetSocketAddress(port));
+		System.out.println("listening on " + server.getPort());
+		server.run();
+	}
+	
+	/**
+	 * 新しいスレッドでサーバを動かします。
+	 */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("既に開始しています。");
+		thread = new Thread(this, "GomokuServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * 呼び出したスレッドでサーバを動かします。{@link #close()} が呼び出されるまで戻りません。
+	 */
+	public void run() {
+		running = true;
+		try {
+			while (running) {
+				if (acceptPaused) {
+					// 受け付けを止めている間は、再開する時刻までしか待たない
+					long wait = (acceptResume - System.nanoTime()) / 1000000L;
+					if (wait > 0)
+						selector.select(wait);
+					else
+						selector.selectNow();
+					if (System.nanoTime() - acceptResume >= 0) {
+						acceptPaused = false;
+						acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+					}
+				} else {
+					selector.select();
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable()) {
+						accept();
+						continue;
+					}
+					Connection c = (Connection)key.attachment();
+					try {
+						if (key.isReadable())
+							c.read();
+						if (key.isValid() && key.isWritable())
+							c.flush();
+					} catch (RuntimeException e) {
+						// 1つの接続の不具合でサーバ全体を止めないように、その接続だけを切断する
+						e.printStackTrace();
+						c.close();
+					}
+				}
+				
+				// この回で溜まった送信をまとめて書き込み、切断を要求された接続を閉じる。
+				// 閉じた接続の相手への通知や、書き込みの失敗による切断がさらに増えなくなるまで繰り返す
+				while (!dirty.isEmpty() || !closing.isEmpty()) {
+					for (int i = 0; i < dirty.size(); ++i)
+						dirty.get(i).flush();
+					dirty.clear();
+					for (int i = 0; i < closing.size(); ++i)
+						closing.get(i).closeNow();
+					closing.clear();
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			closeAll();
+		}
+	}
+	
+	/**
+	 * サーバを停止し、全ての接続を閉じます。
+	 * 
+	 * @throws InterruptedException 停止を待っている間に割り込まれた場合
+	 */
+	public void close() throws InterruptedException {
+		running = false;
+		selector.wakeup();
+		Thread t;
+		synchronized (this) {
+			t = thread;
+		}
+		if (t != null && t != Thread.currentThread())
+			t.join();
+	}
+	
+	/**
+	 * 接続を待っているポート番号を取得します。
+	 * 
+	 * @return ポート番号
+	 */
+	public int getPort() {
+		return server.socket().getLocalPort();
+	}
+	
+	/**
+	 * 現在の接続数を取得します。
+	 * 
+	 * @return 接続数
+	 */
+	public int getConnectionCount() {
+		return connections;
+	}
+	
+	/**
+	 * 現在の対戦数を取得します。
+	 * 
+	 * @return 対戦数
+	 */
+	public int getMatchCount() {
+		return matches;
+	}
+	
+	/*
+	 * 待っている接続を全て受け付ける。ファイル記述子が足りないなどで失敗した場合は、
+	 * 受け付けの準備ができたままで選択がすぐに戻り続けないように、しばらく受け付けを止める
+	 */
+	private void accept() {
+		while (true) {
+			SocketChannel ch;
+			try {
+				ch = server.accept();
+			} catch (IOException e) {
+				acceptKey.interestOps(0);
+				acceptPaused = true;
+				acceptResume = System.nanoTime() + ACCEPT_BACKOFF * 1000000L;
+				return;
+			}
+			if (ch == null)
+				return;
+			try {
+				ch.configureBlocking(false);
+				ch.socket().setTcpNoDelay(true);
+				Connection c = new Connection(ch);
+				c.key = ch.register(selector, SelectionKey.OP_READ, c);
+				++connections;
+			} catch (IOException e) {
+				try {
+					ch.close();
+				} catch (IOException ignore) {
+					// 閉じられない場合は無視
+				}
+			}
+		}
+	}
+	
+	private void closeAll() {
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				// 閉じられない場合は無視
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// 閉じられない場合は無視
+		}
+		connections = 0;
+		matches = 0;
+	}
+	
+	/*
+	 * 受信したメッセージを処理する
+	 */
+	private void handle(Connection c, ByteBuffer in, int type) {
+		switch (type) {
+		case GomokuProtocol.JOIN:
+			join(c);
+			break;
+		case GomokuProtocol.MOVE:
+			move(c, in.get() & 0xFF, in.get() & 0xFF);
+			break;
+		}
+	}
+	
+	private void join(Connection c) {
+		if (c.match != null || waiting == c) {
+			c.send(GomokuProtocol.REJECT, GomokuProtocol.ALREADY_JOINED);
+			return;
+		}
+		if (waiting == null) {
+			waiting = c;
+			return;
+		}
+		
+		// 先に待っていた方を先攻にする
+		Connection first = waiting;
+		waiting = null;
+		GomokuMatch match = new GomokuMatch(boardWidth, boardHeight);
+		first.startMatch(match, Gomoku.FIRST, c);
+		c.startMatch(match, Gomoku.SECOND, first);
+		++matches;
+	}
+	
+	private void move(Connection c, int x, int y) {
+		GomokuMatch match = c.match;
+		if (match == null) {
+			c.send(GomokuProtocol.REJECT, GomokuProtocol.NOT_IN_GAME);
+			return;
+		}
+		int reason = match.play(c.id, x, y);
+		if (reason != 0) {
+			c.send(GomokuProtocol.REJECT, reason);
+			return;
+		}
+		Connection o = c.opponent;
+		c.send(GomokuProtocol.MOVED, c.id, x, y);
+		o.send(GomokuProtocol.MOVED, c.id, x, y);
+		if (match.isFinished()) {
+			int why = (match.getWinner() != 0) ? GomokuProtocol.FIVE : GomokuProtocol.DRAW;
+			c.send(GomokuProtocol.END, match.getWinner(), why);
+			o.send(GomokuProtocol.END, match.getWinner(), why);
+			endMatch(c);
+		}
+	}
+	
+	/*
+	 * 対戦中なら放棄し、待っていれば取り消す
+	 */
+	private void leave(Connection c) {
+		if (waiting == c)
+			waiting = null;
+		GomokuMatch match = c.match;
+		if (match == null)
+			return;
+		if (!match.isFinished()) {
+			match.abandon(c.id);
+			c.opponent.send(GomokuProtocol.END, match.getWinner(), GomokuProtocol.ABANDONED);
+		}
+		endMatch(c);
+	}
+	
+	private void endMatch(Connection c) {
+		Connection o = c.opponent;
+		c.match = o.match = null;
+		c.opponent = o.opponent = null;
+		--matches;
+	}
+	
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/*
+	 * 1つの接続。受信バッファと、必要になってから作る送信バッファを持つ
+	 */
+	private class Connection {
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER);
+		ByteBuffer out;
+		SelectionKey key;
+		boolean queued, writeInterest, closing;
+		
+		GomokuMatch match;
+		Connection opponent;
+		int id;
+		
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+		
+		void startMatch(GomokuMatch match, int id, Connection opponent) {
+			this.match = match;
+			this.id = id;
+			this.opponent = opponent;
+			send(GomokuProtocol.START, id, boardWidth, boardHeight);
+		}
+		
+		/*
+		 * 読めるだけ読んで、揃ったメッセージを処理する
+		 */
+		void read() {
+			try {
+				while (true) {
+					int n = channel.read(in);
+					if (n < 0) {
+						close();
+						return;
+					}
+					in.flip();
+					while (in.hasRemaining()) {
+						int type = in.get(in.position()) & 0xFF;
+						int length = GomokuProtocol.getLength(type);
+						if (length < 0) {
+							// 未知の型の場合は同期が取れないので切断する
+							close();
+							return;
+						}
+						if (in.remaining() < length)
+							break;
+						in.get();
+						handle(this, in, type);
+						if (closing)
+							return;
+					}
+					in.compact();
+					if (n == 0)
+						return;
+				}
+			} catch (IOException e) {
+				close();
+			}
+		}
+		
+		void send(int type, int a) {
+			send(type, a, 0, 0);
+		}
+		
+		void send(int type, int a, int b) {
+			send(type, a, b, 0);
+		}
+		
+		/*
+		 * メッセージを送信バッファに追加し、この回の終わりに書き込む。型の長さを超える値は使われない
+		 */
+		void send(int type, int a, int b, int c) {
+			if (closing)
+				return;
+			int length = GomokuProtocol.getLength(type);
+			if (out == null) {
+				out = ByteBuffer.allocate(WRITE_BUFFER);
+			} else if (out.remaining() < length) {
+				if (out.capacity() >= MAX_WRITE_BUFFER) {
+					close();
+					return;
+				}
+				ByteBuffer buf = ByteBuffer.allocate(out.capacity() * 2);
+				out.flip();
+				buf.put(out);
+				out = buf;
+			}
+			out.put((byte)type);
+			if (length > 1)
+				out.put((byte)a);
+			if (length > 2)
+				out.put((byte)b);
+			if (length > 3)
+				out.put((byte)c);
+			if (!queued) {
+				queued = true;
+				dirty.add(this);
+			}
+		}
+		
+		/*
+		 * 溜まっている送信を書き込む。書き切れなければ書き込みの準備を待つ
+		 */
+		void flush() {
+			queued = false;
+			if (closing || out == null || out.position() == 0)
+				return;
+			try {
+				out.flip();
+				channel.write(out);
+				out.compact();
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			boolean pending = out.position() > 0;
+			if (pending != writeInterest) {
+				writeInterest = pending;
+				key.interestOps(pending ? (SelectionKey.OP_READ | SelectionKey.OP_WRITE) : SelectionKey.OP_READ);
+			}
+		}
+		
+		/*
+		 * 切断を要求する。実際に閉じるのは、この回のメッセージの処理が終わった後
+		 */
+		void close() {
+			if (closing)
+				return;
+			closing = true;
+			GomokuServer.this.closing.add(this);
+		}
+		
+		/*
+		 * 対戦から抜けて、接続を閉じる
+		 */
+		void closeNow() {
+			leave(this);
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// 閉じられない場合は無視
+			}
+			--connections;
+		}
+	}
+}
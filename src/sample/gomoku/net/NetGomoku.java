@@ -0,0 +1,202 @@
+package sample.gomoku.net;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import sample.gomoku.Gomoku;
+import vip2011.tic.Board;
+import vip2011.tic.BoardDrawer;
+import vip2011.tic.TICGame;
+import vip2011.tic.event.Mouse;
+import vip2011.tic.event.MouseButton;
+
+/**
+ * 対戦サーバ（{@link GomokuServer}）を通して、離れた相手と五目並べを打つゲームです。
+ * 
+ * <p>盤面はサーバから知らされた手だけで更新され、クリックしたマスは {@link GomokuClient#move(int, int)} で
+ * サーバに送られます。接続を含めて、通信はゲームループから毎フレーム待ち時間なしで処理されます。</p>
+ */
+public class NetGomoku extends TICGame {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private static final int BOARD_CELLSIZE = 20;
+	private static final int CURSOR = 3;
+	
+	private static final Font STATUS_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 16);
+	private static final String[] REJECT_TEXT = {
+		"", "対戦していません。", "相手の番です。", "ボードの外です。", "既に石があります。", "既に参加しています。"
+	};
+	
+	private final InetSocketAddress address;
+	private GomokuClient client;
+	
+	private Board board;
+	private BoardDrawer viewer;
+	private Mouse mouse;
+	private MouseButton button1;
+	
+	private int myId, turn;
+	private String status = "接続しています…";
+	
+	/* サーバからのメッセージを受け取るリスナ */
+	private final GomokuClient.Listener listener = new GomokuClient.Listener() {
+		public void started(int id, int width, int height) {
+			myId = id;
+			turn = Gomoku.FIRST;
+			board = new Board(width, height);
+			viewer = board.createDrawer(BOARD_CELLSIZE, 1, Color.BLACK);
+			viewer.bindColor(Gomoku.FIRST, Color.BLUE);
+			viewer.bindColor(Gomoku.SECOND, Color.RED);
+			viewer.bindColor(CURSOR, new Color(128, 128, 128, 128));
+			updateStatus();
+		}
+		
+		public void moved(int id, int x, int y) {
+			board.setData(x, y, id);
+			turn = GomokuMatch.opponent(id);
+			updateStatus();
+		}
+		
+		public void rejected(int reason) {
+			status = (reason < REJECT_TEXT.length) ? REJECT_TEXT[reason] : "拒否されました。";
+		}
+		
+		public void ended(int winner, int reason) {
+			turn = 0;
+			if (winner == 0)
+				status = "引き分けです。";
+			else if (reason == GomokuProtocol.ABANDONED)
+				status = "相手が退出しました。";
+			else
+				status = (winner == myId) ? "あなたの勝利！" : "あなたの負け…";
+		}
+	};
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * システムプロパティ <code>gomoku.host</code>（省略時は localhost）と <code>gomoku.port</code>
+	 * （省略時は {@link GomokuProtocol#DEFAULT_PORT}）で指定したサーバで対戦するゲームを作成します。
+	 */
+	public NetGomoku() {
+		this(new InetSocketAddress(getProperty("gomoku.host", "localhost"),
+				Integer.parseInt(getProperty("gomoku.port", String.valueOf(GomokuProtocol.DEFAULT_PORT)))));
+	}
+	
+	/*
+	 * アプレットなどで読めない場合は既定値
+	 */
+	private static String getProperty(String key, String def) {
+		try {
+			return System.getProperty(key, def);
+		} catch (SecurityException e) {
+			return def;
+		}
+	}
+	
+	/**
+	 * 指定したサーバで対戦するゲームを作成します。
+	 * 
+	 * @param address サーバのアドレス
+	 */
+	public NetGomoku(InetSocketAddress address) {
+		this.address = address;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void initialize() {
+		mouse = getMouse();
+		button1 = getButton(MouseEvent.BUTTON1);
+		setRequestFPS(30);
+		try {
+			// 接続の完了は updateFrame で確かめる。参加の要求は接続した後で送られる
+			client = GomokuClient.open(address);
+			client.join();
+		} catch (IOException e) {
+			status = "接続できません: " + e.getMessage();
+		}
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void updateFrame(long elapsed) {
+		if (client == null || client.isClosed())
+			return;
+		boolean connecting = !client.isConnected();
+		try {
+			if (client.poll(listener, 0) < 0)
+				status = "切断されました。";
+			else if (connecting && client.isConnected() && board == null)
+				status = "対戦相手を待っています…";
+			if (board == null)
+				return;
+			
+			int boardX = viewer.getCenteringX(getWidth());
+			int boardY = viewer.getCenteringY(getHeight());
+			int selX = viewer.getBoardXFromMouseX(boardX, mouse.getX());
+			int selY = viewer.getBoardYFromMouseY(boardY, mouse.getY());
+			if (0 <= selX && 0 <= selY) {
+				viewer.setCursor(selX, selY, CURSOR);
+				if (turn == myId && button1.isDown() && board.getData(selX, selY) == Board.NODATA)
+					client.move(selX, selY);
+			} else {
+				viewer.removeCursor();
+			}
+		} catch (IOException e) {
+			status = (connecting ? "接続できません: " : "通信に失敗しました: ") + e.getMessage();
+			client.close();
+		}
+	}
+	
+	/**
+	 * サーバとの接続を閉じます。
+	 */
+	@Override
+	public void dispose() {
+		if (client != null)
+			client.close();
+	}
+	
+	private void updateStatus() {
+		status = (turn == myId) ? "あなたの番です。" : "相手の番です。";
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void drawCanvas(Graphics2D g) {
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, getWidth(), getHeight());
+		
+		int y = 30;
+		if (viewer != null) {
+			int x = viewer.getCenteringX(getWidth());
+			y = viewer.getCenteringY(getHeight());
+			viewer.draw(g, x, y);
+		}
+		g.setColor(Color.BLACK);
+		g.setFont(STATUS_FONT);
+		g.drawString(status, 10, Math.max(20, y - 10));
+	}
+	
+	/**
+	 * 盤面を取得します。
+	 * 
+	 * @return 盤面、対戦が始まっていない場合は null
+	 */
+	public Board getBoard() {
+		return board;
+	}
+}
@@ -0,0 +1,22 @@
+package sample.gomoku.net;
+
+import vip2011.tic.TICApplet;
+
+/**
+ * {@link NetGomoku} をアプレットとして動かすクラスです。
+ * 
+ * <p>接続先はシステムプロパティで指定します（{@link NetGomoku#NetGomoku()}）。</p>
+ * <code><pre>
+ * appletviewer -J-Dgomoku.host=example.com NetGomoku.html
+ * </pre></code>
+ */
+public class NetGomokuApplet extends TICApplet {
+	private static final long serialVersionUID = 2876011942377604518L;
+
+	public NetGomokuApplet() {
+		super(new NetGomoku());
+		
+		// 毎フレーム画面全体を描き直すので、BufferStrategy で直接表示する
+		setBufferCount(2);
+	}
+}
@@ -0,0 +1,178 @@
+package vip2011.tic;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * ゲームループの1フレームで確保されたメモリの量を計測するクラスです。
+ * 
+ * <p>スレッドごとの確保量のカウンタ（<code>com.sun.management.ThreadMXBean#getThreadAllocatedBytes</code>）を
+ * フレームの区切りごとに読み取り、フレームワーク自身の処理、{@link TICGame#updateFrame(long)}、
+ * {@link TICGame#drawCanvas(java.awt.Graphics2D)} のそれぞれで確保されたバイト数を集計します。
+ * ループが確保するメモリを 0 に保てば、GC による停止でフレームが途切れることはありません。
+ * カウンタの読み取り自体が確保する分は、作成時に計った値を差し引いています。</p>
+ * 
+ * <p>計測はループのスレッドから行い、集計値はどのスレッドから読み取っても構いません。
+ * カウンタを提供しない JVM では {@link #isSupported()} が false を返します。</p>
+ * 
+ * @see TICApplet#setAllocationTracking(boolean)
+ * @see HeadlessRunner#setAllocationTracking(boolean)
+ */
+public class AllocationMeter {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** フレームワーク自身の処理（ループ、画面への転送など）を表す区分です。 */
+	public static final int FRAMEWORK = 0;
+	
+	/** {@link TICGame#updateFrame(long)} を表す区分です。 */
+	public static final int UPDATE = 1;
+	
+	/** {@link TICGame#drawCanvas(java.awt.Graphics2D)} を表す区分です。 */
+	public static final int DRAW = 2;
+	
+	private static final int CATEGORIES = 3;
+	private static final String[] NAMES = { "framework", "update", "draw" };
+	
+	/* 読み取りにかかる確保量を求めるための試行回数 */
+	private static final int CALIBRATION = 64;
+	
+	private final com.sun.management.ThreadMXBean bean;
+	private final long overhead;
+	
+	/* 現在のフレームの計測（ループのスレッドだけが使う） */
+	private long mark;
+	private final long[] current = new long[CATEGORIES];
+	
+	/* 集計値（this で同期する） */
+	private long frames;
+	private final long[] total = new long[CATEGORIES];
+	private final long[] last  = new long[CATEGORIES];
+	private final long[] max   = new long[CATEGORIES];
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 確保量を計測するオブジェクトを作成します。
+	 * 
+	 * @throws IllegalStateException JVM がスレッドごとの確保量を提供しない場合
+	 */
+	public AllocationMeter() {
+		if (!isSupported())
+			throw new IllegalStateException("この環境ではメモリの確保量を計測できません。");
+		bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		bean.setThreadAllocatedMemoryEnabled(true);
+		
+		// 読み取り自体で確保される量を計っておく
+		long first = read();
+		long lastRead = first;
+		for (int i = 0; i < CALIBRATION; ++i)
+			lastRead = read();
+		overhead = Math.max(0, (lastRead - first) / CALIBRATION);
+	}
+	
+	/**
+	 * この JVM でスレッドごとの確保量を計測できるかどうかを調べます。
+	 * 
+	 * @return 計測できるかどうか
+	 */
+	public static boolean isSupported() {
+		try {
+			Object b = ManagementFactory.getThreadMXBean();
+			return b instanceof com.sun.management.ThreadMXBean
+					&& ((com.sun.management.ThreadMXBean)b).isThreadAllocatedMemorySupported();
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+	
+	private long read() {
+		return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * フレームの計測を開始します。
+	 */
+	public void beginFrame() {
+		for (int i = 0; i < CATEGORIES; ++i)
+			current[i] = 0;
+		mark = read();
+	}
+	
+	/**
+	 * 前回の区切りからの確保量を、指定した区分に加えます。
+	 * 
+	 * @param category 区分（{@link #FRAMEWORK}、{@link #UPDATE}、{@link #DRAW}）
+	 */
+	public void split(int category) {
+		long now = read();
+		current[category] += Math.max(0, now - mark - overhead);
+		mark = now;
+	}
+	
+	/**
+	 * 残りの確保量をフレームワークの区分に加えて、フレームの計測を終了します。
+	 */
+	public void endFrame() {
+		split(FRAMEWORK);
+		synchronized (this) {
+			++frames;
+			for (int i = 0; i < CATEGORIES; ++i) {
+				long bytes = current[i];
+				total[i] += bytes;
+				last[i] = bytes;
+				if (bytes > max[i])
+					max[i] = bytes;
+			}
+		}
+	}
+	
+	/**
+	 * 計測したフレームの数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public synchronized long getFrameCount() {
+		return frames;
+	}
+	
+	/**
+	 * 指定した区分の、直前のフレームの確保量を取得します。
+	 * 
+	 * @param category 区分
+	 * @return 確保量(byte)
+	 */
+	public synchronized long getLast(int category) {
+		return last[category];
+	}
+	
+	/**
+	 * 指定した区分の、1フレームあたりの確保量の平均を取得します。
+	 * 
+	 * @param category 区分
+	 * @return 確保量(byte)、フレームが無い場合は 0
+	 */
+	public synchronized double getAverage(int category) {
+		return (frames > 0) ? (double)total[category] / frames : 0;
+	}
+	
+	/**
+	 * 指定した区分の、1フレームあたりの確保量の最大値を取得します。
+	 * 
+	 * @param category 区分
+	 * @return 確保量(byte)
+	 */
+	public synchronized long getMax(int category) {
+		return max[category];
+	}
+	
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder("frames=").append(frames);
+		for (int i = 0; i < CATEGORIES; ++i) {
+			sb.append(' ').append(NAMES[i]).append("=")
+					.append(String.format("%.1f", getAverage(i))).append("B/frame(max ").append(max[i]).append("B)");
+		}
+		return sb.toString();
+	}
+}
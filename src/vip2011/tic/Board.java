@@ -1,6 +1,7 @@
 package vip2011.tic;
 
 import java.awt.Color;
+import java.util.Arrays;
 
 /**
  * N×Mサイズのボードを扱うクラスです。
@@ -13,6 +14,11 @@ import java.awt.Color;
  * Graphics g = ...;
  * viewer.paint(g, x, y);
  * <pre></code>
+ * 
+ * <p>マスの値は行優先（row-major）の一次元配列に格納されています。
+ * 座標 (x, y) のマスはインデックス <code>y * getWidth() + x</code> に対応します。
+ * 座標の検査を済ませた呼び出し側は {@link #getDataAt(int)} や {@link #setDataAt(int, int)}、
+ * {@link #getRow(int, int[], int)} などを利用することで、マスごとの範囲チェックを省略できます。</p>
  */
 public class Board {
 	//-------------------------------------------------------------------------
@@ -20,10 +26,21 @@ public class Board {
 	//-------------------------------------------------------------------------
 	/** データが何も格納されていないことを表す定数です。 */
 	public static final int NODATA = 0;
+	
+	/** {@link #enableHash()} で利用される、Zobristハッシュの既定のシード値です。 */
+	public static final long DEFAULT_HASH_SEED = 0x5DEECE66DL;
+	
+	/* Zobristハッシュのキーを表で持つ値の範囲（1〜この値）。それ以外の値はその都度計算する */
+	private static final int HASH_TABLE_VALUES = 4;
 
-	private int[][] data;
+	private int[] data;
 	private int width, height;
-	private boolean changed;
+	private DirtyRegion dirty;
+	private DirtyRegion[] trackers = new DirtyRegion[0];
+	
+	private long[] hashKeys;
+	private long hashSeed;
+	private long hash;
 
 	//-------------------------------------------------------------------------
 	// メソッド
@@ -37,10 +54,11 @@ public class Board {
 	public Board(int width, int height) {
 		this.width = width;
 		this.height = height;
-		this.data = new int[width][height];
+		this.data = new int[width * height];
+		this.dirty = new DirtyRegion(width, height);
 		
 		clear();
-		changed = false;
+		dirty.clear();
 	}
 	
 	/**
@@ -59,6 +77,23 @@ public class Board {
 		fillRect(0, 0, width, height, data);
 	}
 	
+	/**
+	 * 指定したボードの内容を、このボードにコピーします。
+	 * ボードのサイズは同じである必要があります。
+	 * 値が異なるマスだけが書き換えられ、変更されたものとして扱われます。ハッシュが有効な場合は、書き換えたマスの分だけ更新されます。
+	 * 
+	 * @param src コピー元のボード
+	 */
+	public void copyFrom(Board src) {
+		if (src.width != width || src.height != height)
+			throw new IllegalArgumentException("ボードのサイズが一致しません。");
+		int[] s = src.data;
+		for (int y = 0, index = 0; y < height; ++y)
+			for (int x = 0; x < width; ++x, ++index)
+				if (data[index] != s[index])
+					store(index, x, y, s[index]);
+	}
+	
 	/**
 	 * 指定した(srcX, srcY)にあるデータを、(dstX, dstY)に移動させます。
 	 * また、移動後の(srcX,srcY)には NODATA 定数が設定されます。
@@ -91,8 +126,7 @@ public class Board {
 	public void setData(int x, int y, int data) {
 		if (x < 0 || x >= width || y < 0 || y >= height)
 			throw new IllegalArgumentException("不正な座標です。");
-		this.data[x][y] = data;
-		changed = true;
+		store(y * width + x, x, y, data);
 	}
 	
 	/**
@@ -106,7 +140,213 @@ public class Board {
 	public int getData(int x, int y) {
 		if (x < 0 || x >= width || y < 0 || y >= height)
 			throw new IllegalArgumentException("不正な座標です。");
-		return data[x][y];
+		return data[y * width + x];
+	}
+	
+	/**
+	 * 指定した座標に対応する、行優先のインデックスを取得します。
+	 * このメソッドは座標の範囲チェックを行いません。
+	 * 
+	 * @param x X座標
+	 * @param y Y座標
+	 * @return インデックス
+	 */
+	public int indexOf(int x, int y) {
+		return y * width + x;
+	}
+	
+	/**
+	 * 指定したインデックスのセルの値を取得します。
+	 * このメソッドは座標の範囲チェックを行いません。呼び出し側で座標の検査を済ませている場合に利用してください。
+	 * 
+	 * @param index {@link #indexOf(int, int)} で得たインデックス
+	 * @return セルの値
+	 */
+	public int getDataAt(int index) {
+		return data[index];
+	}
+	
+	/**
+	 * 指定したインデックスのセルを指定した値に変更します。
+	 * このメソッドは座標の範囲チェックを行いません。呼び出し側で座標の検査を済ませている場合に利用してください。
+	 * 
+	 * @param index {@link #indexOf(int, int)} で得たインデックス
+	 * @param data 設定する値
+	 */
+	public void setDataAt(int index, int data) {
+		int y = index / width;
+		store(index, index - y * width, y, data);
+	}
+	
+	/**
+	 * 指定した行の値をまとめて配列にコピーします。
+	 * 範囲チェックは行ごとに一度だけ行われます。
+	 * 
+	 * @param y 行のY座標
+	 * @param dst コピー先の配列
+	 * @param offset コピー先の開始位置
+	 * @return dst
+	 */
+	public int[] getRow(int y, int[] dst, int offset) {
+		if (y < 0 || y >= height)
+			throw new IllegalArgumentException("不正な座標です。");
+		System.arraycopy(data, y * width, dst, offset, width);
+		return dst;
+	}
+	
+	/**
+	 * 指定した行の値を、配列の内容でまとめて置き換えます。
+	 * 範囲チェックは行ごとに一度だけ行われます。
+	 * 
+	 * @param y 行のY座標
+	 * @param src コピー元の配列
+	 * @param offset コピー元の開始位置
+	 */
+	public void setRow(int y, int[] src, int offset) {
+		if (y < 0 || y >= height)
+			throw new IllegalArgumentException("不正な座標です。");
+		int base = y * width;
+		for (int i = 0; i < width; ++i)
+			store(base + i, i, y, src[offset + i]);
+	}
+	
+	/**
+	 * 指定した行の、先頭のマスのインデックスを取得します。
+	 * 行 y のマスは <code>getRowOffset(y)</code> から <code>getRowOffset(y) + getWidth() - 1</code> までのインデックスに並んでいます。
+	 * このメソッドは座標の範囲チェックを行いません。
+	 * 
+	 * @param y 行のY座標
+	 * @return 行の先頭のインデックス
+	 */
+	public int getRowOffset(int y) {
+		return y * width;
+	}
+	
+	/*
+	 * 全ての書き込みはこのメソッドを通ります。
+	 * 値が変わらない場合は変更として扱いません。
+	 */
+	private void store(int index, int x, int y, int data) {
+		int old = this.data[index];
+		if (old == data)
+			return;
+		this.data[index] = data;
+		dirty.mark(index, x, y);
+		for (DirtyRegion r : trackers)
+			r.mark(index, x, y);
+		if (hashKeys != null)
+			hash ^= hashKey(index, old) ^ hashKey(index, data);
+	}
+	
+	/*
+	 * 矩形範囲を、ボード自身と登録された全ての DirtyRegion に変更済みとして記録する
+	 */
+	private void markRect(int x, int y, int width, int height) {
+		dirty.markRect(x, y, width, height);
+		for (DirtyRegion r : trackers)
+			r.markRect(x, y, width, height);
+	}
+	
+	/**
+	 * Zobristハッシュの計算を既定のシード値で有効にします。
+	 * 同じシード値を利用しているボード同士であれば、同じ内容のボードは同じハッシュ値を持ちます。
+	 * 
+	 * @see #hash()
+	 */
+	public void enableHash() {
+		enableHash(DEFAULT_HASH_SEED);
+	}
+	
+	/**
+	 * Zobristハッシュの計算を、指定したシード値で有効にします。
+	 * 有効にした時点のボードの内容からハッシュ値が計算され、以降はマスの値を変更するたびにO(1)で更新されます。
+	 * 
+	 * @param seed シード値
+	 * @see #hash()
+	 */
+	public void enableHash(long seed) {
+		int size = width * height;
+		long[] keys = new long[size * HASH_TABLE_VALUES];
+		for (int i = 0; i < size; ++i)
+			for (int v = 1; v <= HASH_TABLE_VALUES; ++v)
+				keys[i * HASH_TABLE_VALUES + v - 1] = mixHash(seed, i, v);
+		this.hashSeed = seed;
+		this.hashKeys = keys;
+		
+		long h = 0;
+		for (int i = 0; i < size; ++i)
+			h ^= hashKey(i, data[i]);
+		this.hash = h;
+	}
+	
+	/**
+	 * Zobristハッシュの計算を無効にします。
+	 */
+	public void disableHash() {
+		hashKeys = null;
+		hash = 0;
+	}
+	
+	/**
+	 * Zobristハッシュの計算が有効かどうかを取得します。
+	 * 
+	 * @return Zobristハッシュの計算が有効かどうか
+	 */
+	public boolean isHashEnabled() {
+		return hashKeys != null;
+	}
+	
+	/**
+	 * ボードの内容を表す64bitのZobristハッシュ値を取得します。
+	 * 全てのマスが NODATA のボードのハッシュ値は 0 です。
+	 * {@link #enableHash()} で有効にしていない場合、このメソッドは {@link IllegalStateException} をスローします。
+	 * 
+	 * @return ハッシュ値
+	 */
+	public long hash() {
+		if (hashKeys == null)
+			throw new IllegalStateException("ハッシュが有効になっていません。");
+		return hash;
+	}
+	
+	/**
+	 * ボードの大きさと全てのマスの値から求めた64bitのチェックサムを取得します。
+	 * {@link #hash()} と違って事前の準備は不要で、呼び出すたびに全てのマスを読みます。
+	 * 記録した入力を再生した結果が記録したときと同じかどうかを確かめる場合などに利用してください。
+	 * 
+	 * @return チェックサム
+	 */
+	public long checksum() {
+		// FNV-1a（int 単位）の後で、SplitMix64 の終段で混ぜる
+		long h = 0xCBF29CE484222325L;
+		h = (h ^ width) * 0x100000001B3L;
+		h = (h ^ height) * 0x100000001B3L;
+		for (int v : data)
+			h = (h ^ (v & 0xFFFFFFFFL)) * 0x100000001B3L;
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+	
+	/*
+	 * マスと値の組に対するZobristキー
+	 */
+	private long hashKey(int index, int data) {
+		if (data == NODATA)
+			return 0;
+		if (1 <= data && data <= HASH_TABLE_VALUES)
+			return hashKeys[index * HASH_TABLE_VALUES + data - 1];
+		return mixHash(hashSeed, index, data);
+	}
+	
+	/*
+	 * シード、インデックス、値から擬似乱数のキーを作る (SplitMix64)
+	 */
+	private static long mixHash(long seed, int index, int data) {
+		long z = seed + ((long)index << 32 | (data & 0xFFFFFFFFL)) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
 	/**
@@ -128,14 +368,68 @@ public class Board {
 	}
 	
 	/**
-	 * 以前にこのメソッドをコールしたときから、ボードの状態が変更されたかどうかを取得します。
+	 * 以前にこのメソッドをコールしたときから変更されたマスを、指定した {@link DirtyRegion} に移します。
+	 * 呼び出し後、ボード側の変更は空になります。dst が以前に保持していた内容は破棄されます。
+	 * 
+	 * <p>変更の記録と取り出しは同じスレッドから行ってください。
+	 * このメソッドで取り出せる変更はボードごとに一組だけなので、複数の箇所（描画とネットワークへの送信など）で
+	 * 変更を受け取る場合は、それぞれ {@link #addDirtyRegion(DirtyRegion)} で専用の {@link DirtyRegion} を登録してください。</p>
+	 * 
+	 * @param dst 変更されたマスを受け取るオブジェクト
+	 * @return dst
+	 */
+	public DirtyRegion drainDirty(DirtyRegion dst) {
+		dirty.drainTo(dst);
+		return dst;
+	}
+	
+	/**
+	 * 以前に {@link #drainDirty(DirtyRegion)} をコールしたときから、ボードの状態が変更されたかどうかを取得します。
+	 * このメソッドは変更を取り出しません。
 	 * 
 	 * @return ボードの状態が変更されたかどうか
 	 */
-	boolean isChanged() {
-		boolean now = changed;
-		changed = false;
-		return now;
+	public boolean isDirty() {
+		return !dirty.isEmpty();
+	}
+
+	/**
+	 * 変更されたマスを受け取る {@link DirtyRegion} を登録します。
+	 * 登録後にボードで変更されたマスは、{@link #drainDirty(DirtyRegion)} とは独立に region にも記録されます。
+	 * region の内容は登録時に消去され、このボードのサイズに合わせられます。
+	 * 
+	 * <p>受け取る側は region を読み終えたら {@link DirtyRegion#clear()} を呼び出してください。
+	 * 他の登録先やボード自身の変更には影響しないため、描画やネットワークへの送信など、
+	 * 変更を受け取る箇所がいくつあってもお互いの変更を取り合うことはありません。
+	 * 変更の記録と読み出しは同じスレッドから行ってください。</p>
+	 * 
+	 * @param region 変更されたマスを受け取るオブジェクト
+	 */
+	public void addDirtyRegion(DirtyRegion region) {
+		for (DirtyRegion r : trackers)
+			if (r == region)
+				return;
+		region.reset(width, height);
+		DirtyRegion[] t = Arrays.copyOf(trackers, trackers.length + 1);
+		t[trackers.length] = region;
+		trackers = t;
+	}
+
+	/**
+	 * {@link #addDirtyRegion(DirtyRegion)} で登録した {@link DirtyRegion} の登録を解除します。
+	 * 
+	 * @param region 登録を解除するオブジェクト
+	 */
+	public void removeDirtyRegion(DirtyRegion region) {
+		for (int i = 0; i < trackers.length; ++i) {
+			if (trackers[i] == region) {
+				DirtyRegion[] t = new DirtyRegion[trackers.length - 1];
+				System.arraycopy(trackers, 0, t, 0, i);
+				System.arraycopy(trackers, i + 1, t, i, t.length - i);
+				trackers = t;
+				return;
+			}
+		}
 	}
 
 	/**
@@ -151,6 +445,19 @@ public class Board {
 		return new BoardDrawer(this, cellSize, gridWidth, gridColor);
 	}
 
+	/**
+	 * このボードの一部を、スクロールと拡大・縮小をしながら表示するための {@link BoardViewport} を生成します。
+	 * 画面に収まらない大きなボードを描画する場合は、このメソッドを利用してください。
+	 * 
+	 * @param cellSize 拡大率 0 でのマスのサイズ
+	 * @param gridWidth 枠の太さ
+	 * @param gridColor 枠の色
+	 * @return 生成された {@link BoardViewport}
+	 */
+	public BoardViewport createViewport(int cellSize, int gridWidth, Color gridColor) {
+		return new BoardViewport(this, cellSize, gridWidth, gridColor);
+	}
+
 	/**
 	 * 指定した矩形範囲を data で塗りつぶします。
 	 * 
@@ -161,10 +468,21 @@ public class Board {
 	 * @param data 塗りつぶす値
 	 */
 	public void fillRect(int x, int y, int width, int height, int data) {
-		for (int tx = x; tx < x + width; ++tx)
-			for (int ty = y; ty < y + height; ++ty)
-				setData(tx, ty, data);
-		changed = true;
+		if (width <= 0 || height <= 0)
+			return;
+		if (x < 0 || x + width > this.width || y < 0 || y + height > this.height)
+			throw new IllegalArgumentException("不正な座標です。");
+		for (int ty = y; ty < y + height; ++ty) {
+			int base = ty * this.width + x;
+			if (hashKeys != null) {
+				long key = 0;
+				for (int i = base; i < base + width; ++i)
+					key ^= hashKey(i, this.data[i]) ^ hashKey(i, data);
+				hash ^= key;
+			}
+			Arrays.fill(this.data, base, base + width, data);
+		}
+		markRect(x, y, width, height);
 	}
 
 	/**
@@ -196,7 +514,5 @@ public class Board {
 	        yy += xx * b / a / 64;
 	        xx -= yy * a / b / 64;
 	    }
-	    
-		changed = true;
 	}
 }
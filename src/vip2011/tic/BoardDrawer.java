@@ -2,13 +2,35 @@ package vip2011.tic;
 
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.HashMap;
-import java.util.Map;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * ボードを画面に描画するためのクラスです。
  * ボードの各マスの値に対する色を {@link #bindColor(int, Color)} メソッドで設定することで、
- * 任意の値に対する色付けを行うことが出来ます。
+ * 任意の値に対する色付けを行うことが出来ます。色は {@link Palette} に ARGB 形式の int で保持されます。
+ * 
+ * <p>ボード全体の画像はオフスクリーンにキャッシュされ、{@link Board#addDirtyRegion(DirtyRegion)} で登録した
+ * 専用の {@link DirtyRegion} に記録された、変更のあったマスだけが描き直されます。キャッシュへの描画は
+ * {@link WritableRaster#setDataElements(int, int, int, int, Object)} で行われ、オブジェクトを生成しません。
+ * 画像の画素配列を直接取り出さないため、キャッシュは Java2D によってビデオメモリに保持されたままになり、
+ * 変更があったときだけ転送し直されます。画面への描画は、キャッシュの {@code drawImage} 1回と、
+ * その上に重ねるカーソルだけです。変更は描画クラスごとに記録されるため、同じボードに他の描画クラスや
+ * {@link Board#drainDirty(DirtyRegion)} の利用者がいても影響を受けません。
+ * 画像が大きくなりすぎる場合は、キャッシュを使わずに毎回マスごとに描画します。</p>
+ * 
+ * <p>描画先が {@link BufferedImage#TYPE_INT_ARGB} または {@link BufferedImage#TYPE_INT_RGB} の画像であれば、
+ * {@link #draw(BufferedImage, int, int)} で画像の画素配列に行単位で直接書き込むこともできます。
+ * {@link Graphics} の呼び出しを経由しないため、マスが小さく数が多い場合に特に有効です。
+ * 描画する画素数が多い場合は、行を複数のスレッドに分割して書き込みます。</p>
  * 
  * @author wiro
  */
@@ -19,7 +41,7 @@ public class BoardDrawer {
 	private Board board;
 	private int width, height;
 	
-	private Map<Integer, Color> colorMap;
+	private final Palette palette = new Palette(Color.WHITE);
 	
 	private int gridWidth;
 	private Color gridColor;
@@ -27,8 +49,29 @@ public class BoardDrawer {
 	
 	private int curX = -1, curY = -1;
 	private Color curColor;
+	private Color curPaint;
+	
+	/* キャッシュする画像の画素数の上限 */
+	private static final long MAX_CACHE_PIXELS = 1L << 22;
+	
+	private boolean cacheEnabled = true;
+	private boolean cacheValid;
+	private int cacheModCount;
+	private BufferedImage cache;
 	
-	private Color defaultColor = Color.WHITE;
+	/* キャッシュに書き込む1行分の画素と、1マス分の画素（大きさが変わるまで使い回す） */
+	private int[] rowPixels;
+	private int[] cellPixels;
+	private final DirtyRegion dirty = new DirtyRegion();
+	
+	/* 画素数がこれ以上の場合に、直接描画を複数のスレッドに分割する */
+	private static final long PARALLEL_PIXELS = 1L << 19;
+	
+	/* 直接描画の分割に使うスレッド（最初に必要になったときに作成） */
+	private static final int RENDER_THREADS = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService renderPool;
+	
+	private Band[] bands;
 
 	//-------------------------------------------------------------------------
 	// メソッド
@@ -49,8 +92,7 @@ public class BoardDrawer {
 		
 		this.width  = board.getWidth();
 		this.height = board.getHeight();
-		
-		this.colorMap = new HashMap<Integer, Color>();
+		board.addDirtyRegion(dirty);
 	}
 	
 	/**
@@ -60,7 +102,26 @@ public class BoardDrawer {
 	 * @param color 色
 	 */
 	public void bindColor(int id, Color color) {
-		colorMap.put(id, color);
+		palette.set(id, color);
+	}
+	
+	/**
+	 * 指定したボードの値に対応する色を ARGB 形式で設定します。
+	 * 
+	 * @param id ボードの値
+	 * @param argb 色（<code>0xAARRGGBB</code>）
+	 */
+	public void bindColor(int id, int argb) {
+		palette.set(id, argb);
+	}
+	
+	/**
+	 * ボードの値と色の対応を保持するパレットを取得します。
+	 * 
+	 * @return パレット
+	 */
+	public Palette getPalette() {
+		return palette;
 	}
 	
 	/**
@@ -87,42 +148,296 @@ public class BoardDrawer {
 	 * @param height ボードの描画する範囲の縦幅
 	 */
 	public void draw(Graphics g, int drawX, int drawY, int boardX, int boardY, int width, int height) {
+		if (boardX < 0 || boardY < 0 || boardX + width > this.width || boardY + height > this.height)
+			throw new IllegalArgumentException("描画範囲が不正です。");
 		int oriX = drawX + gridWidth / 2;
 		int oriY = drawY + gridWidth / 2;
 		int w = width  * cellSize + gridWidth * (width  + 1);
 		int h = height * cellSize + gridWidth * (height + 1);
 
+		boolean cached = updateCache();
+		if (cached) {
+			// キャッシュから描画範囲を転送
+			int sx = boardX * (cellSize + gridWidth);
+			int sy = boardY * (cellSize + gridWidth);
+			g.drawImage(cache, oriX, oriY, oriX + w, oriY + h, sx, sy, sx + w, sy + h, null);
+		} else {
+			drawCells(g, oriX, oriY, w, h, boardX, boardY, width, height);
+		}
+		
+		// カーソルを描画
+		int cx = curX - boardX;
+		int cy = curY - boardY;
+		if (curX >= 0 && 0 <= cx && cx < width && 0 <= cy && cy < height) {
+			int x = oriX + cx * cellSize + (cx + 1) * gridWidth;
+			int y = oriY + cy * cellSize + (cy + 1) * gridWidth;
+			g.setColor((cached && cache.getType() == BufferedImage.TYPE_INT_RGB) ? getCursorPaint() : curColor);
+			g.fillRect(x, y, cellSize, cellSize);
+		}
+	}
+	
+	/*
+	 * キャッシュを使わずに、枠と各セルを直接描画する
+	 */
+	private void drawCells(Graphics g, int oriX, int oriY, int w, int h, int boardX, int boardY, int width, int height) {
 		// 枠を描画
 		g.setColor(gridColor);
 		g.fillRect(oriX, oriY, w, h);
 		
-		// 各セルを描画
-		for (int ix = 0; ix < width; ++ix) {
-			int x = oriX + ix * cellSize + (ix + 1) * gridWidth;
-			for (int iy = 0; iy < height; ++iy) {
-				int y = oriY + iy * cellSize + (iy + 1) * gridWidth;
-				g.setColor(getColorMap(board.getData(boardX + ix, boardY + iy)));
+		// 各セルを描画（範囲は呼び出し側で検査済み）
+		for (int iy = 0; iy < height; ++iy) {
+			int y = oriY + iy * cellSize + (iy + 1) * gridWidth;
+			int index = board.indexOf(boardX, boardY + iy);
+			for (int ix = 0; ix < width; ++ix, ++index) {
+				int x = oriX + ix * cellSize + (ix + 1) * gridWidth;
+				g.setColor(palette.getColor(board.getDataAt(index)));
 				g.fillRect(x, y, cellSize, cellSize);
 			}
 		}
+	}
+	
+	/*
+	 * キャッシュを最新の状態にする。キャッシュを使えない場合は false を返す。
+	 */
+	private boolean updateCache() {
+		int w = width  * cellSize + gridWidth * (width  + 1);
+		int h = height * cellSize + gridWidth * (height + 1);
+		if (!cacheEnabled || w <= 0 || h <= 0 || (long)w * h > MAX_CACHE_PIXELS) {
+			releaseCache();
+			return false;
+		}
+		
+		// マスは必ず枠の色の上に塗られるので、枠の色が不透明なら画像全体が不透明になる。
+		// その場合は転送時に合成の要らない RGB の画像にする。
+		int type = (gridColor.getAlpha() == 255) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+		if (cache == null || cache.getWidth() != w || cache.getHeight() != h || cache.getType() != type) {
+			releaseCache();
+			cache = new BufferedImage(w, h, type);
+		}
+		
+		int grid = gridColor.getRGB();
+		if (!cacheValid || cacheModCount != palette.getModCount()) {
+			// 全体を描き直すので、溜まっている変更は捨てる
+			dirty.clear();
+			paintAll(grid);
+			cacheValid = true;
+			cacheModCount = palette.getModCount();
+		} else if (!dirty.isEmpty()) {
+			// 変更のあったマスだけを描き直す
+			for (int i = dirty.nextDirty(0); i >= 0; i = dirty.nextDirty(i + 1)) {
+				int y = i / width;
+				paintCell(i - y * width, y, Palette.composite(palette.getARGB(board.getDataAt(i)), grid));
+			}
+			dirty.clear();
+		}
+		return true;
+	}
+	
+	/*
+	 * カーソルの色をキャッシュ上のマスの色と合成した、不透明な色を返す。
+	 * 半透明の塗りつぶしと不透明な描画を交互に行うと、描画パイプラインの切り替えで毎フレームメモリが確保されるため。
+	 */
+	private Color getCursorPaint() {
+		int pixel = Palette.composite(palette.getARGB(board.getDataAt(board.indexOf(curX, curY))), gridColor.getRGB());
+		int argb = Palette.composite(curColor.getRGB(), pixel | 0xFF000000);
+		if (curPaint == null || curPaint.getRGB() != argb)
+			curPaint = new Color(argb);
+		return curPaint;
+	}
+	
+	/*
+	 * キャッシュ全体を行ごとに描き直す。マスの行は同じ画素の並びが cellSize 行続くので、1行分を作って繰り返し書き込む。
+	 */
+	private void paintAll(int grid) {
+		WritableRaster raster = cache.getRaster();
+		int w = cache.getWidth();
+		if (rowPixels == null || rowPixels.length != w)
+			rowPixels = new int[w];
+		
+		Arrays.fill(rowPixels, grid);
+		for (int py = 0; py < gridWidth; ++py)
+			raster.setDataElements(0, py, w, 1, rowPixels);
+		for (int y = 0; y < height; ++y) {
+			int index = board.getRowOffset(y);
+			for (int x = 0; x < width; ++x, ++index) {
+				int px = gridWidth + x * (cellSize + gridWidth);
+				Arrays.fill(rowPixels, px, px + cellSize, Palette.composite(palette.getARGB(board.getDataAt(index)), grid));
+			}
+			int py = gridWidth + y * (cellSize + gridWidth);
+			for (int ty = py; ty < py + cellSize; ++ty)
+				raster.setDataElements(0, ty, w, 1, rowPixels);
+			
+			// マスの下の枠
+			Arrays.fill(rowPixels, grid);
+			for (int ty = py + cellSize; ty < py + cellSize + gridWidth; ++ty)
+				raster.setDataElements(0, ty, w, 1, rowPixels);
+		}
+	}
+	
+	/*
+	 * キャッシュ上のマスを、枠の色と合成済みの色で塗る
+	 */
+	private void paintCell(int x, int y, int pixel) {
+		int n = cellSize * cellSize;
+		if (cellPixels == null || cellPixels.length != n)
+			cellPixels = new int[n];
+		Arrays.fill(cellPixels, pixel);
+		cache.getRaster().setDataElements(gridWidth + x * (cellSize + gridWidth), gridWidth + y * (cellSize + gridWidth),
+				cellSize, cellSize, cellPixels);
+	}
+	
+	private void releaseCache() {
+		cache = null;
+		cacheValid = false;
+	}
+	
+	/**
+	 * ボードを指定した画像の画素に直接描画します。
+	 * 
+	 * @param image 描画先の画像
+	 * @param x 描画するX座標
+	 * @param y 描画するY座標
+	 * @see #draw(BufferedImage, int, int, int, int, int, int)
+	 */
+	public void draw(BufferedImage image, int x, int y) {
+		draw(image, x, y, 0, 0, width, height);
+	}
+	
+	/**
+	 * ボードの指定した範囲を、指定した画像の画素に直接描画します。
+	 * 画像が {@link BufferedImage#TYPE_INT_ARGB}、{@link BufferedImage#TYPE_INT_RGB} 以外の場合は、
+	 * {@link #draw(Graphics, int, int, int, int, int, int)} と同じ方法で描画します。
+	 * 画素に直接書き込むため、画像の {@link Graphics} に設定した変換やクリップは反映されません。
+	 * 
+	 * @param image 描画先の画像
+	 * @param drawX 描画するX座標
+	 * @param drawY 描画するY座標
+	 * @param boardX ボードの描画する範囲の左上のX座標
+	 * @param boardY ボードの描画する範囲の左上のY座標
+	 * @param width ボードの描画する範囲の横幅
+	 * @param height ボードの描画する範囲の縦幅
+	 */
+	public void draw(BufferedImage image, int drawX, int drawY, int boardX, int boardY, int width, int height) {
+		if (boardX < 0 || boardY < 0 || boardX + width > this.width || boardY + height > this.height)
+			throw new IllegalArgumentException("描画範囲が不正です。");
+		int type = image.getType();
+		WritableRaster raster = image.getRaster();
+		if ((type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB)
+				|| !(raster.getDataBuffer() instanceof DataBufferInt)
+				|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+			Graphics2D g = image.createGraphics();
+			try {
+				draw(g, drawX, drawY, boardX, boardY, width, height);
+			} finally {
+				g.dispose();
+			}
+			return;
+		}
+		
+		DataBufferInt buffer = (DataBufferInt)raster.getDataBuffer();
+		int[] pixels = buffer.getData();
+		int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+		int base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+		boolean opaqueDst = (type == BufferedImage.TYPE_INT_RGB);
+		
+		// 描画先の画像に収まる範囲に切り詰める
+		int oriX = drawX + gridWidth / 2;
+		int oriY = drawY + gridWidth / 2;
+		int x0 = Math.max(oriX, 0);
+		int y0 = Math.max(oriY, 0);
+		int x1 = Math.min(oriX + width  * cellSize + gridWidth * (width  + 1), image.getWidth());
+		int y1 = Math.min(oriY + height * cellSize + gridWidth * (height + 1), image.getHeight());
+		if (x0 >= x1 || y0 >= y1)
+			return;
+		
+		// 行を帯に分けて書き込む
+		int n = ((long)(x1 - x0) * (y1 - y0) >= PARALLEL_PIXELS) ? Math.min(RENDER_THREADS, y1 - y0) : 1;
+		if (bands == null || bands.length < n) {
+			bands = new Band[n];
+			for (int i = 0; i < n; ++i)
+				bands[i] = new Band();
+		}
+		int grid = gridColor.getRGB();
+		for (int i = 0; i < n; ++i)
+			bands[i].set(pixels, base, stride, opaqueDst, grid, oriX, oriY, x0, x1,
+					y0 + (int)((long)(y1 - y0) * i / n), y0 + (int)((long)(y1 - y0) * (i + 1) / n),
+					boardX, boardY, width, height);
+		if (n == 1) {
+			bands[0].run();
+		} else {
+			CountDownLatch done = new CountDownLatch(n - 1);
+			ExecutorService pool = getRenderPool();
+			for (int i = 1; i < n; ++i) {
+				bands[i].done = done;
+				pool.execute(bands[i]);
+			}
+			bands[0].run();
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 		
 		// カーソルを描画
-		if (0 <= curX && curX < width && 0 <= curY && curY < height) {
-			int cx = curX - boardX;
-			int cy = curY - boardY;
+		int cx = curX - boardX;
+		int cy = curY - boardY;
+		if (curX >= 0 && 0 <= cx && cx < width && 0 <= cy && cy < height) {
 			int x = oriX + cx * cellSize + (cx + 1) * gridWidth;
 			int y = oriY + cy * cellSize + (cy + 1) * gridWidth;
-			g.setColor(curColor);
-			g.fillRect(x, y, cellSize, cellSize);
+			int color = curColor.getRGB();
+			int fx = Math.max(x, x0), tx = Math.min(x + cellSize, x1);
+			for (int py = Math.max(y, y0), ty = Math.min(y + cellSize, y1); py < ty; ++py)
+				fill(pixels, base + py * stride + fx, tx - fx, color, opaqueDst);
 		}
 	}
 	
 	/*
+	 * 画素配列の連続する len 画素に色を書き込む。半透明の色は描画先の画素と合成する。
+	 */
+	private static void fill(int[] pixels, int offset, int len, int color, boolean opaqueDst) {
+		if (len <= 0)
+			return;
+		if ((color >>> 24) == 255) {
+			Arrays.fill(pixels, offset, offset + len, color);
+		} else {
+			for (int i = offset; i < offset + len; ++i)
+				pixels[i] = Palette.composite(color, opaqueDst ? (pixels[i] | 0xFF000000) : pixels[i]);
+		}
+	}
+	
+	private static synchronized ExecutorService getRenderPool() {
+		if (renderPool == null) {
+			renderPool = Executors.newFixedThreadPool(RENDER_THREADS, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "BoardDrawer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return renderPool;
+	}
+	
+	/**
+	 * ボードの画像をキャッシュするかどうかを設定します。
+	 * 初期状態ではキャッシュは有効です。
 	 * 
+	 * @param cacheEnabled キャッシュするかどうか
 	 */
-	private Color getColorMap(int id) {
-		Color c = colorMap.get(id);
-		return (c != null) ? c : defaultColor;
+	public void setCacheEnabled(boolean cacheEnabled) {
+		this.cacheEnabled = cacheEnabled;
+		if (!cacheEnabled)
+			releaseCache();
+	}
+	
+	/**
+	 * ボードの画像をキャッシュするかどうかを取得します。
+	 * 
+	 * @return キャッシュするかどうか
+	 */
+	public boolean isCacheEnabled() {
+		return cacheEnabled;
 	}
 	
 	/**
@@ -184,7 +499,7 @@ public class BoardDrawer {
 			throw new IllegalArgumentException("カーソル座標が不正です。");
 		this.curX = curX;
 		this.curY = curY;
-		this.curColor = getColorMap(cursorColorId);
+		this.curColor = palette.getColor(cursorColorId);
 	}
 
 	/**
@@ -210,6 +525,7 @@ public class BoardDrawer {
 	 */
 	public void setGridWidth(int gridWidth) {
 		this.gridWidth = gridWidth;
+		this.cacheValid = false;
 	}
 
 	/**
@@ -228,6 +544,7 @@ public class BoardDrawer {
 	 */
 	public void setGridColor(Color gridColor) {
 		this.gridColor = gridColor;
+		this.cacheValid = false;
 	}
 
 	/**
@@ -246,6 +563,7 @@ public class BoardDrawer {
 	 */
 	public void setCellSize(int cellSize) {
 		this.cellSize = cellSize;
+		this.cacheValid = false;
 	}
 	
 	/**
@@ -255,7 +573,7 @@ public class BoardDrawer {
 	 * @return デフォルトの色
 	 */
 	public Color getDefaultColor() {
-		return defaultColor;
+		return palette.getDefaultColor();
 	}
 
 	/**
@@ -265,6 +583,108 @@ public class BoardDrawer {
 	 * @param defaultColor デフォルトの色
 	 */
 	public void setDefaultColor(Color defaultColor) {
-		this.defaultColor = defaultColor;
+		palette.setDefaultColor(defaultColor);
+	}
+
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/*
+	 * 直接描画で、画素の行の範囲 [from, to) を書き込む処理
+	 */
+	private class Band implements Runnable {
+		int[] cellRow = new int[0];
+		int[] gridRow = new int[0];
+		int[] pixels;
+		int base, stride, grid;
+		boolean opaqueDst;
+		int oriX, oriY, x0, x1, from, to;
+		int boardX, boardY, width, height;
+		CountDownLatch done;
+
+		void set(int[] pixels, int base, int stride, boolean opaqueDst, int grid, int oriX, int oriY, int x0, int x1,
+				int from, int to, int boardX, int boardY, int width, int height) {
+			this.pixels = pixels;
+			this.base = base;
+			this.stride = stride;
+			this.opaqueDst = opaqueDst;
+			this.grid = grid;
+			this.oriX = oriX;
+			this.oriY = oriY;
+			this.x0 = x0;
+			this.x1 = x1;
+			this.from = from;
+			this.to = to;
+			this.boardX = boardX;
+			this.boardY = boardY;
+			this.width = width;
+			this.height = height;
+			this.done = null;
+		}
+
+		public void run() {
+			try {
+				int span = x1 - x0;
+				if (cellRow.length < span) {
+					cellRow = new int[span];
+					gridRow = new int[span];
+				}
+				Arrays.fill(gridRow, 0, span, grid);
+				
+				int pitch = cellSize + gridWidth;
+				int lastRow = -1;
+				for (int py = from; py < to; ++py) {
+					int r = py - oriY;
+					int iy = r / pitch;
+					if (r - iy * pitch < gridWidth || iy >= height) {
+						// 枠だけの行
+						copyRow(gridRow, base + py * stride + x0, span);
+					} else {
+						// マスの行は、ボードの行ごとに一度だけ組み立てて使い回す
+						if (iy != lastRow) {
+							buildRow(iy);
+							lastRow = iy;
+						}
+						copyRow(cellRow, base + py * stride + x0, span);
+					}
+				}
+			} finally {
+				if (done != null)
+					done.countDown();
+			}
+		}
+
+		/*
+		 * ボードの行 iy の枠とマスを、描画先の1行分として cellRow に並べる
+		 */
+		private void buildRow(int iy) {
+			int[] row = cellRow;
+			int pitch = cellSize + gridWidth;
+			int index = board.indexOf(boardX, boardY + iy);
+			for (int ix = 0, x = oriX; ix <= width && x < x1; ++ix, ++index, x += pitch) {
+				int end = Math.min(x + gridWidth, x1);
+				for (int px = Math.max(x, x0); px < end; ++px)
+					row[px - x0] = grid;
+				if (ix < width && x + pitch > x0) {
+					int color = Palette.composite(palette.getARGB(board.getDataAt(index)), grid);
+					end = Math.min(x + pitch, x1);
+					for (int px = Math.max(x + gridWidth, x0); px < end; ++px)
+						row[px - x0] = color;
+				}
+			}
+		}
+
+		/*
+		 * 1行分を描画先に書き込む。枠の色が半透明の場合は描画先の画素と合成する。
+		 */
+		private void copyRow(int[] row, int offset, int span) {
+			if ((grid >>> 24) == 255) {
+				System.arraycopy(row, 0, pixels, offset, span);
+			} else {
+				for (int i = 0; i < span; ++i)
+					pixels[offset + i] = Palette.composite(row[i],
+							opaqueDst ? (pixels[offset + i] | 0xFF000000) : pixels[offset + i]);
+			}
+		}
 	}
 }
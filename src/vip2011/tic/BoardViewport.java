@@ -0,0 +1,584 @@
+package vip2011.tic;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 画面より大きなボードの一部を、スクロールと拡大・縮小をしながら描画するためのクラスです。
+ * 
+ * <p>ボード全体を描画した画像の座標系（以下、ワールド座標）を {@link #TILE_SIZE} 画素四方のタイルに区切り、
+ * 表示範囲に重なるタイルだけを描画します。描画したタイルは拡大率ごとに最近使われた順でキャッシュされ、
+ * 上限を超えると最も長く使われていないタイルから再利用されます。ボードが変更されると、
+ * {@link Board#addDirtyRegion(DirtyRegion)} で登録した専用の {@link DirtyRegion} に記録された変更に重なるタイルだけが描き直されます。
+ * このため、1フレームの描画時間はボードの大きさではなく表示範囲の大きさで決まります。
+ * タイルは作業用の配列に描いてから {@link WritableRaster#setDataElements(int, int, int, int, Object)} で画像に書き込むため、
+ * 画像は Java2D によってビデオメモリに保持されたままになり、描き直したときだけ転送し直されます。
+ * 変更は {@link BoardDrawer} と同様にこのクラスごとに記録されるため、同じボードを複数の箇所で描画しても構いません。</p>
+ * 
+ * <p>拡大率は {@link #MIN_ZOOM} から {@link #MAX_ZOOM} までの整数で指定します。
+ * 0 のときはマスのサイズと枠の太さが作成時の値になり、1 増えるごとにマスのサイズが2倍になります。
+ * 負の値では1減るごとにマスのサイズが半分になり、マスが1画素より小さくなる場合は
+ * 1画素に複数のマスを割り当てて、その左上のマスの色で塗ります。マスが小さい場合、枠は描画しません。</p>
+ * <code><pre>
+ * BoardViewport viewport = board.createViewport(4, 1, Color.GRAY);
+ * viewport.bindColor(1, Color.BLACK);
+ * viewport.setSize(640, 480);
+ * viewport.centerOn(5000, 5000);
+ * ...
+ * viewport.scrollBy(dx, dy);
+ * viewport.draw(g, 0, 0);
+ * </pre></code>
+ */
+public class BoardViewport {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** タイルの一辺の画素数です。 */
+	public static final int TILE_SIZE = 256;
+
+	/** 拡大率の最小値です。 */
+	public static final int MIN_ZOOM = -12;
+
+	/** 拡大率の最大値です。 */
+	public static final int MAX_ZOOM = 4;
+
+	/** キャッシュするタイル数の既定値です。 */
+	public static final int DEFAULT_TILE_CACHE_SIZE = 128;
+
+	/* 枠を描画するマスのサイズの下限（拡大率が負の場合） */
+	private static final int MIN_GRID_CELL = 4;
+
+	private final Board board;
+	private final int cellSize;
+	private final int gridWidth;
+	private Color gridColor;
+
+	private final Palette palette = new Palette(Color.WHITE);
+
+	private int width, height;
+	private int viewX, viewY;
+
+	/* 現在の拡大率での、マスのサイズ・枠の太さ・1画素あたりのマス数・ワールド座標の大きさ */
+	private int zoom;
+	private int cellPx, gridPx, pitch, step;
+	private int worldWidth, worldHeight;
+
+	private int curX = -1, curY = -1;
+	private Color curColor;
+
+	private int tileCacheSize = DEFAULT_TILE_CACHE_SIZE;
+	private final LinkedHashMap<Long, Tile> tiles;
+	private final ArrayDeque<Tile> freeTiles = new ArrayDeque<Tile>();
+	private int tileType;
+	private int tileModCount;
+	private final int[] columns = new int[TILE_SIZE];
+	private final int[] tilePixels = new int[TILE_SIZE * TILE_SIZE];
+	private long renderedTiles;
+
+	private final DirtyRegion dirty = new DirtyRegion();
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したマスのサイズと、枠の色と太さで、ボードを表示するためのビューポートを新しく作成します。
+	 * 
+	 * @param board ボード
+	 * @param cellSize 拡大率 0 でのマスのサイズ
+	 * @param gridWidth 枠の太さ
+	 * @param gridColor 枠の色
+	 */
+	BoardViewport(Board board, int cellSize, int gridWidth, Color gridColor) {
+		if (cellSize <= 0 || gridWidth < 0)
+			throw new IllegalArgumentException("マスのサイズまたは枠の太さが不正です。");
+		this.board = board;
+		this.cellSize = cellSize;
+		this.gridWidth = gridWidth;
+		this.gridColor = gridColor;
+		this.tileType = tileTypeOf(gridColor);
+		this.tileModCount = palette.getModCount();
+		board.addDirtyRegion(dirty);
+
+		// アクセス順の LinkedHashMap で、上限を超えたら最も長く使われていないタイルを再利用に回す
+		this.tiles = new LinkedHashMap<Long, Tile>(DEFAULT_TILE_CACHE_SIZE * 2, 0.75f, true) {
+			private static final long serialVersionUID = 4511352014946702395L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+				if (size() <= tileCacheSize)
+					return false;
+				freeTiles.push(eldest.getValue());
+				return true;
+			}
+		};
+		applyZoom(0);
+	}
+
+	/**
+	 * 指定したボードの値に対応する色を設定します。
+	 * 
+	 * @param id ボードの値
+	 * @param color 色
+	 */
+	public void bindColor(int id, Color color) {
+		palette.set(id, color);
+	}
+
+	/**
+	 * 指定したボードの値に対応する色を ARGB 形式で設定します。
+	 * 
+	 * @param id ボードの値
+	 * @param argb 色（<code>0xAARRGGBB</code>）
+	 */
+	public void bindColor(int id, int argb) {
+		palette.set(id, argb);
+	}
+
+	/**
+	 * ボードの値と色の対応を保持するパレットを取得します。
+	 * 
+	 * @return パレット
+	 */
+	public Palette getPalette() {
+		return palette;
+	}
+
+	/**
+	 * 表示範囲の大きさを設定します。
+	 * 
+	 * @param width 表示範囲の横幅
+	 * @param height 表示範囲の縦幅
+	 */
+	public void setSize(int width, int height) {
+		if (width < 0 || height < 0)
+			throw new IllegalArgumentException("表示範囲の大きさが不正です。");
+		this.width = width;
+		this.height = height;
+		setViewPosition(viewX, viewY);
+	}
+
+	/**
+	 * 表示範囲の横幅を取得します。
+	 * 
+	 * @return 表示範囲の横幅
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * 表示範囲の縦幅を取得します。
+	 * 
+	 * @return 表示範囲の縦幅
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * 表示範囲の左上のワールド座標を設定します。
+	 * 表示範囲がボードの外に出ないように補正されます。
+	 * 
+	 * @param x 表示範囲の左上のX座標
+	 * @param y 表示範囲の左上のY座標
+	 */
+	public void setViewPosition(int x, int y) {
+		viewX = Math.max(0, Math.min(x, worldWidth  - width));
+		viewY = Math.max(0, Math.min(y, worldHeight - height));
+	}
+
+	/**
+	 * 表示範囲を指定した画素数だけ移動します。
+	 * 
+	 * @param dx X方向の移動量
+	 * @param dy Y方向の移動量
+	 */
+	public void scrollBy(int dx, int dy) {
+		setViewPosition(viewX + dx, viewY + dy);
+	}
+
+	/**
+	 * 表示範囲の左上のX座標を取得します。
+	 * 
+	 * @return 表示範囲の左上のワールド座標でのX座標
+	 */
+	public int getViewX() {
+		return viewX;
+	}
+
+	/**
+	 * 表示範囲の左上のY座標を取得します。
+	 * 
+	 * @return 表示範囲の左上のワールド座標でのY座標
+	 */
+	public int getViewY() {
+		return viewY;
+	}
+
+	/**
+	 * 指定したマスが表示範囲の中央に来るように移動します。
+	 * 
+	 * @param boardX マスのX座標
+	 * @param boardY マスのY座標
+	 */
+	public void centerOn(int boardX, int boardY) {
+		int size = (step == 1) ? cellPx : 1;
+		setViewPosition(cellToWorld(boardX) + size / 2 - width / 2, cellToWorld(boardY) + size / 2 - height / 2);
+	}
+
+	/**
+	 * 拡大率を設定します。表示範囲の中央にあるマスの位置は保たれます。
+	 * 
+	 * @param zoom 拡大率
+	 */
+	public void setZoom(int zoom) {
+		zoomAt(zoom, width / 2, height / 2);
+	}
+
+	/**
+	 * 表示範囲内の指定した位置にあるマスを動かさずに、拡大率を変更します。
+	 * マウスホイールでの拡大・縮小に利用できます。
+	 * 
+	 * @param zoom 拡大率
+	 * @param x 表示範囲内のX座標
+	 * @param y 表示範囲内のY座標
+	 */
+	public void zoomAt(int zoom, int x, int y) {
+		zoom = Math.max(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+		if (zoom == this.zoom)
+			return;
+		double cx = worldToCell(viewX + x);
+		double cy = worldToCell(viewY + y);
+		applyZoom(zoom);
+		setViewPosition((int)Math.round(cellToWorld(cx) - x), (int)Math.round(cellToWorld(cy) - y));
+	}
+
+	/**
+	 * 拡大率を取得します。
+	 * 
+	 * @return 拡大率
+	 */
+	public int getZoom() {
+		return zoom;
+	}
+
+	/*
+	 * 拡大率に応じた描画の寸法を求める
+	 */
+	private void applyZoom(int zoom) {
+		this.zoom = zoom;
+		if (zoom >= 0) {
+			cellPx = cellSize << zoom;
+			gridPx = gridWidth;
+			step = 1;
+		} else {
+			cellPx = cellSize;
+			step = 1;
+			for (int i = zoom; i < 0; ++i) {
+				if (cellPx > 1)
+					cellPx >>= 1;
+				else
+					step <<= 1;
+			}
+			gridPx = (step == 1 && cellPx >= MIN_GRID_CELL) ? gridWidth : 0;
+		}
+		pitch = cellPx + gridPx;
+		if (step == 1) {
+			worldWidth  = board.getWidth()  * pitch + gridPx;
+			worldHeight = board.getHeight() * pitch + gridPx;
+		} else {
+			worldWidth  = (board.getWidth()  + step - 1) / step;
+			worldHeight = (board.getHeight() + step - 1) / step;
+		}
+	}
+
+	/*
+	 * マスの座標（小数を含む）から、ワールド座標を求める
+	 */
+	private double cellToWorld(double cell) {
+		return (step == 1) ? cell * pitch + gridPx : cell / step;
+	}
+
+	/*
+	 * マスの左上のワールド座標を求める
+	 */
+	private int cellToWorld(int cell) {
+		return (step == 1) ? cell * pitch + gridPx : cell / step;
+	}
+
+	/*
+	 * ワールド座標から、マスの座標（小数を含む）を求める
+	 */
+	private double worldToCell(int world) {
+		return (step == 1) ? (world - gridPx) / (double)pitch : (double)world * step;
+	}
+
+	/**
+	 * 表示範囲内の座標から、そこに表示されているマスのX座標を取得します。
+	 * 
+	 * @param x 表示範囲内のX座標（表示範囲の左端が 0）
+	 * @return マスのX座標、ボードの外の場合は -1
+	 */
+	public int getBoardX(int x) {
+		if (x < 0 || x >= width)
+			return -1;
+		int cell = (step == 1) ? (viewX + x) / pitch : (viewX + x) * step;
+		return (cell < board.getWidth()) ? cell : -1;
+	}
+
+	/**
+	 * 表示範囲内の座標から、そこに表示されているマスのY座標を取得します。
+	 * 
+	 * @param y 表示範囲内のY座標（表示範囲の上端が 0）
+	 * @return マスのY座標、ボードの外の場合は -1
+	 */
+	public int getBoardY(int y) {
+		if (y < 0 || y >= height)
+			return -1;
+		int cell = (step == 1) ? (viewY + y) / pitch : (viewY + y) * step;
+		return (cell < board.getHeight()) ? cell : -1;
+	}
+
+	/**
+	 * 表示範囲を指定したコンテキスト上に描画します。
+	 * 
+	 * @param g {@link Graphics}
+	 * @param x 描画するX座標
+	 * @param y 描画するY座標
+	 */
+	public void draw(Graphics g, int x, int y) {
+		validateTiles();
+		int w = Math.min(width,  worldWidth  - viewX);
+		int h = Math.min(height, worldHeight - viewY);
+		if (w <= 0 || h <= 0)
+			return;
+
+		Graphics clip = g.create(x, y, w, h);
+		try {
+			int tx0 = viewX / TILE_SIZE, tx1 = (viewX + w - 1) / TILE_SIZE;
+			int ty0 = viewY / TILE_SIZE, ty1 = (viewY + h - 1) / TILE_SIZE;
+			for (int ty = ty0; ty <= ty1; ++ty)
+				for (int tx = tx0; tx <= tx1; ++tx)
+					clip.drawImage(getTile(tx, ty).image, tx * TILE_SIZE - viewX, ty * TILE_SIZE - viewY, null);
+
+			// カーソルを描画
+			if (curX >= 0) {
+				int size = (step == 1) ? cellPx : 1;
+				clip.setColor(curColor);
+				clip.fillRect(cellToWorld(curX) - viewX, cellToWorld(curY) - viewY, size, size);
+			}
+		} finally {
+			clip.dispose();
+		}
+	}
+
+	/*
+	 * 色や枠の設定が変わっていればキャッシュを破棄し、ボードの変更に重なるタイルを無効にする
+	 */
+	private void validateTiles() {
+		int type = tileTypeOf(gridColor);
+		if (type != tileType || tileModCount != palette.getModCount()) {
+			for (Tile t : tiles.values())
+				freeTiles.push(t);
+			tiles.clear();
+			if (type != tileType)
+				freeTiles.clear();
+			tileType = type;
+			tileModCount = palette.getModCount();
+		}
+		if (dirty.isEmpty())
+			return;
+
+		// キャッシュしているタイルごとに、覆っているマスの範囲に変更があるかを調べる。
+		// 調べる量はキャッシュの大きさで決まり、ボードの大きさや変更の散らばり方には依存しない。
+		for (Tile t : tiles.values())
+			if (t.valid && dirty.intersects(t.cellX0, t.cellY0, t.cellX1 - t.cellX0 + 1, t.cellY1 - t.cellY0 + 1))
+				t.valid = false;
+		dirty.clear();
+	}
+
+	/*
+	 * 現在の拡大率のタイルを、必要なら描画して取得する
+	 */
+	private Tile getTile(int tx, int ty) {
+		Long key = Long.valueOf(((long)(zoom - MIN_ZOOM) << 48) | ((long)ty << 24) | tx);
+		Tile t = tiles.get(key);
+		if (t == null) {
+			t = freeTiles.isEmpty() ? new Tile(tileType) : freeTiles.pop();
+			t.valid = false;
+			tiles.put(key, t);
+		}
+		if (!t.valid)
+			render(t, tx, ty);
+		return t;
+	}
+
+	/*
+	 * タイルを作業用の配列に描画してから画像に書き込む。同じマスの行に属する画素の行は、前の行をコピーする。
+	 */
+	private void render(Tile t, int tx, int ty) {
+		int x0 = tx * TILE_SIZE, y0 = ty * TILE_SIZE;
+		int grid = gridColor.getRGB();
+		int[] pixels = tilePixels;
+
+		for (int i = 0; i < TILE_SIZE; ++i)
+			columns[i] = columnOf(x0 + i, worldWidth);
+
+		int prevRow = Integer.MIN_VALUE;
+		for (int j = 0, offset = 0; j < TILE_SIZE; ++j, offset += TILE_SIZE) {
+			int row = (step == 1) ? columnOf(y0 + j, worldHeight) : ((y0 + j < worldHeight) ? (y0 + j) * step : -2);
+			if (row == prevRow) {
+				System.arraycopy(pixels, offset - TILE_SIZE, pixels, offset, TILE_SIZE);
+				continue;
+			}
+			prevRow = row;
+			if (row < 0) {
+				// 枠の行、またはボードの外
+				Arrays.fill(pixels, offset, offset + TILE_SIZE, (row == -1) ? grid : 0);
+				continue;
+			}
+			int base = board.getRowOffset(row);
+			int prevColumn = Integer.MIN_VALUE, color = 0;
+			for (int i = 0; i < TILE_SIZE; ++i) {
+				int column = columns[i];
+				if (column != prevColumn) {
+					prevColumn = column;
+					if (column >= 0)
+						color = Palette.composite(palette.getARGB(board.getDataAt(base + column)), grid);
+					else
+						color = (column == -1) ? grid : 0;
+				}
+				pixels[offset + i] = color;
+			}
+		}
+
+		t.image.getRaster().setDataElements(0, 0, TILE_SIZE, TILE_SIZE, pixels);
+
+		t.cellX0 = (step == 1) ? x0 / pitch : x0 * step;
+		t.cellY0 = (step == 1) ? y0 / pitch : y0 * step;
+		t.cellX1 = Math.min(board.getWidth()  - 1, (step == 1) ? (x0 + TILE_SIZE - 1) / pitch : (x0 + TILE_SIZE) * step - 1);
+		t.cellY1 = Math.min(board.getHeight() - 1, (step == 1) ? (y0 + TILE_SIZE - 1) / pitch : (y0 + TILE_SIZE) * step - 1);
+		t.valid = true;
+		++renderedTiles;
+	}
+
+	/*
+	 * ワールド座標の画素が属するマスの座標を求める。枠の場合は -1、ボードの外の場合は -2
+	 */
+	private int columnOf(int world, int worldSize) {
+		if (world >= worldSize)
+			return -2;
+		if (step > 1)
+			return world * step;
+		return (world % pitch < gridPx) ? -1 : world / pitch;
+	}
+
+	private static int tileTypeOf(Color gridColor) {
+		// マスは必ず枠の色の上に塗られるので、枠の色が不透明ならタイル全体が不透明になる
+		return (gridColor.getAlpha() == 255) ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+	}
+
+	/**
+	 * キャッシュするタイル数の上限を設定します。
+	 * 表示範囲を覆うのに必要なタイル数より少ないと、毎フレームタイルを描き直すことになります。
+	 * 
+	 * @param tileCacheSize タイル数の上限
+	 */
+	public void setTileCacheSize(int tileCacheSize) {
+		if (tileCacheSize <= 0)
+			throw new IllegalArgumentException("不正なタイル数です。");
+		this.tileCacheSize = tileCacheSize;
+
+		// 超過した分を古い順に捨てる
+		Iterator<Tile> it = tiles.values().iterator();
+		while (tiles.size() > tileCacheSize && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+		freeTiles.clear();
+	}
+
+	/**
+	 * キャッシュするタイル数の上限を取得します。
+	 * 
+	 * @return タイル数の上限
+	 */
+	public int getTileCacheSize() {
+		return tileCacheSize;
+	}
+
+	/**
+	 * これまでに描画したタイルの数を取得します。キャッシュの効果の確認に利用できます。
+	 * 
+	 * @return 描画したタイルの数
+	 */
+	public long getRenderedTileCount() {
+		return renderedTiles;
+	}
+
+	/**
+	 * 指定した座標に、指定した色でカーソルを描画します。
+	 * カーソルはタイルには描画されず、表示範囲の上に重ねて描画されます。
+	 * 
+	 * @param curX カーソルのX座標
+	 * @param curY カーソルのY座標
+	 * @param cursorColorId カーソルの色ID
+	 */
+	public void setCursor(int curX, int curY, int cursorColorId) {
+		if (curX < 0 || curX >= board.getWidth() || curY < 0 || curY >= board.getHeight())
+			throw new IllegalArgumentException("カーソル座標が不正です。");
+		this.curX = curX;
+		this.curY = curY;
+		this.curColor = palette.getColor(cursorColorId);
+	}
+
+	/**
+	 * カーソルを削除します。
+	 */
+	public void removeCursor() {
+		this.curX = this.curY = -1;
+	}
+
+	/**
+	 * 枠の色を取得します。
+	 * 
+	 * @return 枠の色
+	 */
+	public Color getGridColor() {
+		return gridColor;
+	}
+
+	/**
+	 * 枠の色を設定します。キャッシュしたタイルは全て描き直されます。
+	 * 
+	 * @param gridColor 枠の色
+	 */
+	public void setGridColor(Color gridColor) {
+		this.gridColor = gridColor;
+		// パレットの変更と同じ扱いにして、次の描画でキャッシュを破棄させる
+		tileModCount = -1;
+	}
+
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/*
+	 * キャッシュされる1枚のタイルと、それが覆うマスの範囲
+	 */
+	private static class Tile {
+		final BufferedImage image;
+		int cellX0, cellY0, cellX1, cellY1;
+		boolean valid;
+
+		Tile(int type) {
+			image = new BufferedImage(TILE_SIZE, TILE_SIZE, type);
+		}
+	}
+}
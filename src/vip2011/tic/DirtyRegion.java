@@ -0,0 +1,260 @@
+package vip2011.tic;
+
+import java.util.Arrays;
+
+/**
+ * ボード上で変更されたマスの集合を保持するクラスです。
+ * 
+ * <p>変更されたマスはビットセットと、それらを囲む矩形（バウンディングボックス）で表されます。
+ * {@link Board#drainDirty(DirtyRegion)} を呼び出すと、ボードに溜まった変更がこのオブジェクトに移され、
+ * ボード側の変更は空になります。</p>
+ * 
+ * <p>変更を受け取る箇所が複数ある場合は、{@link Board#addDirtyRegion(DirtyRegion)} で登録すると、
+ * ボードの変更がこのオブジェクトに直接記録されます。読み終えたら {@link #clear()} を呼び出してください。</p>
+ * <code><pre>
+ * DirtyRegion dirty = new DirtyRegion();
+ * board.drainDirty(dirty);
+ * for (int i = dirty.nextDirty(0); i >= 0; i = dirty.nextDirty(i + 1)) {
+ *     int x = i % board.getWidth();
+ *     int y = i / board.getWidth();
+ *     ...
+ * }
+ * </pre></code>
+ */
+public class DirtyRegion {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	long[] bits;
+	int width, height;
+	int minX, minY, maxX, maxY;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 空の変更領域を作成します。
+	 */
+	public DirtyRegion() {
+		this.bits = new long[0];
+		setEmpty();
+	}
+
+	/**
+	 * 指定したサイズのボード用の、空の変更領域を作成します。
+	 * 
+	 * @param width ボードの横幅
+	 * @param height ボードの縦幅
+	 */
+	DirtyRegion(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.bits = new long[(width * height + 63) >>> 6];
+		setEmpty();
+	}
+
+	/**
+	 * 変更されたマスが無いかどうかを調べます。
+	 * 
+	 * @return 変更されたマスが無いかどうか
+	 */
+	public boolean isEmpty() {
+		return minX > maxX;
+	}
+
+	/**
+	 * 指定した座標のマスが変更されたかどうかを調べます。
+	 * 
+	 * @param x X座標
+	 * @param y Y座標
+	 * @return 変更されたかどうか
+	 */
+	public boolean isDirty(int x, int y) {
+		if (x < minX || x > maxX || y < minY || y > maxY)
+			return false;
+		int index = y * width + x;
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * 指定した矩形範囲に、変更されたマスがあるかどうかを調べます。
+	 * 調べる時間は、矩形と変更されたマスを囲む矩形との共通部分の大きさに比例します。
+	 * 
+	 * @param x 矩形の左上のX座標
+	 * @param y 矩形の左上のY座標
+	 * @param width 矩形の横幅
+	 * @param height 矩形の縦幅
+	 * @return 変更されたマスがあるかどうか
+	 */
+	public boolean intersects(int x, int y, int width, int height) {
+		int x0 = Math.max(x, minX), x1 = Math.min(x + width  - 1, maxX);
+		int y0 = Math.max(y, minY), y1 = Math.min(y + height - 1, maxY);
+		if (x0 > x1 || y0 > y1)
+			return false;
+		for (int ty = y0; ty <= y1; ++ty) {
+			int from = ty * this.width + x0;
+			int to   = ty * this.width + x1 + 1;
+			int fw = from >>> 6, tw = (to - 1) >>> 6;
+			if (fw == tw) {
+				if ((bits[fw] & (-1L << from) & (-1L >>> -to)) != 0)
+					return true;
+			} else {
+				if ((bits[fw] & (-1L << from)) != 0 || (bits[tw] & (-1L >>> -to)) != 0)
+					return true;
+				for (int i = fw + 1; i < tw; ++i)
+					if (bits[i] != 0)
+						return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 指定したインデックス以降で、最初に変更されたマスのインデックスを取得します。
+	 * インデックスは {@link Board#indexOf(int, int)} と同じ行優先の値です。
+	 * 
+	 * @param fromIndex 検索を開始するインデックス
+	 * @return 変更されたマスのインデックス、無い場合は -1
+	 */
+	public int nextDirty(int fromIndex) {
+		if (isEmpty())
+			return -1;
+		int first = minY * width + minX;
+		int last  = maxY * width + maxX;
+		if (fromIndex < first)
+			fromIndex = first;
+		if (fromIndex > last)
+			return -1;
+
+		int w = fromIndex >>> 6;
+		long word = bits[w] & (-1L << fromIndex);
+		int lastWord = last >>> 6;
+		while (word == 0) {
+			if (++w > lastWord)
+				return -1;
+			word = bits[w];
+		}
+		int index = (w << 6) + Long.numberOfTrailingZeros(word);
+		return (index <= last) ? index : -1;
+	}
+
+	/**
+	 * 変更されたマスを囲む矩形の左上のX座標を取得します。
+	 * 
+	 * @return 矩形の左上のX座標
+	 */
+	public int getX() {
+		return isEmpty() ? 0 : minX;
+	}
+
+	/**
+	 * 変更されたマスを囲む矩形の左上のY座標を取得します。
+	 * 
+	 * @return 矩形の左上のY座標
+	 */
+	public int getY() {
+		return isEmpty() ? 0 : minY;
+	}
+
+	/**
+	 * 変更されたマスを囲む矩形の横幅を取得します。
+	 * 
+	 * @return 矩形の横幅、変更が無い場合は 0
+	 */
+	public int getWidth() {
+		return isEmpty() ? 0 : maxX - minX + 1;
+	}
+
+	/**
+	 * 変更されたマスを囲む矩形の縦幅を取得します。
+	 * 
+	 * @return 矩形の縦幅、変更が無い場合は 0
+	 */
+	public int getHeight() {
+		return isEmpty() ? 0 : maxY - minY + 1;
+	}
+
+	/**
+	 * 全てのマスを未変更にします。
+	 * 消去にかかる時間は、変更されたマスを囲む矩形の大きさに比例します。
+	 */
+	public void clear() {
+		if (!isEmpty()) {
+			int from = (minY * width + minX) >>> 6;
+			int to   = ((maxY * width + maxX) >>> 6) + 1;
+			Arrays.fill(bits, from, to, 0L);
+		}
+		setEmpty();
+	}
+
+	/*
+	 * ボードから呼び出される、マスを変更済みにするメソッド
+	 */
+	void mark(int index, int x, int y) {
+		bits[index >>> 6] |= 1L << index;
+		if (x < minX) minX = x;
+		if (x > maxX) maxX = x;
+		if (y < minY) minY = y;
+		if (y > maxY) maxY = y;
+	}
+
+	/*
+	 * ボードから呼び出される、矩形範囲を変更済みにするメソッド
+	 */
+	void markRect(int x, int y, int width, int height) {
+		for (int ty = y; ty < y + height; ++ty) {
+			int from = ty * this.width + x;
+			int to   = from + width;
+			int fw = from >>> 6, tw = (to - 1) >>> 6;
+			if (fw == tw) {
+				bits[fw] |= (-1L << from) & (-1L >>> -to);
+			} else {
+				bits[fw] |= -1L << from;
+				for (int i = fw + 1; i < tw; ++i)
+					bits[i] = -1L;
+				bits[tw] |= -1L >>> -to;
+			}
+		}
+		if (x < minX) minX = x;
+		if (x + width - 1 > maxX) maxX = x + width - 1;
+		if (y < minY) minY = y;
+		if (y + height - 1 > maxY) maxY = y + height - 1;
+	}
+
+	/*
+	 * 指定したサイズのボード用に作り直し、空にする
+	 */
+	void reset(int width, int height) {
+		if (bits.length != (width * height + 63) >>> 6)
+			bits = new long[(width * height + 63) >>> 6];
+		else
+			Arrays.fill(bits, 0L);
+		this.width = width;
+		this.height = height;
+		setEmpty();
+	}
+
+	/*
+	 * 内容を dst と入れ替え、このオブジェクトを空にする
+	 */
+	void drainTo(DirtyRegion dst) {
+		dst.clear();
+		if (dst.bits.length != bits.length)
+			dst.bits = new long[bits.length];
+
+		long[] tmp = dst.bits;
+		dst.bits   = bits;
+		dst.width  = width;
+		dst.height = height;
+		dst.minX = minX; dst.minY = minY;
+		dst.maxX = maxX; dst.maxY = maxY;
+
+		bits = tmp;
+		setEmpty();
+	}
+
+	private void setEmpty() {
+		minX = minY = Integer.MAX_VALUE;
+		maxX = maxY = Integer.MIN_VALUE;
+	}
+}
@@ -1,20 +1,38 @@
 package vip2011.tic;
 
+import java.util.Arrays;
+
 /**
  * Frames Per Secondをコントロールするためのクラスです。
  * 
  * <p>メインループ内で{@link #sleep()}をコールすることでフレームレートを一定に保つために適切な時間のsleepを行います。
  * ただし、目標とするFPSが実現可能な範囲を越えている場合は何もしません。</p>
  * 
+ * <p>{@link #setSpinThreshold(long)} で待ち時間の最後の部分をスピン（ビジーウェイト）にすると、
+ * {@link Thread#sleep(long)} の粒度に左右されずに1ms未満の精度でフレームの間隔を揃えられます。
+ * その代わり、スピンしている間は CPU を消費します。</p>
+ * 
+ * <p>フレームごとの間隔（{@link #sleep()} から次の {@link #sleep()} から戻るまでの時間）は記録され、
+ * {@link #getStats()} で分位点や締め切りに間に合わなかった回数などを {@link FrameStats} として取得できます。</p>
+ * 
  * @see <a href="http://d.hatena.ne.jp/aidiary/20070429/1251463673">正確なFPS - 人工知能に関する断想録</a>
  */
 class FPSController {
+	/* 分位点を求めるために保持する、直近のフレームの数（2の累乗） */
+	private static final int WINDOW = 1024;
+	
 	private long lastTime;
 	private long period;
 	private long overSleepTime;
+	private volatile long spinThreshold;
 	
-	private double actualFPS;
-	private long frames, calcInterval, preCalcTime;
+	private volatile double actualFPS;
+	private long fpsFrames, calcInterval;
+	
+	/* 統計（getStats と共有するため、this で同期する） */
+	private final long[] window = new long[WINDOW];
+	private final long[] histogram = new long[FrameStats.HISTOGRAM_BUCKETS];
+	private long frames, missed, total, max;
 	
 	/**
 	 * 指定したFPSになるべく近づけるためのFPSコントローラを作成します。
@@ -22,10 +40,40 @@ class FPSController {
 	 * @param requestFPS FPSの目標値
 	 */
 	public FPSController(int requestFPS) {
-		this.period = (requestFPS > 0) ? 1000000000L / requestFPS : 0;
+		setRequestFPS(requestFPS);
 		this.lastTime = System.nanoTime();
 	}
 	
+	/**
+	 * FPSの目標値を変更します。記録した統計はそのまま引き継がれます。
+	 * 
+	 * @param requestFPS FPSの目標値
+	 */
+	public void setRequestFPS(int requestFPS) {
+		this.period = (requestFPS > 0) ? 1000000000L / requestFPS : 0;
+	}
+	
+	/**
+	 * 待ち時間のうち、最後にスピンで待つ時間を設定します。
+	 * 0 を指定すると、{@link Thread#sleep(long)} だけで待ちます（初期値）。
+	 * 
+	 * @param spinThreshold スピンで待つ時間(ns)
+	 */
+	public void setSpinThreshold(long spinThreshold) {
+		if (spinThreshold < 0)
+			throw new IllegalArgumentException("不正なスピン時間です。");
+		this.spinThreshold = spinThreshold;
+	}
+	
+	/**
+	 * 待ち時間のうち、最後にスピンで待つ時間を取得します。
+	 * 
+	 * @return スピンで待つ時間(ns)
+	 */
+	public long getSpinThreshold() {
+		return spinThreshold;
+	}
+	
 	/**
 	 * FPSを安定させるために一定時間スレッドを停止させます。
 	 */
@@ -34,11 +82,21 @@ class FPSController {
 		long diff = current - lastTime;
 		long sleepTime = (period - diff) - overSleepTime;
 		
+		// 締め切りに間に合ったかどうかは、前回の寝過ぎの補正を含めずにこのフレームの処理時間だけで判定する
+		boolean missedDeadline = period > 0 && period - diff <= 0;
+		
 		if (sleepTime > 0) {
-			try {
-				Thread.sleep(sleepTime / 1000000L, (int)(sleepTime % 1000000));
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+			long spin = spinThreshold;
+			if (spin > 0) {
+				// 締め切りの少し手前まで sleep し、残りはスピンで待つ
+				long deadline = current + sleepTime;
+				long coarse = sleepTime - spin;
+				if (coarse > 0)
+					sleepNanos(coarse);
+				while (System.nanoTime() < deadline)
+					;
+			} else {
+				sleepNanos(sleepTime);
 			}
 			
 			overSleepTime = (System.nanoTime() - current) - sleepTime;
@@ -47,27 +105,71 @@ class FPSController {
 			Thread.yield();
 		}
 		
+		long now = System.nanoTime();
+		record(now - lastTime, missedDeadline);
+		lastTime = now;
+	}
+	
+	/**
+	 * フレームの計測を現在の時刻からやり直します。
+	 * ループを停止していた時間を、フレームの間隔として記録しないために利用します。
+	 */
+	public void reset() {
 		lastTime = System.nanoTime();
+		overSleepTime = 0;
+	}
+	
+	private static void sleepNanos(long nanos) {
+		try {
+			Thread.sleep(nanos / 1000000L, (int)(nanos % 1000000));
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/*
+	 * 1フレームの間隔を記録する
+	 */
+	private synchronized void record(long frameTime, boolean missedDeadline) {
+		window[(int)frames & (WINDOW - 1)] = frameTime;
+		++histogram[Math.min(FrameStats.HISTOGRAM_BUCKETS - 1, (int)(frameTime / FrameStats.HISTOGRAM_BUCKET_NANOS))];
+		++frames;
+		total += frameTime;
+		if (frameTime > max)
+			max = frameTime;
+		if (missedDeadline)
+			++missed;
+		
+		// 実際のフレームレートは500msごとに更新する
+		++fpsFrames;
+		calcInterval += frameTime;
+		if (calcInterval >= 500000000L) {
+			actualFPS = ((double)fpsFrames / calcInterval) * 1000000000L;
+			fpsFrames = 0;
+			calcInterval = 0;
+		}
 	}
 	
 	/**
 	 * 実際のフレームレートを取得します。
-	 * この値は500msごとに更新されます。
+	 * この値は500msごとに更新されます。このメソッドは状態を変更しません。
 	 * 
 	 * @return フレームレート
 	 */
 	public double getActualFPS() {
-		frames++;
-		long now = System.nanoTime();
-		long elapsed = now - preCalcTime;
-		calcInterval += elapsed;
-		if (calcInterval >= 500000000L) {
-			actualFPS = ((double)frames / calcInterval) * 2000000000L;
-			frames = 0;
-			calcInterval = 0;
-		}
-		preCalcTime = now;
-		
 		return actualFPS;
 	}
+	
+	/**
+	 * これまでに記録したフレームの統計を取得します。
+	 * 返されるオブジェクトはその時点の複製で、後から変更されることはありません。
+	 * 
+	 * @return フレームの統計
+	 */
+	public synchronized FrameStats getStats() {
+		int n = (int)Math.min(frames, WINDOW);
+		long[] recent = Arrays.copyOf(window, n);
+		Arrays.sort(recent);
+		return new FrameStats(period, frames, missed, total, max, actualFPS, recent, histogram.clone());
+	}
 }
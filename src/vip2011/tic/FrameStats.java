@@ -0,0 +1,183 @@
+package vip2011.tic;
+
+/**
+ * ゲームループのフレームの間隔に関する統計です。
+ * 
+ * <p>平均のフレームレートだけでは分からない、ときどき発生するコマ落ち（スタッター）を調べるために、
+ * 直近 {@link #getSampleCount()} フレームの間隔の分位点と揺らぎ、全フレームの最大値とヒストグラム、
+ * 目標の間隔に間に合わなかったフレームの数を保持します。このクラスのインスタンスは作成後に変更されません。</p>
+ * <code><pre>
+ * FrameStats stats = applet.getFrameStats();
+ * System.out.println(stats);
+ * </pre></code>
+ */
+public final class FrameStats {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** ヒストグラムの1区間の幅(ns)です。 */
+	public static final long HISTOGRAM_BUCKET_NANOS = 500000L;
+	
+	/** ヒストグラムの区間の数です。最後の区間には、それより長い間隔が全て含まれます。 */
+	public static final int HISTOGRAM_BUCKETS = 200;
+	
+	private final long period;
+	private final long frames, missed, total, max;
+	private final double actualFPS;
+	private final long[] recent;
+	private final long[] histogram;
+	private final double jitter;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/*
+	 * FPSController から作成する。recent は整列済みで、このオブジェクトが所有する
+	 */
+	FrameStats(long period, long frames, long missed, long total, long max, double actualFPS, long[] recent, long[] histogram) {
+		this.period = period;
+		this.frames = frames;
+		this.missed = missed;
+		this.total = total;
+		this.max = max;
+		this.actualFPS = actualFPS;
+		this.recent = recent;
+		this.histogram = histogram;
+		
+		double mean = getRecentMean(), var = 0;
+		for (long t : recent)
+			var += (t - mean) * (t - mean);
+		this.jitter = (recent.length > 1) ? Math.sqrt(var / (recent.length - 1)) : 0;
+	}
+	
+	/**
+	 * 目標とするフレームの間隔を取得します。
+	 * 
+	 * @return 目標の間隔(ns)、FPSの目標が無い場合は 0
+	 */
+	public long getTargetPeriod() {
+		return period;
+	}
+	
+	/**
+	 * 記録したフレームの数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+	
+	/**
+	 * 処理が目標の間隔に収まらず、待たずに次のフレームに進んだ回数を取得します。
+	 * 
+	 * @return 締め切りに間に合わなかったフレーム数
+	 */
+	public long getMissedDeadlines() {
+		return missed;
+	}
+	
+	/**
+	 * 全フレームの間隔の平均を取得します。
+	 * 
+	 * @return 平均の間隔(ns)、フレームが無い場合は 0
+	 */
+	public double getMean() {
+		return (frames > 0) ? (double)total / frames : 0;
+	}
+	
+	/**
+	 * 全フレームの間隔の最大値を取得します。
+	 * 
+	 * @return 最大の間隔(ns)
+	 */
+	public long getMax() {
+		return max;
+	}
+	
+	/**
+	 * 500msごとに求めたフレームレートを取得します。
+	 * 
+	 * @return フレームレート
+	 */
+	public double getActualFPS() {
+		return actualFPS;
+	}
+	
+	/**
+	 * 分位点と揺らぎの計算に使った、直近のフレームの数を取得します。
+	 * 
+	 * @return 直近のフレーム数
+	 */
+	public int getSampleCount() {
+		return recent.length;
+	}
+	
+	/**
+	 * 直近のフレームの間隔の分位点を取得します。
+	 * 
+	 * @param p 0 以上 1 以下の割合
+	 * @return 間隔(ns)、フレームが無い場合は 0
+	 */
+	public long getPercentile(double p) {
+		if (p < 0 || p > 1)
+			throw new IllegalArgumentException("不正な割合です。");
+		if (recent.length == 0)
+			return 0;
+		int i = (int)Math.ceil(p * recent.length) - 1;
+		return recent[Math.max(0, i)];
+	}
+	
+	/**
+	 * 直近のフレームの間隔の中央値を取得します。
+	 * 
+	 * @return 間隔(ns)
+	 */
+	public long getP50() {
+		return getPercentile(0.5);
+	}
+	
+	/**
+	 * 直近のフレームの間隔の 99 パーセンタイルを取得します。
+	 * 
+	 * @return 間隔(ns)
+	 */
+	public long getP99() {
+		return getPercentile(0.99);
+	}
+	
+	/**
+	 * 直近のフレームの間隔の揺らぎ（標準偏差）を取得します。
+	 * 
+	 * @return 揺らぎ(ns)
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+	
+	/**
+	 * 全フレームの間隔のヒストグラムを取得します。
+	 * i 番目の要素は、間隔が <code>i * HISTOGRAM_BUCKET_NANOS</code> 以上
+	 * <code>(i + 1) * HISTOGRAM_BUCKET_NANOS</code> 未満のフレームの数です。
+	 * 
+	 * @return ヒストグラム（複製）
+	 */
+	public long[] getHistogram() {
+		return histogram.clone();
+	}
+	
+	private double getRecentMean() {
+		if (recent.length == 0)
+			return 0;
+		long sum = 0;
+		for (long t : recent)
+			sum += t;
+		return (double)sum / recent.length;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("frames=%d fps=%.1f p50=%.2fms p99=%.2fms max=%.2fms jitter=%.2fms missed=%d",
+				frames, actualFPS, getP50() / 1e6, getP99() / 1e6, max / 1e6, jitter / 1e6, missed);
+	}
+}
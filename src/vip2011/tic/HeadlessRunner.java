@@ -0,0 +1,222 @@
+package vip2011.tic;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import vip2011.tic.export.FrameExporter;
+
+/**
+ * ディスプレイを使わずに {@link TICGame} を動かすためのクラスです。
+ * 
+ * <p>フレームは待ち時間なしで可能な限り速く進みます。{@link TICGame#updateFrame(long)} に渡される経過時間は
+ * 実時間ではなく、ゲームが要求したFPSから求めた一定の値（要求が無い場合は60FPS相当）になるため、
+ * 同じ入力を与えれば毎回同じ結果が得られます。描画はオフスクリーンの {@link BufferedImage} に対して、
+ * {@link #setRenderEnabled(boolean)} で有効にした場合だけ行われます。
+ * {@link #setExporter(FrameExporter)} を指定すると、描画したフレームを PNG の連番や動画として書き出せます。</p>
+ * <code><pre>
+ * Gomoku game = new Gomoku();
+ * HeadlessRunner runner = new HeadlessRunner(game, 640, 480);
+ * game.getInput().moveMouse(320, 240);
+ * game.getInput().pressButton(MouseEvent.BUTTON1);
+ * runner.step();
+ * </pre></code>
+ */
+public class HeadlessRunner {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/* FPSの要求が無い場合に利用する1フレームの経過時間(ns) */
+	private static final long DEFAULT_PERIOD = 1000000000L / 60;
+
+	private final TICGame game;
+	private final int width, height;
+
+	private BufferedImage buffer;
+	private Graphics2D graphics;
+	private boolean renderEnabled;
+	private long fixedElapsed;
+	private AllocationMeter meter;
+	private FrameExporter exporter;
+
+	private boolean initialized;
+	private long frames;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したゲームを、指定した描画領域のサイズで動かすランナーを作成します。
+	 * 
+	 * @param game ゲーム
+	 * @param width 描画領域の横幅
+	 * @param height 描画領域の縦幅
+	 */
+	public HeadlessRunner(TICGame game, int width, int height) {
+		this.game = game;
+		this.width = width;
+		this.height = height;
+		game.setSize(width, height);
+	}
+
+	/**
+	 * ゲームを初期化します。
+	 * 初期化されていない状態で {@link #step()} を呼び出した場合は、自動的に初期化されます。
+	 */
+	public void initialize() {
+		if (!initialized) {
+			initialized = true;
+			game.initialize();
+		}
+	}
+
+	/**
+	 * 1フレーム分ゲームを進めます。
+	 */
+	public void step() {
+		step(getElapsed());
+	}
+
+	/*
+	 * 指定した経過時間で1フレーム分ゲームを進める
+	 */
+	void step(long elapsed) {
+		initialize();
+		AllocationMeter m = meter;
+		if (m != null)
+			m.beginFrame();
+		game.stepFrame(elapsed);
+		if (m != null)
+			m.split(AllocationMeter.UPDATE);
+		if (renderEnabled) {
+			if (buffer == null) {
+				buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+				graphics = buffer.createGraphics();
+				game.setFrameImage(buffer);
+			}
+			if (m != null)
+				m.split(AllocationMeter.FRAMEWORK);
+			game.drawCanvas(graphics);
+			if (m != null)
+				m.split(AllocationMeter.DRAW);
+			if (exporter != null)
+				exporter.submit(buffer);
+		}
+		++frames;
+		if (m != null)
+			m.endFrame();
+	}
+
+	/**
+	 * 指定したフレーム数だけ、待ち時間なしでゲームを進めます。
+	 * 
+	 * @param frames フレーム数
+	 * @return 実際にかかった時間(ns)
+	 */
+	public long run(long frames) {
+		long start = System.nanoTime();
+		for (long i = 0; i < frames; ++i)
+			step();
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * フレームごとに描画を行うかどうかを設定します。
+	 * 初期状態では描画は行われません。
+	 * 
+	 * @param renderEnabled 描画を行うかどうか
+	 */
+	public void setRenderEnabled(boolean renderEnabled) {
+		this.renderEnabled = renderEnabled;
+	}
+
+	/**
+	 * 描画したフレームの書き出し先を設定します。
+	 * 書き出し先を設定すると、描画も有効になります。
+	 * 書き出しを終えるには、{@link FrameExporter#close()} を呼び出してください。
+	 * 
+	 * @param exporter 書き出し先、書き出さない場合は null
+	 */
+	public void setExporter(FrameExporter exporter) {
+		this.exporter = exporter;
+		if (exporter != null)
+			renderEnabled = true;
+	}
+	
+	/**
+	 * フレームごとの入力の記録先を設定します。
+	 * 記録は最初のフレームを進めるより前に設定してください。
+	 * 
+	 * @param recorder 記録先、記録しない場合は null
+	 * @throws IllegalStateException ゲームが既にフレームを進めている場合や、記録先が既に使われている場合
+	 * @see InputReplay
+	 */
+	public void setInputRecorder(InputRecorder recorder) {
+		game.setInputRecorder(recorder);
+	}
+	
+	/**
+	 * 1フレームごとのメモリの確保量を計測するかどうかを設定します。
+	 * 
+	 * @param tracking 計測するかどうか
+	 * @throws IllegalStateException JVM がスレッドごとの確保量を提供しない場合
+	 */
+	public void setAllocationTracking(boolean tracking) {
+		meter = tracking ? new AllocationMeter() : null;
+	}
+	
+	/**
+	 * メモリの確保量の計測結果を取得します。
+	 * 
+	 * @return 計測結果、計測していない場合は null
+	 */
+	public AllocationMeter getAllocationMeter() {
+		return meter;
+	}
+	
+	/**
+	 * {@link TICGame#updateFrame(long)} に渡す経過時間を設定します。
+	 * 0 を指定すると、ゲームが要求したFPSから求めた値が利用されます。
+	 * 
+	 * @param elapsed 1フレームの経過時間(ns)
+	 */
+	public void setFixedElapsed(long elapsed) {
+		this.fixedElapsed = elapsed;
+	}
+
+	/**
+	 * 最後に描画されたフレームの画像を取得します。
+	 * 
+	 * @return 画像、一度も描画されていない場合は null
+	 */
+	public BufferedImage getImage() {
+		return buffer;
+	}
+
+	/**
+	 * 動かしているゲームを取得します。
+	 * 
+	 * @return ゲーム
+	 */
+	public TICGame getGame() {
+		return game;
+	}
+
+	/**
+	 * これまでに進めたフレーム数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+
+	/*
+	 * 1フレームの経過時間
+	 */
+	private long getElapsed() {
+		if (fixedElapsed > 0)
+			return fixedElapsed;
+		int fps = game.getRequestFPS();
+		return (fps > 0) ? 1000000000L / fps : DEFAULT_PERIOD;
+	}
+}
@@ -0,0 +1,253 @@
+package vip2011.tic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import vip2011.tic.event.InputQueue;
+import vip2011.tic.event.InputSource;
+
+/**
+ * ゲームに与えられた入力を、フレームごとにコンパクトなバイナリ形式で記録するクラスです。
+ * 
+ * <p>各フレームについて、{@link TICGame#updateFrame(long)} に渡された経過時間と、そのフレームで取り出された入力イベント
+ * （キーコード、マウスボタン、マウスの座標、発生時刻）が記録されます。記録したものは {@link InputReplay} で
+ * ディスプレイの無い環境で再生できます。</p>
+ * 
+ * <p>ゲームの初期状態は記録されないため、記録はゲームの最初のフレームより前に開始する必要があります。
+ * フレームを進めた後のゲームに設定すると {@link IllegalStateException} がスローされます。</p>
+ * 
+ * <p>ストリームへの書き出しは専用のスレッドで行われ、ゲームループのスレッドは入出力で待たされません。
+ * 書き出しが追いつかない間は、記録はメモリに溜められます。</p>
+ * <code><pre>
+ * InputRecorder recorder = new InputRecorder(new FileOutputStream("session.ticr"));
+ * applet.setInputRecorder(recorder);
+ * ...
+ * applet.setInputRecorder(null);
+ * recorder.close();
+ * </pre></code>
+ * 
+ * <p>形式は次のとおりです。数値は全て可変長（7bit ごと、下位から）で、符号付きの値は ZigZag 符号化されます。</p>
+ * <ul>
+ * <li>ヘッダ: <code>"TICR"</code>、版数（1バイト）、描画領域の横幅、縦幅</li>
+ * <li>フレーム: 経過時間の前のフレームとの差(ns、符号付き)、イベント数、イベントの並び</li>
+ * <li>イベント: 型（1バイト、{@link InputQueue#KEY_PRESSED} など）、コード（マウスの移動以外）、
+ * マウスの座標の前のイベントとの差（X、Y、符号付き）、発生時刻のフレームの開始時刻との差(ns、符号付き)</li>
+ * </ul>
+ * <p>入力の無いフレームは経過時間が一定であれば2バイトになります。</p>
+ */
+public class InputRecorder {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** 記録の先頭に置かれる識別子です。 */
+	static final byte[] MAGIC = { 'T', 'I', 'C', 'R' };
+	
+	/** 記録の形式の版数です。版数 1 の記録にはイベントの発生時刻がありません。 */
+	static final int VERSION = 2;
+	
+	/* バッファに空きが無くなったら書き出す大きさ */
+	private static final int FLUSH_SIZE = 8192;
+	
+	/* 1イベントの最大のバイト数（型 + コード + X + Y + 時刻） */
+	private static final int MAX_EVENT_SIZE = 1 + 5 * 3 + 10;
+	
+	/* 書き出しを待つバッファと、書き出し終えて再利用できるバッファの数の上限 */
+	private static final int QUEUE_SIZE = 16;
+	
+	/* 書き出しスレッドに終了を伝えるバッファ */
+	private static final Chunk END = new Chunk(0);
+	
+	private final OutputStream out;
+	private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+	private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<Chunk>(QUEUE_SIZE);
+	private final Thread writer;
+	
+	private Chunk chunk = new Chunk(FLUSH_SIZE + 64);
+	private byte[] buf = chunk.data;
+	private int pos;
+	
+	private boolean started;
+	private long lastElapsed;
+	private int lastX, lastY;
+	private long frames;
+	private volatile IOException error;
+	private boolean closed;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したストリームに記録するクラスを作成します。
+	 * ストリームは {@link #close()} で閉じられます。
+	 * 
+	 * @param out 記録先のストリーム
+	 */
+	public InputRecorder(OutputStream out) {
+		if (out == null)
+			throw new IllegalArgumentException("記録先が指定されていません。");
+		this.out = out;
+		this.writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "InputRecorder");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/*
+	 * 記録を開始できるかどうかを調べる（ゲームに設定されるときに呼び出される）。
+	 * 初期状態を記録しないので、まだフレームを進めていないゲームにしか設定できない。
+	 */
+	synchronized void checkStart(long gameFrames) {
+		if (closed || started)
+			throw new IllegalStateException("この記録先は既に使われています。");
+		if (gameFrames > 0)
+			throw new IllegalStateException("入力の記録はゲームの最初のフレームより前に開始してください。");
+	}
+	
+	/*
+	 * 1フレーム分を記録する（入力を確定した直後に、ゲームループのスレッドから呼び出される）
+	 */
+	synchronized void record(TICGame game, long elapsed) {
+		if (closed || error != null)
+			return;
+		if (!started) {
+			started = true;
+			for (byte b : MAGIC)
+				buf[pos++] = b;
+			buf[pos++] = VERSION;
+			writeVarint(game.getWidth());
+			writeVarint(game.getHeight());
+		}
+		
+		// イベントの時刻は、入力を確定した時刻（このフレームの開始時刻）との差で記録する
+		long frameStart = System.nanoTime();
+		InputSource input = game.getInput();
+		int n = input.getEventCount();
+		writeSigned(elapsed - lastElapsed);
+		writeVarint(n);
+		lastElapsed = elapsed;
+		for (int i = 0; i < n; ++i) {
+			if (buf.length - pos < MAX_EVENT_SIZE)
+				handOff();
+			int type = input.getEventType(i);
+			int x = input.getEventX(i), y = input.getEventY(i);
+			buf[pos++] = (byte)type;
+			if (type != InputQueue.MOUSE_MOVED)
+				writeVarint(input.getEventCode(i));
+			writeSigned(x - lastX);
+			writeSigned(y - lastY);
+			writeSigned(input.getEventTime(i) - frameStart);
+			lastX = x;
+			lastY = y;
+		}
+		++frames;
+		if (pos >= FLUSH_SIZE)
+			handOff();
+	}
+	
+	/*
+	 * バッファを書き出しスレッドに渡し、空いているバッファに切り替える。
+	 * 書き出しが追いついていない場合は待たずに、バッファを大きくして記録を続ける。
+	 */
+	private void handOff() {
+		chunk.length = pos;
+		if (!full.offer(chunk)) {
+			byte[] larger = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, larger, 0, pos);
+			chunk.data = buf = larger;
+			return;
+		}
+		chunk = free.poll();
+		if (chunk == null)
+			chunk = new Chunk(FLUSH_SIZE + 64);
+		buf = chunk.data;
+		pos = 0;
+	}
+	
+	/*
+	 * 書き出しスレッドの処理。渡されたバッファを順に書き出し、再利用できるように返す。
+	 */
+	private void write() {
+		try {
+			for (Chunk c; (c = full.take()) != END; ) {
+				if (error == null) {
+					try {
+						out.write(c.data, 0, c.length);
+					} catch (IOException e) {
+						error = e;
+					}
+				}
+				if (c.data.length == FLUSH_SIZE + 64)
+					free.offer(c);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private void writeVarint(long v) {
+		while ((v & ~0x7FL) != 0) {
+			buf[pos++] = (byte)((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		buf[pos++] = (byte)v;
+	}
+	
+	private void writeSigned(long v) {
+		writeVarint((v << 1) ^ (v >> 63));
+	}
+	
+	/**
+	 * 記録したフレーム数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public synchronized long getFrameCount() {
+		return frames;
+	}
+	
+	/**
+	 * 記録を終了し、書き出しが終わるのを待ってからストリームを閉じます。
+	 * 
+	 * @throws IOException 記録の書き出しに失敗していた場合
+	 */
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (pos > 0) {
+				chunk.length = pos;
+				full.put(chunk);
+			}
+			full.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("記録の書き出しを待つ間に割り込まれました。");
+		} finally {
+			out.close();
+		}
+		if (error != null)
+			throw error;
+	}
+	
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/*
+	 * 書き出しスレッドに渡すバッファ
+	 */
+	private static class Chunk {
+		byte[] data;
+		int length;
+		
+		Chunk(int size) {
+			this.data = new byte[size];
+		}
+	}
+}
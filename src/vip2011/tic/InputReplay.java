@@ -0,0 +1,196 @@
+package vip2011.tic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import vip2011.tic.event.InputQueue;
+
+/**
+ * {@link InputRecorder} で記録した入力を、{@link HeadlessRunner} で待ち時間なしに再生するクラスです。
+ * 
+ * <p>記録は全てメモリに読み込まれ、フレームごとに記録されたイベントをゲームの入力に戻してから、
+ * 記録された経過時間で1フレーム進めます。描画は {@link HeadlessRunner#setRenderEnabled(boolean)} で
+ * 有効にしない限り行われないため、ゲームの更新処理の速さで再生できます。
+ * 入力と経過時間だけで状態が決まるゲーム（別スレッドの処理や実時間に依存しないもの）であれば、
+ * 再生後の状態は記録したときと同じになります。</p>
+ * 
+ * <p>イベントの発生時刻は、経過時間を足し合わせた仮想的な時計の上で、記録したときのフレームの開始時刻との差を
+ * 保つように再現されます（{@link vip2011.tic.event.InputSource#getEventTime(int)}）。</p>
+ * <code><pre>
+ * InputReplay replay = new InputReplay(new FileInputStream("session.ticr"));
+ * Gomoku game = new Gomoku();
+ * game.setComputer(Board.NODATA);
+ * HeadlessRunner runner = new HeadlessRunner(game, replay.getWidth(), replay.getHeight());
+ * replay.run(runner);
+ * long checksum = game.getBoard().checksum();
+ * </pre></code>
+ */
+public class InputReplay {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final byte[] data;
+	private final int start;
+	private final int width, height;
+	private final int version;
+	
+	private int pos;
+	private long elapsed;
+	private long clock;
+	private int lastX, lastY;
+	private long frames;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したストリームから記録を読み込みます。
+	 * ストリームは最後まで読まれますが、閉じられません。
+	 * 
+	 * @param in 記録を読み込むストリーム
+	 * @throws IOException 読み込みに失敗した場合や、記録の形式が正しくない場合
+	 */
+	public InputReplay(InputStream in) throws IOException {
+		this(readAll(in));
+	}
+	
+	/**
+	 * 指定したバイト列から記録を読み込みます。
+	 * 
+	 * @param data 記録
+	 * @throws IOException 記録の形式が正しくない場合
+	 */
+	public InputReplay(byte[] data) throws IOException {
+		this.data = data;
+		for (byte b : InputRecorder.MAGIC)
+			if (pos >= data.length || data[pos++] != b)
+				throw new IOException("入力の記録ではありません。");
+		if (pos >= data.length || data[pos] < 1 || data[pos] > InputRecorder.VERSION)
+			throw new IOException("対応していない版数の記録です。");
+		version = data[pos++];
+		try {
+			width = (int)readVarint();
+			height = (int)readVarint();
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("記録が途中で終わっています。");
+		}
+		start = pos;
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		for (int n; (n = in.read(b)) > 0; )
+			out.write(b, 0, n);
+		return out.toByteArray();
+	}
+	
+	/**
+	 * 記録したときの描画領域の横幅を取得します。
+	 * 
+	 * @return 横幅
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * 記録したときの描画領域の縦幅を取得します。
+	 * 
+	 * @return 縦幅
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * 次のフレームが残っているかどうかを調べます。
+	 * 
+	 * @return 次のフレームがあるかどうか
+	 */
+	public boolean hasNext() {
+		return pos < data.length;
+	}
+	
+	/**
+	 * これまでに再生したフレーム数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public long getFrameCount() {
+		return frames;
+	}
+	
+	/**
+	 * 次のフレームの入力をゲームに与え、1フレーム進めます。
+	 * 
+	 * @param runner 再生に使うランナー
+	 * @return フレームを再生した場合は true、記録が終わっていた場合は false
+	 * @throws IllegalStateException 記録が途中で終わっている場合や、入力のリングバッファが溢れた場合
+	 */
+	public boolean step(HeadlessRunner runner) {
+		if (!hasNext())
+			return false;
+		InputQueue queue = runner.getGame().getInput().getQueue();
+		try {
+			elapsed += readSigned();
+			clock += elapsed;
+			int n = (int)readVarint();
+			for (int i = 0; i < n; ++i) {
+				int type = data[pos++];
+				int code = (type != InputQueue.MOUSE_MOVED) ? (int)readVarint() : 0;
+				lastX += (int)readSigned();
+				lastY += (int)readSigned();
+				long time = (version >= 2) ? clock + readSigned() : clock;
+				if (!queue.offer(type, code, lastX, lastY, time))
+					throw new IllegalStateException("入力のリングバッファが溢れました。");
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalStateException("記録が途中で終わっています。");
+		}
+		runner.step(elapsed);
+		++frames;
+		return true;
+	}
+	
+	/**
+	 * 記録の残りのフレームを全て再生します。
+	 * 
+	 * @param runner 再生に使うランナー
+	 * @return 再生したフレーム数
+	 */
+	public long run(HeadlessRunner runner) {
+		long n = 0;
+		while (step(runner))
+			++n;
+		return n;
+	}
+	
+	/**
+	 * 再生位置を記録の先頭に戻します。
+	 * ゲームの状態は戻らないので、新しいゲームとランナーで再生し直してください。
+	 */
+	public void rewind() {
+		pos = start;
+		elapsed = 0;
+		clock = 0;
+		lastX = lastY = 0;
+		frames = 0;
+	}
+	
+	private long readVarint() {
+		long v = 0;
+		for (int shift = 0; ; shift += 7) {
+			int b = data[pos++];
+			v |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return v;
+		}
+	}
+	
+	private long readSigned() {
+		long v = readVarint();
+		return (v >>> 1) ^ -(v & 1);
+	}
+}
@@ -0,0 +1,215 @@
+package vip2011.tic;
+
+import java.awt.Color;
+
+/**
+ * ボードの値と色の対応を保持するクラスです。
+ * 
+ * <p>色は ARGB 形式の int（<code>0xAARRGGBB</code>）で保持され、対応する {@link Color} のインスタンスも
+ * 並べてキャッシュされます。0 以上 {@link #DENSE_LIMIT} 未満の値は配列で直接引き、それ以外の値は
+ * オープンアドレス法のハッシュ表で引くため、色の取得でオブジェクトが生成されることはありません。</p>
+ */
+public class Palette {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** 配列で直接引く値の上限（この値は含みません）です。 */
+	public static final int DENSE_LIMIT = 1024;
+
+	/* 値ごとの色（dense[id]）。denseColors[id] が null なら未設定 */
+	private int[] dense = new int[16];
+	private Color[] denseColors = new Color[16];
+
+	/* DENSE_LIMIT の範囲外の値の色（オープンアドレス法） */
+	private int[] sparseKeys = new int[0];
+	private int[] sparseValues = new int[0];
+	private Color[] sparseColors = new Color[0];
+	private int sparseSize;
+
+	private int defaultARGB;
+	private Color defaultColor;
+
+	private int modCount;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した色をデフォルトの色とするパレットを作成します。
+	 * 
+	 * @param defaultColor 色が設定されていない値に使われる色
+	 */
+	public Palette(Color defaultColor) {
+		setDefaultColor(defaultColor);
+	}
+
+	/**
+	 * 指定した値に対応する色を設定します。
+	 * 
+	 * @param id ボードの値
+	 * @param color 色
+	 */
+	public void set(int id, Color color) {
+		if (color == null)
+			throw new IllegalArgumentException("色が指定されていません。");
+		if (0 <= id && id < DENSE_LIMIT) {
+			if (id >= dense.length)
+				growDense(id + 1);
+			dense[id] = color.getRGB();
+			denseColors[id] = color;
+		} else {
+			putSparse(id, color);
+		}
+		++modCount;
+	}
+
+	/**
+	 * 指定した値に対応する色を ARGB 形式で設定します。
+	 * 
+	 * @param id ボードの値
+	 * @param argb 色（<code>0xAARRGGBB</code>）
+	 */
+	public void set(int id, int argb) {
+		set(id, new Color(argb, true));
+	}
+
+	/**
+	 * 指定した値に対応する色を ARGB 形式で取得します。
+	 * 
+	 * @param id ボードの値
+	 * @return 色（<code>0xAARRGGBB</code>）、設定されていない場合はデフォルトの色
+	 */
+	public int getARGB(int id) {
+		if (0 <= id && id < dense.length)
+			return (denseColors[id] != null) ? dense[id] : defaultARGB;
+		int slot = findSparse(id);
+		return (slot >= 0) ? sparseValues[slot] : defaultARGB;
+	}
+
+	/**
+	 * 指定した値に対応する色を取得します。
+	 * 
+	 * @param id ボードの値
+	 * @return 色、設定されていない場合はデフォルトの色
+	 */
+	public Color getColor(int id) {
+		if (0 <= id && id < dense.length) {
+			Color c = denseColors[id];
+			return (c != null) ? c : defaultColor;
+		}
+		int slot = findSparse(id);
+		return (slot >= 0) ? sparseColors[slot] : defaultColor;
+	}
+
+	/**
+	 * 色が設定されていない値に使われる色を取得します。
+	 * 
+	 * @return デフォルトの色
+	 */
+	public Color getDefaultColor() {
+		return defaultColor;
+	}
+
+	/**
+	 * 色が設定されていない値に使われる色を設定します。
+	 * 
+	 * @param defaultColor デフォルトの色
+	 */
+	public void setDefaultColor(Color defaultColor) {
+		if (defaultColor == null)
+			throw new IllegalArgumentException("色が指定されていません。");
+		this.defaultColor = defaultColor;
+		this.defaultARGB = defaultColor.getRGB();
+		++modCount;
+	}
+
+	/**
+	 * パレットの変更回数を取得します。
+	 * 色を設定するたびに値が変わるため、パレットから作ったキャッシュの検証に利用できます。
+	 * 
+	 * @return 変更回数
+	 */
+	public int getModCount() {
+		return modCount;
+	}
+
+	/**
+	 * 色 src を色 dst の上に重ねた色を求めます（SrcOver 合成）。
+	 * 
+	 * @param src 上に重ねる色（<code>0xAARRGGBB</code>）
+	 * @param dst 下の色（<code>0xAARRGGBB</code>）
+	 * @return 合成した色（<code>0xAARRGGBB</code>）
+	 */
+	public static int composite(int src, int dst) {
+		int sa = src >>> 24;
+		if (sa == 255)
+			return src;
+		if (sa == 0)
+			return dst;
+		int da = dst >>> 24;
+		int dw = (da * (255 - sa) + 127) / 255;
+		int oa = sa + dw;
+		if (oa == 0)
+			return 0;
+		int r = (((src >>> 16) & 0xFF) * sa + ((dst >>> 16) & 0xFF) * dw + oa / 2) / oa;
+		int g = (((src >>>  8) & 0xFF) * sa + ((dst >>>  8) & 0xFF) * dw + oa / 2) / oa;
+		int b = (( src         & 0xFF) * sa + ( dst         & 0xFF) * dw + oa / 2) / oa;
+		return (oa << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	private void growDense(int minLength) {
+		int length = Math.min(DENSE_LIMIT, Math.max(minLength, dense.length * 2));
+		int[] d = new int[length];
+		Color[] c = new Color[length];
+		System.arraycopy(dense, 0, d, 0, dense.length);
+		System.arraycopy(denseColors, 0, c, 0, denseColors.length);
+		dense = d;
+		denseColors = c;
+	}
+
+	/*
+	 * ハッシュ表から id のスロットを探す。無ければ -1
+	 */
+	private int findSparse(int id) {
+		if (sparseSize == 0)
+			return -1;
+		int mask = sparseKeys.length - 1;
+		for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+			if (sparseColors[i] == null)
+				return -1;
+			if (sparseKeys[i] == id)
+				return i;
+		}
+	}
+
+	private void putSparse(int id, Color color) {
+		if ((sparseSize + 1) * 2 > sparseKeys.length)
+			rehash(Math.max(8, sparseKeys.length * 2));
+		int mask = sparseKeys.length - 1;
+		int i = mix(id) & mask;
+		while (sparseColors[i] != null && sparseKeys[i] != id)
+			i = (i + 1) & mask;
+		if (sparseColors[i] == null)
+			++sparseSize;
+		sparseKeys[i] = id;
+		sparseValues[i] = color.getRGB();
+		sparseColors[i] = color;
+	}
+
+	private void rehash(int capacity) {
+		int[] keys = sparseKeys;
+		Color[] colors = sparseColors;
+		sparseKeys = new int[capacity];
+		sparseValues = new int[capacity];
+		sparseColors = new Color[capacity];
+		sparseSize = 0;
+		for (int i = 0; i < keys.length; ++i)
+			if (colors[i] != null)
+				putSparse(keys[i], colors[i]);
+	}
+
+	private static int mix(int id) {
+		int h = id * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,458 @@
+package vip2011.tic;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多数のゲームを、少数の共有のスレッドでまとめて動かすホストです。
+ * 
+ * <p>{@link TICApplet} はゲームごとにスレッドを1つ使いますが、このクラスでは各ゲーム（セッション）を
+ * 次に更新する時刻の順に並べた待ち行列に入れ、固定数のワーカスレッドが時刻の来たセッションから順に1フレームずつ更新します。
+ * セッションの作成・破棄でスレッドが作られたり終了したりすることはありません。
+ * 更新の間隔はゲームが要求したFPS（要求が無い場合は60FPS）から求めた一定の値で、
+ * {@link TICGame#updateFrame(long)} にもその値が渡されます。描画は行いません。</p>
+ * 
+ * <p>1回の割り当てでセッションを更新する回数と時間には上限（ティックの予算）があり、遅れたセッションでも
+ * 上限を超えた分は取り戻さずに捨てられます。予算を使い切ったセッションは次の時刻で待ち行列に戻るため、
+ * 重いセッションがワーカを占有して他のセッションを待たせることはありません。
+ * {@link TICGame#isIdle()} が true を返したセッションは待ち行列から外れ、{@link Session#wakeup()} か
+ * {@link TICGame#requestRedraw()} の呼び出しで再開します。入力を与えた後は {@link Session#wakeup()} を呼び出してください。</p>
+ * 
+ * <p>セッションを閉じると、ゲームの {@link TICGame#dispose()} が呼び出され、ゲームが使っていたスレッドなどが解放されます。</p>
+ * <code><pre>
+ * SessionHost host = new SessionHost(4);
+ * host.start();
+ * SessionHost.Session s = host.open(new Gomoku(), 640, 480);
+ * s.getGame().getInput().moveMouse(120, 80);
+ * s.wakeup();
+ * ...
+ * s.close();
+ * host.shutdown();
+ * </pre></code>
+ */
+public class SessionHost {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** FPSの要求が無い場合の更新の間隔に対応するFPSです。 */
+	public static final int DEFAULT_FPS = 60;
+	
+	/** 1回の割り当てで更新する回数の上限の既定値です。 */
+	public static final int DEFAULT_MAX_TICKS = 4;
+	
+	/** 1回の割り当てで更新に使う時間の上限の既定値(ns)です。 */
+	public static final long DEFAULT_TICK_BUDGET = 2000000L;
+	
+	/* セッションの状態 */
+	private static final int QUEUED  = 0;
+	private static final int RUNNING = 1;
+	private static final int WOKEN   = 2;
+	private static final int PARKED  = 3;
+	private static final int CLOSED  = 4;
+	
+	private final int threads;
+	private final DelayQueue<Session> queue = new DelayQueue<Session>();
+	private final ConcurrentHashMap<Long, Session> sessions = new ConcurrentHashMap<Long, Session>();
+	private final AtomicLong nextId = new AtomicLong();
+	private final Thread[] workers;
+	
+	private volatile int maxTicks = DEFAULT_MAX_TICKS;
+	private volatile long tickBudget = DEFAULT_TICK_BUDGET;
+	private volatile boolean running;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定した数のワーカスレッドでセッションを動かすホストを作成します。
+	 * 
+	 * @param threads ワーカスレッド数
+	 */
+	public SessionHost(int threads) {
+		if (threads <= 0)
+			throw new IllegalArgumentException("不正なスレッド数です。");
+		this.threads = threads;
+		this.workers = new Thread[threads];
+	}
+	
+	/**
+	 * ワーカスレッドを開始します。
+	 */
+	public synchronized void start() {
+		if (running)
+			throw new IllegalStateException("既に開始しています。");
+		running = true;
+		ThreadFactory factory = new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SessionHost-" + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+		for (int i = 0; i < threads; ++i) {
+			workers[i] = factory.newThread(new Runnable() {
+				public void run() {
+					runWorker();
+				}
+			});
+			workers[i].start();
+		}
+	}
+	
+	/**
+	 * 全てのセッションを閉じて、ワーカスレッドを終了します。
+	 * 
+	 * @throws InterruptedException ワーカスレッドの終了を待っている間に割り込まれた場合
+	 */
+	public synchronized void shutdown() throws InterruptedException {
+		running = false;
+		for (Session s : sessions.values())
+			s.close();
+		for (Thread t : workers) {
+			if (t != null) {
+				t.interrupt();
+				t.join();
+			}
+		}
+	}
+	
+	/**
+	 * ゲームを、指定した描画領域のサイズで新しいセッションとして登録します。
+	 * ゲームは最初の更新の前にワーカスレッドで初期化されます。
+	 * 描画は行いませんが、ゲームは {@link TICGame#getWidth()}、{@link TICGame#getHeight()} をマウスの座標の変換などに使います。
+	 * 
+	 * @param game ゲーム
+	 * @param width 描画領域の横幅
+	 * @param height 描画領域の縦幅
+	 * @return セッション
+	 */
+	public Session open(TICGame game, int width, int height) {
+		if (game == null)
+			throw new IllegalArgumentException("ゲームが指定されていません。");
+		if (width <= 0 || height <= 0)
+			throw new IllegalArgumentException("描画領域のサイズが不正です。");
+		game.setSize(width, height);
+		Session s = new Session(nextId.getAndIncrement(), game);
+		game.setSession(s);
+		sessions.put(s.id, s);
+		queue.put(s);
+		return s;
+	}
+	
+	/**
+	 * 指定した番号のセッションを取得します。
+	 * 
+	 * @param id セッションの番号
+	 * @return セッション、存在しない場合（閉じた場合を含む）は null
+	 */
+	public Session getSession(long id) {
+		return sessions.get(id);
+	}
+	
+	/**
+	 * 開いているセッションの数を取得します。
+	 * 
+	 * @return セッション数
+	 */
+	public int getSessionCount() {
+		return sessions.size();
+	}
+	
+	/**
+	 * 更新を待っているセッションの数を取得します。
+	 * 
+	 * @return セッション数
+	 */
+	public int getQueuedCount() {
+		return queue.size();
+	}
+	
+	/**
+	 * 1回の割り当てでセッションを更新する回数の上限を設定します。
+	 * 遅れているセッションは、この回数まで続けて更新して遅れを取り戻します。
+	 * 
+	 * @param maxTicks 回数の上限
+	 */
+	public void setMaxTicks(int maxTicks) {
+		if (maxTicks <= 0)
+			throw new IllegalArgumentException("不正な回数です。");
+		this.maxTicks = maxTicks;
+	}
+	
+	/**
+	 * 1回の割り当てでセッションの更新に使う時間の上限を設定します。
+	 * 1回の更新がこの時間を超えた場合は、超過として数えられます。
+	 * 
+	 * @param tickBudget 時間の上限(ns)
+	 */
+	public void setTickBudget(long tickBudget) {
+		if (tickBudget <= 0)
+			throw new IllegalArgumentException("不正な時間です。");
+		this.tickBudget = tickBudget;
+	}
+	
+	/*
+	 * ワーカスレッドのループ。時刻の来たセッションを取り出して更新し、次の時刻で待ち行列に戻す
+	 */
+	private void runWorker() {
+		while (running) {
+			Session s;
+			try {
+				s = queue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			if (s.state.compareAndSet(QUEUED, RUNNING))
+				s.run(maxTicks, tickBudget);
+		}
+	}
+	
+	//-------------------------------------------------------------------------
+	// インナクラス
+	//-------------------------------------------------------------------------
+	/**
+	 * {@link SessionHost} で動いている1つのゲームです。
+	 * 
+	 * <p>更新はワーカスレッドで行われ、1つのセッションが同時に複数のスレッドで更新されることはありません。
+	 * 入力は {@link TICGame#getInput()} に対して1つのスレッドから与えてください。</p>
+	 */
+	public final class Session implements Delayed {
+		private final long id;
+		private final TICGame game;
+		private final AtomicInteger state = new AtomicInteger(QUEUED);
+		
+		/* 以下はワーカスレッドだけが読み書きする（状態の遷移で受け渡される） */
+		private boolean initialized;
+		private long period;
+		
+		/* 次に更新する時刻(ns)。待ち行列に入っている間は変更しない */
+		private volatile long next = System.nanoTime();
+		
+		private volatile long ticks, skipped, overruns, maxTickNanos;
+		private volatile Throwable error;
+		
+		Session(long id, TICGame game) {
+			this.id = id;
+			this.game = game;
+		}
+		
+		/*
+		 * 予算の範囲で更新し、次の状態に移る
+		 */
+		void run(int maxTicks, long budget) {
+			long begin = System.nanoTime();
+			try {
+				if (!initialized) {
+					initialized = true;
+					game.initialize();
+					next = begin;
+				}
+				int n = 0;
+				long now = begin;
+				while (now - next >= 0 && n < maxTicks && now - begin < budget) {
+					int fps = game.getRequestFPS();
+					period = 1000000000L / ((fps > 0) ? fps : DEFAULT_FPS);
+					game.stepFrame(period);
+					long after = System.nanoTime();
+					long t = after - now;
+					if (t > maxTickNanos)
+						maxTickNanos = t;
+					if (t > budget)
+						++overruns;
+					++ticks;
+					++n;
+					next += period;
+					now = after;
+				}
+				
+				// 予算を使い切っても遅れている分は捨てる
+				if (now - next >= period) {
+					skipped += (now - next) / period;
+					next = now + period;
+				}
+			} catch (Throwable e) {
+				error = e;
+				close();
+				dispose();
+				return;
+			}
+			
+			if (game.isIdle() && state.compareAndSet(RUNNING, PARKED))
+				return;
+			requeue();
+		}
+		
+		/*
+		 * 実行中・再開要求中の状態から待ち行列に戻す
+		 */
+		private void requeue() {
+			while (true) {
+				int s = state.get();
+				if (s == CLOSED) {
+					// 更新中に閉じられたので、ここでゲームを破棄する
+					dispose();
+					return;
+				}
+				if (state.compareAndSet(s, QUEUED)) {
+					if (s == WOKEN)
+						next = Math.max(next, System.nanoTime());
+					queue.put(this);
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * 入力などで状態が変わる可能性があることを知らせ、停止しているセッションを再開します。
+		 * どのスレッドから呼び出しても構いません。
+		 */
+		public void wakeup() {
+			while (true) {
+				int s = state.get();
+				if (s == PARKED) {
+					if (state.compareAndSet(PARKED, QUEUED)) {
+						// 停止していた間の時間は取り戻さない
+						next = System.nanoTime();
+						queue.put(this);
+						return;
+					}
+				} else if (s == RUNNING) {
+					if (state.compareAndSet(RUNNING, WOKEN))
+						return;
+				} else {
+					return;
+				}
+			}
+		}
+		
+		/**
+		 * セッションを閉じます。以降、ゲームは更新されません。
+		 * 更新中に呼び出した場合は、その更新が終わった後で閉じられます。
+		 * 初期化済みのゲームの {@link TICGame#dispose()} は、ゲームが更新されていないことを確かめてから、
+		 * このスレッドか、更新を終えたワーカスレッドで一度だけ呼び出されます。
+		 */
+		public void close() {
+			int s = state.getAndSet(CLOSED);
+			if (s == CLOSED)
+				return;
+			sessions.remove(id);
+			queue.remove(this);
+			game.setSession(null);
+			
+			// 待ち行列に入っているか停止しているセッションは、以後ワーカに取り出されない
+			if (s == QUEUED || s == PARKED)
+				dispose();
+		}
+		
+		/*
+		 * 初期化したゲームを破棄する（ゲームを更新するスレッドがいないときに一度だけ呼び出される）
+		 */
+		private void dispose() {
+			if (initialized)
+				game.dispose();
+		}
+		
+		/**
+		 * セッションが閉じているかどうかを取得します。
+		 * 
+		 * @return 閉じているかどうか
+		 */
+		public boolean isClosed() {
+			return state.get() == CLOSED;
+		}
+		
+		/**
+		 * 入力が無いため停止しているかどうかを取得します。
+		 * 
+		 * @return 停止しているかどうか
+		 */
+		public boolean isParked() {
+			return state.get() == PARKED;
+		}
+		
+		/**
+		 * セッションの番号を取得します。
+		 * 
+		 * @return 番号
+		 */
+		public long getId() {
+			return id;
+		}
+		
+		/**
+		 * ゲームを取得します。
+		 * 
+		 * @return ゲーム
+		 */
+		public TICGame getGame() {
+			return game;
+		}
+		
+		/**
+		 * 更新した回数を取得します。
+		 * 
+		 * @return 回数
+		 */
+		public long getTickCount() {
+			return ticks;
+		}
+		
+		/**
+		 * 予算を超えて遅れたために捨てた更新の回数を取得します。
+		 * 
+		 * @return 回数
+		 */
+		public long getSkippedCount() {
+			return skipped;
+		}
+		
+		/**
+		 * 1回の更新が時間の上限を超えた回数を取得します。
+		 * 
+		 * @return 回数
+		 * @see SessionHost#setTickBudget(long)
+		 */
+		public long getOverrunCount() {
+			return overruns;
+		}
+		
+		/**
+		 * 1回の更新にかかった時間の最大値を取得します。
+		 * 
+		 * @return 時間(ns)
+		 */
+		public long getMaxTickNanos() {
+			return maxTickNanos;
+		}
+		
+		/**
+		 * 更新中に発生した例外を取得します。例外が発生したセッションは閉じられます。
+		 * 
+		 * @return 例外、発生していない場合は null
+		 */
+		public Throwable getError() {
+			return error;
+		}
+		
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(next - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		public int compareTo(Delayed o) {
+			if (o == this)
+				return 0;
+			Session s = (Session)o;
+			long d = next - s.next;
+			if (d != 0)
+				return (d < 0) ? -1 : 1;
+			return (id < s.id) ? -1 : (id > s.id) ? 1 : 0;
+		}
+	}
+}
@@ -1,10 +1,16 @@
 package vip2011.tic;
 
 import java.awt.AWTEvent;
+import java.awt.AWTException;
 import java.awt.BorderLayout;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
@@ -12,9 +18,10 @@ import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.swing.JApplet;
 import javax.swing.JPanel;
@@ -24,6 +31,26 @@ import vip2011.tic.event.Mouse;
 import vip2011.tic.event.MouseButton;
 
 /**
+ * {@link TICGame} をアプレットとして動かすためのクラスです。
+ * 
+ * <p>ゲームの本体は {@link TICGame} を継承したクラスに実装し、コンストラクタで渡してください。
+ * 従来どおり、このクラスを継承して {@link #initialize()}、{@link #updateFrame(long)}、
+ * {@link #drawCanvas(Graphics2D)} をオーバライドすることもできます。</p>
+ * 
+ * <p>画面への表示方法は、初期化の前に {@link #setBufferCount(int)} で選択できます。
+ * 0（初期値）の場合はソフトウェアの {@link BufferedImage} に描画してからキャンバスにコピーします。
+ * 1 以上の場合は {@link BufferStrategy} を使い、可能であればアクセラレートされた {@link java.awt.image.VolatileImage}
+ * のバックバッファに直接描画して表示を切り替えます。フレームごとの画像全体のコピーが無くなり、ティアリングも抑えられます。</p>
+ * 
+ * <p>{@link #setThreadedLoop(boolean)} を有効にすると、更新と描画を別々のスレッドで行います。
+ * 更新スレッドは {@link TICGame#getRequestFPS()} から求めた一定の間隔で {@link TICGame#updateFrame(long)} を呼び出し、
+ * そのたびに {@link TICGame#snapshot()} で作成したスナップショットを描画スレッドに渡します。
+ * 描画スレッドは直近2回のスナップショットの間を補間して {@link TICGame#drawSnapshot(Graphics2D, Object, Object, float)}
+ * で描画します。描画が遅くても更新の頻度は変わらず、更新の経過時間が常に一定になるため、結果も再現可能になります。</p>
+ * 
+ * <p>{@link #setIdleMode(boolean)} を有効にすると、更新の後でゲームが {@link TICGame#isIdle()} で変化が無いと報告した場合、
+ * 描画と画面への転送を省略し、入力があるか {@link TICGame#requestRedraw()} が呼び出されるまでループを停止します。
+ * 入力を待つだけのゲームが CPU を消費し続けることがなくなります。</p>
  * 
  * @author inoue
  */
@@ -33,19 +60,64 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	//-------------------------------------------------------------------------
 	private static final long serialVersionUID = -461530548260448039L;
 	
-	private TICCanvas canvas;
+	private Component canvas;
 
 	private BufferedImage buffer;
+	private int bufferCount;
+	private BufferStrategy strategy;
+	
+	/* キャンバスに転送するためのコンテキスト（キャンバスの大きさが変わるまで使い回す） */
+	private Graphics canvasGraphics;
+	private int canvasWidth, canvasHeight;
+	
+	/* メモリの確保量の計測（ループのスレッドでは frameMeter に取り出して使う） */
+	private volatile AllocationMeter meter;
+	private AllocationMeter frameMeter;
 
-	private Map<Integer, Key> keyMap = new HashMap<Integer, Key>();
-	private MouseButton[] btnMap = new MouseButton[3];
-	private Mouse mouse = new Mouse();
+	private final TICGame game;
+	
+	private final FPSController fpscon = new FPSController(0);
+	private int appliedFPS;
+	
+	/* FPSの要求が無い場合の、更新スレッドの更新頻度 */
+	private static final int DEFAULT_UPDATE_FPS = 60;
 	
-	private FPSController fpscon = new FPSController(0);
+	/* 更新が遅れた場合に、遅れを取り戻すために続けて行う更新の最大数 */
+	private static final int MAX_CATCH_UP = 5;
+	
+	private boolean threadedLoop;
+	private boolean idleMode;
+	private int renderFPS = 60;
+	private boolean started;
+	
+	/* 更新スレッドが公開した最新のスナップショットと、描画スレッドが描画中のスナップショット */
+	private volatile Snapshots published;
+	private volatile Snapshots drawing;
+	private float drawAlpha;
+	
+	/* 公開をやめたが、描画スレッドがまだ参照しているかもしれないスナップショット（更新スレッドだけが使う） */
+	private final ArrayList<Object> retired = new ArrayList<Object>();
 
 	//-------------------------------------------------------------------------
 	// メソッド
 	//-------------------------------------------------------------------------
+	/**
+	 * このクラスを継承して {@link #initialize()}、{@link #updateFrame(long)}、
+	 * {@link #drawCanvas(Graphics2D)} をオーバライドするアプレットを作成します。
+	 */
+	protected TICApplet() {
+		this.game = new AppletGame();
+	}
+	
+	/**
+	 * 指定したゲームを動かすアプレットを作成します。
+	 * 
+	 * @param game ゲーム
+	 */
+	protected TICApplet(TICGame game) {
+		this.game = game;
+	}
+	
 	/**
 	 * アプレットを初期化します。
 	 * 
@@ -54,9 +126,12 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 */
 	@Override
 	public final void init() {
-		buffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
-		
-		canvas = new TICCanvas();
+		if (bufferCount > 0) {
+			canvas = new AcceleratedCanvas();
+		} else {
+			buffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+			canvas = new TICCanvas();
+		}
 		canvas.setPreferredSize(new Dimension(getWidth(), getHeight()));
 
 		canvas.addKeyListener(this);
@@ -67,7 +142,9 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 		getContentPane().setLayout(new BorderLayout());
 		getContentPane().add(canvas, BorderLayout.CENTER);
 		
-		initialize();
+		game.setSize(getWidth(), getHeight());
+		game.setFrameImage(buffer);
+		game.initialize();
 	}
 	
 	/**
@@ -75,9 +152,26 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 */
 	public final void start() {
 		canvas.requestFocus();
+		started = true;
 		
-		// メインループを開始
-		new Thread(this).start();
+		Object first = threadedLoop ? game.snapshot() : null;
+		if (first != null) {
+			// 更新スレッドと描画スレッドを開始
+			published = new Snapshots(first, first, System.nanoTime(), 1);
+			new Thread(new Runnable() {
+				public void run() {
+					runUpdate();
+				}
+			}, "TIC-update").start();
+			new Thread(new Runnable() {
+				public void run() {
+					runRender();
+				}
+			}, "TIC-render").start();
+		} else {
+			// メインループを開始
+			new Thread(this).start();
+		}
 	}
 
 	/**
@@ -85,47 +179,410 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 */
 	@Override
 	public final void run() {
-		Graphics2D g = buffer.createGraphics();
+		Graphics2D g = (buffer != null) ? buffer.createGraphics() : null;
 		long lastTime = System.nanoTime();
+		boolean presented = false;
 		while (true) {
 			long elapsed = System.nanoTime() - lastTime;
 			lastTime = System.nanoTime();
+			AllocationMeter m = frameMeter = meter;
+			if (m != null)
+				m.beginFrame();
+			
+			// FPSの変更を反映
+			if (game.getRequestFPS() != appliedFPS) {
+				appliedFPS = game.getRequestFPS();
+				fpscon.setRequestFPS(appliedFPS);
+			}
 			
 			// 更新処理
-			updateFrame(elapsed);
+			if (m != null)
+				m.split(AllocationMeter.FRAMEWORK);
+			game.stepFrame(elapsed);
+			if (m != null)
+				m.split(AllocationMeter.UPDATE);
 			
-			// 描画処理
-			drawCanvas(g);
+			// 変化が無ければ描画せずに、入力か再描画の要求があるまで停止
+			boolean redraw = game.takeRedrawRequest();
+			if (idleMode && presented && !redraw && game.isIdle()) {
+				if (m != null)
+					m.endFrame();
+				game.awaitWakeup();
+				fpscon.reset();
+				continue;
+			}
 			
-			// キャンバスにコピー
-			Graphics cg = canvas.getGraphics();
-			if (cg != null)
-				cg.drawImage(buffer, 0, 0, null);
+			// 描画処理
+			presented = render(g);
+			if (m != null)
+				m.endFrame();
 			
 			// FPSを調整
 			fpscon.sleep();
 		}
 	}
 	
+	/*
+	 * 更新スレッドのループ。一定の間隔で更新し、そのたびにスナップショットを公開する。
+	 */
+	private void runUpdate() {
+		long next = System.nanoTime();
+		while (true) {
+			int fps = game.getRequestFPS();
+			long period = 1000000000L / ((fps > 0) ? fps : DEFAULT_UPDATE_FPS);
+			long now = System.nanoTime();
+			if (now < next) {
+				LockSupport.parkNanos(next - now);
+				continue;
+			}
+			
+			// 遅れすぎた場合は、遅れを取り戻さずに時刻を合わせる
+			if (now - next > MAX_CATCH_UP * period)
+				next = now;
+			
+			game.stepFrame(period);
+			Snapshots old = published;
+			published = new Snapshots(old.curr, game.snapshot(), next, period);
+			if (old.prev != old.curr)
+				retired.add(old.prev);
+			releaseSnapshots();
+			next += period;
+		}
+	}
+	
+	/*
+	 * 公開をやめたスナップショットのうち、描画スレッドが参照していないものをゲームに返す。
+	 * 描画スレッドは drawing を設定してから published を読み直すので、published を差し替えた後に
+	 * drawing が参照していなければ、以後も参照されることは無い。
+	 */
+	private void releaseSnapshots() {
+		Snapshots d = drawing;
+		for (int i = retired.size() - 1; i >= 0; --i) {
+			Object o = retired.get(i);
+			if (d == null || (d.prev != o && d.curr != o)) {
+				retired.remove(i);
+				game.releaseSnapshot(o);
+			}
+		}
+	}
+	
+	/*
+	 * 描画スレッドのループ。最新のスナップショットを補間して描画する。
+	 */
+	private void runRender() {
+		fpscon.setRequestFPS(renderFPS);
+		Graphics2D g = (buffer != null) ? buffer.createGraphics() : null;
+		while (true) {
+			// 描画するスナップショットを公開してから、それが差し替えられていないことを確かめる
+			Snapshots s;
+			do {
+				s = published;
+				drawing = s;
+			} while (s != published);
+			drawAlpha = Math.min(1f, Math.max(0f, (float)(System.nanoTime() - s.time) / s.period));
+			render(g);
+			fpscon.sleep();
+		}
+	}
+	
+	/*
+	 * 表示方法に応じて描画する。画面に表示できなかった場合は false
+	 */
+	private boolean render(Graphics2D g) {
+		return (buffer != null) ? renderImage(g) : renderStrategy();
+	}
+	
+	/*
+	 * ゲームの描画処理を呼び出す
+	 */
+	private void paint(Graphics2D g) {
+		Snapshots s = drawing;
+		if (s != null) {
+			game.drawSnapshot(g, s.prev, s.curr, drawAlpha);
+		} else {
+			AllocationMeter m = frameMeter;
+			if (m != null)
+				m.split(AllocationMeter.FRAMEWORK);
+			game.drawCanvas(g);
+			if (m != null)
+				m.split(AllocationMeter.DRAW);
+		}
+	}
+	
+	/*
+	 * ソフトウェアの画像に描画して、キャンバスにコピーする
+	 */
+	private boolean renderImage(Graphics2D g) {
+		paint(g);
+		Graphics cg = getCanvasGraphics();
+		if (cg == null)
+			return false;
+		cg.drawImage(buffer, 0, 0, null);
+		return true;
+	}
+	
+	/*
+	 * キャンバスのコンテキストを取得する。表示されていない場合は null
+	 */
+	private Graphics getCanvasGraphics() {
+		if (canvasGraphics != null && (!canvas.isShowing()
+				|| canvas.getWidth() != canvasWidth || canvas.getHeight() != canvasHeight)) {
+			canvasGraphics.dispose();
+			canvasGraphics = null;
+		}
+		if (canvasGraphics == null && canvas.isShowing()) {
+			canvasGraphics = canvas.getGraphics();
+			canvasWidth = canvas.getWidth();
+			canvasHeight = canvas.getHeight();
+		}
+		return canvasGraphics;
+	}
+	
+	/*
+	 * バッファストラテジのバックバッファに描画して、表示を切り替える。
+	 * バックバッファの内容が失われた場合は描画し直す。
+	 */
+	private boolean renderStrategy() {
+		BufferStrategy bs = getStrategy();
+		if (bs == null)
+			return false;
+		do {
+			do {
+				Graphics2D g = (Graphics2D)bs.getDrawGraphics();
+				try {
+					paint(g);
+				} finally {
+					g.dispose();
+				}
+			} while (bs.contentsRestored());
+			bs.show();
+		} while (bs.contentsLost());
+		Toolkit.getDefaultToolkit().sync();
+		return true;
+	}
+	
+	/*
+	 * バッファストラテジを取得する。キャンバスがまだ表示されていない場合は null
+	 */
+	private BufferStrategy getStrategy() {
+		if (strategy == null && canvas.isDisplayable()) {
+			Canvas c = (Canvas)canvas;
+			try {
+				// アクセラレートされたバッファを要求し、使えない環境では既定の方法に任せる
+				ImageCapabilities accelerated = new ImageCapabilities(true);
+				c.createBufferStrategy(bufferCount, new BufferCapabilities(accelerated, accelerated, null));
+			} catch (AWTException e) {
+				c.createBufferStrategy(bufferCount);
+			}
+			strategy = c.getBufferStrategy();
+		}
+		return strategy;
+	}
+	
+	/**
+	 * 画面の表示に使うバッファの数を設定します。
+	 * 0 の場合はソフトウェアの画像に描画してキャンバスにコピーし、1 以上の場合は指定した数のバッファを持つ
+	 * {@link BufferStrategy} で表示します（ダブルバッファリングは 2、トリプルバッファリングは 3）。
+	 * 
+	 * <p>表示方法はキャンバスを作成するときに決まるため、このメソッドはコンストラクタなど、
+	 * アプレットの初期化より前に呼び出してください。{@link BufferStrategy} を使う場合、
+	 * {@link TICGame#getFrameImage()} は null を返します。</p>
+	 * 
+	 * @param bufferCount バッファの数
+	 */
+	public void setBufferCount(int bufferCount) {
+		if (bufferCount < 0)
+			throw new IllegalArgumentException("不正なバッファ数です。");
+		if (canvas != null)
+			throw new IllegalStateException("表示方法はアプレットの初期化より前に設定してください。");
+		this.bufferCount = bufferCount;
+	}
+	
+	/**
+	 * 画面の表示に使うバッファの数を取得します。
+	 * 
+	 * @return バッファの数、ソフトウェアの画像を使う場合は 0
+	 */
+	public int getBufferCount() {
+		return bufferCount;
+	}
+	
+	/**
+	 * 更新と描画を別々のスレッドで行うかどうかを設定します。
+	 * ゲームが {@link TICGame#snapshot()} でスナップショットを返さない場合は、この設定に関わらず同じスレッドで行います。
+	 * このメソッドはアプレットの開始より前に呼び出してください。
+	 * 
+	 * @param threadedLoop 更新と描画を別々のスレッドで行うかどうか
+	 */
+	public void setThreadedLoop(boolean threadedLoop) {
+		if (started)
+			throw new IllegalStateException("ループの方法はアプレットの開始より前に設定してください。");
+		this.threadedLoop = threadedLoop;
+	}
+	
+	/**
+	 * 更新と描画を別々のスレッドで行うかどうかを取得します。
+	 * 
+	 * @return 更新と描画を別々のスレッドで行うかどうか
+	 */
+	public boolean isThreadedLoop() {
+		return threadedLoop;
+	}
+	
+	/**
+	 * 更新と描画を別々のスレッドで行う場合の、描画のフレームレートの目標値を設定します。
+	 * このメソッドはアプレットの開始より前に呼び出してください。
+	 * 
+	 * @param renderFPS 描画のFPSの目標値（初期値は60）
+	 */
+	public void setRenderFPS(int renderFPS) {
+		if (started)
+			throw new IllegalStateException("描画のFPSはアプレットの開始より前に設定してください。");
+		this.renderFPS = renderFPS;
+	}
+	
+	/**
+	 * ゲームに変化が無い間、描画を省略してループを停止するかどうかを設定します。
+	 * 更新と描画を別々のスレッドで行う場合は、この設定は使われません。
+	 * 
+	 * @param idleMode 変化が無い間ループを停止するかどうか
+	 * @see TICGame#isIdle()
+	 */
+	public void setIdleMode(boolean idleMode) {
+		this.idleMode = idleMode;
+		if (canvas instanceof AcceleratedCanvas)
+			canvas.setIgnoreRepaint(!idleMode);
+		game.requestRedraw();
+	}
+	
+	/**
+	 * ゲームに変化が無い間、描画を省略してループを停止するかどうかを取得します。
+	 * 
+	 * @return 変化が無い間ループを停止するかどうか
+	 */
+	public boolean isIdleMode() {
+		return idleMode;
+	}
+	
+	/**
+	 * 1フレームごとのメモリの確保量を計測するかどうかを設定します。
+	 * 計測は更新と描画を同じスレッドで行う場合だけ行われます。
+	 * 
+	 * @param tracking 計測するかどうか
+	 * @throws IllegalStateException JVM がスレッドごとの確保量を提供しない場合
+	 * @see #getAllocationMeter()
+	 */
+	public void setAllocationTracking(boolean tracking) {
+		meter = tracking ? new AllocationMeter() : null;
+	}
+	
+	/**
+	 * メモリの確保量の計測結果を取得します。
+	 * 
+	 * @return 計測結果、計測していない場合は null
+	 */
+	public AllocationMeter getAllocationMeter() {
+		return meter;
+	}
+	
+	/**
+	 * フレームごとの入力の記録先を設定します。
+	 * ゲームの初期状態から再生できるように、記録はアプレットの開始より前に設定してください。
+	 * 記録の終了は実行中でも構いません。終了した後で {@link InputRecorder#close()} を呼び出してください。
+	 * 
+	 * @param recorder 記録先、記録しない場合は null
+	 * @throws IllegalStateException ゲームが既にフレームを進めている場合や、記録先が既に使われている場合
+	 * @see InputReplay
+	 */
+	public void setInputRecorder(InputRecorder recorder) {
+		game.setInputRecorder(recorder);
+	}
+	
+	/**
+	 * フレームの待ち時間のうち、最後にスピン（ビジーウェイト）で待つ時間を設定します。
+	 * 0 より大きい値を指定すると、CPU を消費する代わりにフレームの間隔が1ms未満の精度で揃います。
+	 * 
+	 * @param spinThreshold スピンで待つ時間(ns)、0 の場合は sleep だけで待つ（初期値）
+	 * @see #getFrameStats()
+	 */
+	public void setSpinThreshold(long spinThreshold) {
+		fpscon.setSpinThreshold(spinThreshold);
+	}
+	
+	/**
+	 * 画面を描画するループの、フレームの間隔の統計を取得します。
+	 * 更新と描画を別々のスレッドで行う場合は、描画スレッドの統計になります。
+	 * 
+	 * @return フレームの統計
+	 */
+	public FrameStats getFrameStats() {
+		return fpscon.getStats();
+	}
+	
+	/**
+	 * ゲームに変化が無く、描画を省略できるかどうかを取得します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
+	 * 
+	 * @return 描画を省略できるかどうか
+	 * @see TICGame#isIdle()
+	 */
+	public boolean isIdle() {
+		return false;
+	}
+	
+	/**
+	 * 描画のスナップショットを作成します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
+	 * 
+	 * @return スナップショット、更新と描画を別々のスレッドで行わない場合は null
+	 * @see TICGame#snapshot()
+	 */
+	public Object snapshot() {
+		return null;
+	}
+	
+	/**
+	 * スナップショットから画面を描画します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
+	 * 
+	 * @param g Graphics2D
+	 * @param prev 1つ前の更新のスナップショット
+	 * @param curr 最新の更新のスナップショット
+	 * @param alpha 補間の割合（0 以上 1 以下）
+	 * @see TICGame#drawSnapshot(Graphics2D, Object, Object, float)
+	 */
+	public void drawSnapshot(Graphics2D g, Object prev, Object curr, float alpha) {}
+	
+	/**
+	 * 描画スレッドが使い終えたスナップショットを返します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
+	 * 
+	 * @param snapshot 使い終えたスナップショット
+	 * @see TICGame#releaseSnapshot(Object)
+	 */
+	public void releaseSnapshot(Object snapshot) {}
 	
 	/**
 	 * 画面を描画します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
 	 * 
 	 * @param g Graphics2D
 	 */
-	public abstract void drawCanvas(Graphics2D g);
+	public void drawCanvas(Graphics2D g) {}
 
 	/**
 	 * アプレットを初期化します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
 	 */
-	public abstract void initialize();
+	public void initialize() {}
 	
 	/**
 	 * ゲームを更新します。
+	 * コンストラクタで {@link TICGame} を渡した場合、このメソッドは呼び出されません。
 	 * 
 	 * @param elapsed 前フレームからの経過時間(ns)
 	 */
-	public abstract void updateFrame(long elapsed);
+	public void updateFrame(long elapsed) {}
 
 	/**
 	 * ゲームループのフレームレートを指定したFPSになるべく近づけるように設定します。
@@ -133,7 +590,7 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 * @param requestFPS FPSの目標値
 	 */
 	public void setRequestFPS(int requestFPS) {
-		fpscon = new FPSController(requestFPS);
+		game.setRequestFPS(requestFPS);
 	}
 	
 	/**
@@ -144,11 +601,7 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 * @see KeyEvent
 	 */
 	public final Key getKey(int keyCode) {
-		if (keyCode < 0 || keyCode >= KeyEvent.CHAR_UNDEFINED)
-			throw new IllegalArgumentException("使用できないキーです。");
-		Key ak = new Key(keyCode);
-		keyMap.put(keyCode, ak);
-		return ak;
+		return game.getKey(keyCode);
 	}
 	
 	/**
@@ -159,11 +612,7 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 * @see MouseEvent
 	 */
 	public final MouseButton getButton(int button) {
-		if (button <= 0 || button > MouseEvent.BUTTON3)
-			throw new IllegalArgumentException("使用できないボタンです。");
-		if (btnMap[button - 1] == null)
-			btnMap[button - 1] = new MouseButton(button);
-		return btnMap[button - 1];
+		return game.getButton(button);
 	}
 	
 	/**
@@ -172,7 +621,16 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	 * @return {@link Mouse}
 	 */
 	public final Mouse getMouse() {
-		return mouse;
+		return game.getMouse();
+	}
+	
+	/**
+	 * このアプレットが動かしているゲームを取得します。
+	 * 
+	 * @return ゲーム
+	 */
+	public final TICGame getGame() {
+		return game;
 	}
 
 	//-------------------------------------------------------------------------
@@ -214,6 +672,61 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 	//-------------------------------------------------------------------------
 	// インナクラス
 	//-------------------------------------------------------------------------
+	/*
+	 * アプレット自身のメソッドに処理を委譲するゲーム（TICApplet を直接継承した場合）
+	 */
+	private class AppletGame extends TICGame {
+		@Override
+		public void initialize() {
+			TICApplet.this.initialize();
+		}
+
+		@Override
+		public void updateFrame(long elapsed) {
+			TICApplet.this.updateFrame(elapsed);
+		}
+
+		@Override
+		public void drawCanvas(Graphics2D g) {
+			TICApplet.this.drawCanvas(g);
+		}
+
+		@Override
+		public Object snapshot() {
+			return TICApplet.this.snapshot();
+		}
+
+		@Override
+		public boolean isIdle() {
+			return TICApplet.this.isIdle();
+		}
+
+		@Override
+		public void drawSnapshot(Graphics2D g, Object prev, Object curr, float alpha) {
+			TICApplet.this.drawSnapshot(g, prev, curr, alpha);
+		}
+
+		@Override
+		public void releaseSnapshot(Object snapshot) {
+			TICApplet.this.releaseSnapshot(snapshot);
+		}
+	}
+	
+	/*
+	 * 更新スレッドから描画スレッドに渡す、連続する2回の更新のスナップショット（変更されない）
+	 */
+	private static class Snapshots {
+		final Object prev, curr;
+		final long time, period;
+		
+		Snapshots(Object prev, Object curr, long time, long period) {
+			this.prev = prev;
+			this.curr = curr;
+			this.time = time;
+			this.period = period;
+		}
+	}
+	
 	/*
 	 * キャンバス
 	 */
@@ -231,36 +744,67 @@ public abstract class TICApplet extends JApplet implements Runnable, KeyListener
 		
 		@Override
 		protected void processEvent(AWTEvent e) {
-			// キーイベント
-			if (e instanceof KeyEvent) {
-				Key key = keyMap.get(((KeyEvent)e).getKeyCode());
-				if (key != null) {
-					switch (e.getID()) {
-					case KeyEvent.KEY_PRESSED:  key.press();   break;
-					case KeyEvent.KEY_RELEASED: key.release(); break;
-					}
-				}
-			}
+			dispatchInput(e);
+			super.processEvent(e);
+		}
+		
+		@Override
+		protected void paintComponent(Graphics g) {
+			// ループが停止していても表示が消えないように、最後に描画した画像を転送する
+			g.drawImage(buffer, 0, 0, null);
+		}
+	}
+	
+	/*
+	 * BufferStrategy で表示するためのキャンバス（重量コンポーネント）
+	 */
+	class AcceleratedCanvas extends Canvas {
+		private static final long serialVersionUID = -3327416807012512466L;
+		
+		public AcceleratedCanvas() {
+			setFocusable(true);
 			
-			// マウスイベント
-			else if (e instanceof MouseEvent) {
-				MouseEvent me = (MouseEvent)e;
-	
-				mouse.setX(me.getX());
-				mouse.setY(me.getY());
-				
-				if (me.getButton() > MouseEvent.NOBUTTON) {
-					MouseButton btn = btnMap[me.getButton() - 1];
-					if (btn != null) {
-						switch (e.getID()) {
-						case MouseEvent.MOUSE_PRESSED:  btn.press();   break;
-						case MouseEvent.MOUSE_RELEASED: btn.release(); break;
-						}
-					}
-				}
-			}
+			// 描画はメインループで行うので、システムからの再描画要求は無視する
+			// （ループを停止する場合は、再描画要求でループを再開する）
+			setIgnoreRepaint(!idleMode);
 			
+			enableEvents(AWTEvent.KEY_EVENT_MASK | AWTEvent.MOUSE_EVENT_MASK | 
+					AWTEvent.MOUSE_MOTION_EVENT_MASK);
+		}
+		
+		@Override
+		protected void processEvent(AWTEvent e) {
+			dispatchInput(e);
 			super.processEvent(e);
 		}
+		
+		@Override
+		public void update(Graphics g) {
+			paint(g);
+		}
+		
+		@Override
+		public void paint(Graphics g) {
+			game.requestRedraw();
+		}
+	}
+	
+	/*
+	 * キャンバスのイベントをゲームの入力に反映する
+	 */
+	private void dispatchInput(AWTEvent e) {
+		// キーイベント
+		if (e instanceof KeyEvent)
+			game.getInput().dispatch((KeyEvent)e);
+		
+		// マウスイベント
+		else if (e instanceof MouseEvent)
+			game.getInput().dispatch((MouseEvent)e);
+		
+		else
+			return;
+		
+		// 停止しているループを再開する
+		game.wakeup();
 	}
 }
@@ -0,0 +1,320 @@
+package vip2011.tic;
+
+import java.awt.Graphics2D;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.locks.LockSupport;
+
+import vip2011.tic.event.InputSource;
+import vip2011.tic.event.Key;
+import vip2011.tic.event.Mouse;
+import vip2011.tic.event.MouseButton;
+
+/**
+ * 画面やアプレットに依存しない、ゲームの本体を表すクラスです。
+ * 
+ * <p>{@link #initialize()} で初期化し、フレームごとに {@link #updateFrame(long)} で状態を更新します。
+ * 画面に表示する場合は {@link #drawCanvas(Graphics2D)} をオーバライドしてください。</p>
+ * 
+ * <p>ゲームを動かすのはホストの役割です。アプレットとして動かす場合は {@link TICApplet} に、
+ * ディスプレイの無い環境で動かす場合は {@link HeadlessRunner} に、多数のゲームを少数のスレッドでまとめて動かす場合は
+ * {@link SessionHost} に渡してください。</p>
+ * <code><pre>
+ * public class MyApplet extends TICApplet {
+ *     public MyApplet() {
+ *         super(new MyGame());
+ *     }
+ * }
+ * 
+ * HeadlessRunner runner = new HeadlessRunner(new MyGame(), 640, 480);
+ * runner.run(10000);
+ * </pre></code>
+ */
+public abstract class TICGame {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private InputSource input = new InputSource();
+	private int width, height;
+	private int requestFPS;
+	private BufferedImage frameImage;
+	
+	/* ループを停止しているスレッドと、再開・再描画の要求 */
+	private volatile Thread waiter;
+	private volatile boolean woken;
+	private volatile boolean redrawRequested;
+	
+	/* 入力の記録先と、これまでに進めたフレーム数 */
+	private volatile InputRecorder recorder;
+	private volatile long frames;
+	
+	/* SessionHost で動かしている場合のセッション */
+	private volatile SessionHost.Session session;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * ゲームを初期化します。
+	 */
+	public abstract void initialize();
+
+	/**
+	 * ゲームを更新します。
+	 * 
+	 * @param elapsed 前フレームからの経過時間(ns)
+	 */
+	public abstract void updateFrame(long elapsed);
+
+	/*
+	 * 入力をこのフレームの状態として確定してから、ゲームを更新する（ホストが1フレームごとに呼び出す）
+	 */
+	void stepFrame(long elapsed) {
+		input.latch();
+		InputRecorder r = recorder;
+		if (r != null)
+			r.record(this, elapsed);
+		updateFrame(elapsed);
+		++frames;
+	}
+
+	/*
+	 * 入力の記録先を設定する（ホストから呼び出される）。記録の開始は最初のフレームより前に限る
+	 */
+	void setInputRecorder(InputRecorder recorder) {
+		if (recorder != null && recorder != this.recorder)
+			recorder.checkStart(frames);
+		this.recorder = recorder;
+	}
+
+	/**
+	 * 画面を描画します。
+	 * 描画の必要が無いゲームではオーバライドする必要はありません。
+	 * 
+	 * @param g Graphics2D
+	 */
+	public void drawCanvas(Graphics2D g) {
+	}
+
+	/**
+	 * 直前の {@link #updateFrame(long)} で状態が変わらず、入力があるまで更新も描画も必要無いかどうかを取得します。
+	 * 
+	 * <p>ホストが変化の無い間ループを停止する場合（{@link TICApplet#setIdleMode(boolean)}）、このメソッドが true を返すと
+	 * 描画が省略され、次の入力か {@link #requestRedraw()} の呼び出しまで {@link #updateFrame(long)} も呼び出されません。
+	 * 時間の経過で状態が変わる間（アニメーションや、別スレッドの処理の完了を待っている間など）は false を返してください。
+	 * 停止していた場合、次の {@link #updateFrame(long)} の経過時間には停止していた時間が含まれます。</p>
+	 * 
+	 * @return 入力があるまで何もしなくてよいかどうか（初期値は常に false）
+	 */
+	public boolean isIdle() {
+		return false;
+	}
+
+	/**
+	 * 次のフレームで画面を描画するように要求し、停止しているループを再開します。
+	 * どのスレッドから呼び出しても構いません。
+	 */
+	public void requestRedraw() {
+		redrawRequested = true;
+		wakeup();
+	}
+
+	/*
+	 * 停止しているループを再開する（入力があったときにホストから呼び出される）
+	 */
+	void wakeup() {
+		woken = true;
+		Thread t = waiter;
+		if (t != null)
+			LockSupport.unpark(t);
+		SessionHost.Session s = session;
+		if (s != null)
+			s.wakeup();
+	}
+
+	/*
+	 * SessionHost で動かす場合のセッションを設定する
+	 */
+	void setSession(SessionHost.Session session) {
+		this.session = session;
+	}
+
+	/*
+	 * wakeup が呼び出されるまで、呼び出したスレッドを停止する
+	 */
+	void awaitWakeup() {
+		waiter = Thread.currentThread();
+		while (!woken)
+			LockSupport.park(this);
+		woken = false;
+		waiter = null;
+	}
+
+	/*
+	 * 再描画の要求があったかどうかを返し、要求を取り消す
+	 */
+	boolean takeRedrawRequest() {
+		if (!redrawRequested)
+			return false;
+		redrawRequested = false;
+		return true;
+	}
+
+	/**
+	 * 描画に必要な状態のスナップショットを作成します。
+	 * 
+	 * <p>ホストが更新と描画を別々のスレッドで行う場合（{@link TICApplet#setThreadedLoop(boolean)}）、
+	 * このメソッドは {@link #updateFrame(long)} の直後に更新スレッドから呼び出され、
+	 * 作成したスナップショットは描画スレッドの {@link #drawSnapshot(Graphics2D, Object, Object, float)} に渡されます。
+	 * スナップショットは作成後に変更せず、ゲームの状態とオブジェクトを共有しないようにしてください。
+	 * 描画スレッドが使い終えたスナップショットは {@link #releaseSnapshot(Object)} で返されるので、
+	 * 保持しておいて次のスナップショットに再利用すると、更新ごとにオブジェクトを生成せずに済みます。</p>
+	 * 
+	 * @return スナップショット、別々のスレッドでの更新と描画に対応しない場合は null
+	 */
+	public Object snapshot() {
+		return null;
+	}
+
+	/**
+	 * スナップショットから画面を描画します。描画スレッドから呼び出されます。
+	 * 
+	 * <p>prev と curr は連続する2回の更新のスナップショットで、alpha はその間のどの時点を描画するかを表します。
+	 * 位置などを <code>prev + (curr - prev) * alpha</code> で補間して描画すると、
+	 * 更新の頻度より高いフレームレートで滑らかに表示できます。</p>
+	 * 
+	 * @param g Graphics2D
+	 * @param prev 1つ前の更新のスナップショット
+	 * @param curr 最新の更新のスナップショット
+	 * @param alpha 補間の割合（0 以上 1 以下）
+	 */
+	public void drawSnapshot(Graphics2D g, Object prev, Object curr, float alpha) {
+	}
+
+	/**
+	 * ゲームを破棄します。ホストがゲームを動かし終えたときに一度だけ呼び出されます。
+	 * 
+	 * <p>ゲームが作成したスレッドやメモリを多く使うオブジェクトは、このメソッドで解放してください。
+	 * 呼び出された後、{@link #updateFrame(long)} などが呼び出されることはありません。
+	 * 初期状態では何もしません。</p>
+	 * 
+	 * @see SessionHost.Session#close()
+	 */
+	public void dispose() {
+	}
+
+	/**
+	 * 描画スレッドが使い終えたスナップショットを返します。更新スレッドから呼び出されます。
+	 * 
+	 * <p>このメソッドが呼び出された後、snapshot はホストからも描画スレッドからも参照されないため、
+	 * 内容を書き換えて {@link #snapshot()} で再び返すことができます。
+	 * 初期状態では何もしません。</p>
+	 * 
+	 * @param snapshot 使い終えたスナップショット
+	 */
+	public void releaseSnapshot(Object snapshot) {
+	}
+
+	/**
+	 * ゲームループのフレームレートを指定したFPSになるべく近づけるように設定します。
+	 * 
+	 * @param requestFPS FPSの目標値
+	 */
+	public void setRequestFPS(int requestFPS) {
+		this.requestFPS = requestFPS;
+	}
+
+	/**
+	 * ゲームループのフレームレートの目標値を取得します。
+	 * 
+	 * @return FPSの目標値（指定されていない場合は 0）
+	 */
+	public int getRequestFPS() {
+		return requestFPS;
+	}
+
+	/**
+	 * 描画領域の横幅を取得します。
+	 * 
+	 * @return 描画領域の横幅
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * 描画領域の縦幅を取得します。
+	 * 
+	 * @return 描画領域の縦幅
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * 指定したキーを取得します。
+	 * 
+	 * @param keyCode キーコード（KeyEventクラスの定数）
+	 * @return {@link Key}
+	 * @see KeyEvent
+	 */
+	public final Key getKey(int keyCode) {
+		return input.getKey(keyCode);
+	}
+
+	/**
+	 * 指定したマウスボタンを取得します。
+	 * 
+	 * @param button ボタン（MouseEventクラスの定数）
+	 * @return {@link MouseButton}
+	 * @see MouseEvent
+	 */
+	public final MouseButton getButton(int button) {
+		return input.getButton(button);
+	}
+
+	/**
+	 * マウスを取得します。
+	 * 
+	 * @return {@link Mouse}
+	 */
+	public final Mouse getMouse() {
+		return input.getMouse();
+	}
+
+	/**
+	 * このゲームへの入力を取得します。
+	 * プログラムから入力を与える場合に利用してください。
+	 * 
+	 * @return {@link InputSource}
+	 */
+	public final InputSource getInput() {
+		return input;
+	}
+
+	/**
+	 * {@link #drawCanvas(Graphics2D)} の描画先の画像を取得します。
+	 * {@link BoardDrawer#draw(BufferedImage, int, int)} のように、画像の画素に直接書き込む場合に利用してください。
+	 * 
+	 * @return 描画先の画像、ホストが画像に描画していない場合は null
+	 */
+	public BufferedImage getFrameImage() {
+		return frameImage;
+	}
+
+	/*
+	 * ホストから描画先の画像を設定する
+	 */
+	void setFrameImage(BufferedImage frameImage) {
+		this.frameImage = frameImage;
+	}
+
+	/*
+	 * ホストから描画領域のサイズを設定する
+	 */
+	void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+}
@@ -0,0 +1,199 @@
+package vip2011.tic.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 入力イベントを時刻付きで受け渡す、大きさに上限のあるリングバッファです。
+ * 
+ * <p>イベントを入れるスレッド（イベントスレッド）と取り出すスレッド（ゲームループ）がそれぞれ1つだけの場合に、
+ * ロックを使わずに動作します。イベントは型・コード・座標・時刻の配列に直接書き込まれるため、
+ * イベントの受け渡しでオブジェクトが生成されることはありません。
+ * 取り出す側は {@link #available()} で件数を確定し、各イベントを読んでから {@link #remove(int)} で取り除きます。</p>
+ */
+public class InputQueue {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** キーが押されたことを表すイベントの型です。コードはキーコードです。 */
+	public static final int KEY_PRESSED = 1;
+	
+	/** キーが離されたことを表すイベントの型です。コードはキーコードです。 */
+	public static final int KEY_RELEASED = 2;
+	
+	/** マウスボタンが押されたことを表すイベントの型です。コードはボタン（MouseEventクラスの定数）です。 */
+	public static final int BUTTON_PRESSED = 3;
+	
+	/** マウスボタンが離されたことを表すイベントの型です。コードはボタン（MouseEventクラスの定数）です。 */
+	public static final int BUTTON_RELEASED = 4;
+	
+	/** マウスが移動したことを表すイベントの型です。コードは 0 です。 */
+	public static final int MOUSE_MOVED = 5;
+	
+	/** 容量の既定値です。 */
+	public static final int DEFAULT_CAPACITY = 1024;
+	
+	private final int mask;
+	private final int[] types, codes, xs, ys;
+	private final long[] times;
+	
+	/* 次に書き込む位置（入れる側だけが更新）と、次に読む位置（取り出す側だけが更新） */
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	
+	/* 入れる側が最後に読んだ tail の値 */
+	private long cachedTail;
+	
+	/* 入れる側だけが更新する、満杯で捨てたイベント数 */
+	private volatile long dropped;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 既定の容量でリングバッファを作成します。
+	 */
+	public InputQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * 指定した容量でリングバッファを作成します。
+	 * 容量は2のべき乗に切り上げられます。
+	 * 
+	 * @param capacity 容量
+	 */
+	public InputQueue(int capacity) {
+		if (capacity <= 0 || capacity > (1 << 24))
+			throw new IllegalArgumentException("不正な容量です。");
+		int n = Integer.highestOneBit(capacity);
+		if (n < capacity)
+			n <<= 1;
+		mask = n - 1;
+		types = new int[n];
+		codes = new int[n];
+		xs = new int[n];
+		ys = new int[n];
+		times = new long[n];
+	}
+	
+	/**
+	 * イベントを追加します。入れる側のスレッドから呼び出してください。
+	 * 
+	 * @param type イベントの型（{@link #KEY_PRESSED} など）
+	 * @param code キーコードまたはボタン
+	 * @param x マウスのX座標
+	 * @param y マウスのY座標
+	 * @param time 時刻(ns、{@link System#nanoTime()} の値)
+	 * @return 追加できた場合は true、満杯で捨てた場合は false
+	 */
+	public boolean offer(int type, int code, int x, int y, long time) {
+		long h = head.get();
+		if (h - cachedTail > mask) {
+			cachedTail = tail.get();
+			if (h - cachedTail > mask) {
+				dropped++;
+				return false;
+			}
+		}
+		int i = (int)h & mask;
+		types[i] = type;
+		codes[i] = code;
+		xs[i] = x;
+		ys[i] = y;
+		times[i] = time;
+		head.lazySet(h + 1);
+		return true;
+	}
+	
+	/**
+	 * 取り出せるイベントの数を取得します。取り出す側のスレッドから呼び出してください。
+	 * この時点までに追加されたイベントは、{@link #remove(int)} を呼び出すまで先頭から順に読むことができます。
+	 * 
+	 * @return イベント数
+	 */
+	public int available() {
+		return (int)(head.get() - tail.get());
+	}
+	
+	/**
+	 * 先頭から i 番目のイベントの型を取得します。
+	 * 
+	 * @param i 先頭からの位置（{@link #available()} 未満）
+	 * @return イベントの型
+	 */
+	public int getType(int i) {
+		return types[index(i)];
+	}
+	
+	/**
+	 * 先頭から i 番目のイベントのキーコードまたはボタンを取得します。
+	 * 
+	 * @param i 先頭からの位置（{@link #available()} 未満）
+	 * @return キーコードまたはボタン
+	 */
+	public int getCode(int i) {
+		return codes[index(i)];
+	}
+	
+	/**
+	 * 先頭から i 番目のイベントのマウスのX座標を取得します。
+	 * 
+	 * @param i 先頭からの位置（{@link #available()} 未満）
+	 * @return マウスのX座標
+	 */
+	public int getX(int i) {
+		return xs[index(i)];
+	}
+	
+	/**
+	 * 先頭から i 番目のイベントのマウスのY座標を取得します。
+	 * 
+	 * @param i 先頭からの位置（{@link #available()} 未満）
+	 * @return マウスのY座標
+	 */
+	public int getY(int i) {
+		return ys[index(i)];
+	}
+	
+	/**
+	 * 先頭から i 番目のイベントの時刻を取得します。
+	 * 
+	 * @param i 先頭からの位置（{@link #available()} 未満）
+	 * @return 時刻(ns)
+	 */
+	public long getTime(int i) {
+		return times[index(i)];
+	}
+	
+	/**
+	 * 先頭から n 個のイベントを取り除き、その場所を入れる側に返します。
+	 * 
+	 * @param n 取り除くイベントの数（{@link #available()} 以下）
+	 */
+	public void remove(int n) {
+		if (n > 0)
+			tail.lazySet(tail.get() + n);
+	}
+	
+	/**
+	 * 満杯のために捨てたイベントの数を取得します。
+	 * 
+	 * @return イベント数
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+	
+	/**
+	 * 容量を取得します。
+	 * 
+	 * @return 容量
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+	
+	private int index(int i) {
+		return (int)(tail.get() + i) & mask;
+	}
+}
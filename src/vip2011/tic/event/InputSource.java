@@ -0,0 +1,330 @@
+package vip2011.tic.event;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseEvent;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ゲームへの入力（キー、マウスボタン、マウス座標）をまとめて管理するクラスです。
+ * 
+ * <p>アプレットで動かす場合は AWT のイベントがこのクラスに転送されます。
+ * ディスプレイの無い環境で動かす場合は、{@link #pressKey(int)} や {@link #moveMouse(int, int)} などを
+ * 直接呼び出すことで、プログラムから入力を与えることができます。</p>
+ * 
+ * <p>入力の通知（{@link #dispatch(KeyEvent)} や {@link #pressKey(int)} など）は時刻付きのイベントとして
+ * {@link InputQueue} に入れられるだけで、キー・ボタン・マウスの状態はホストがフレームの始めに呼び出す {@link #latch()} で
+ * イベントを順に反映して求められます。そのため、フレームレートが低くても途中のマウスの移動や素早いクリックが失われず、
+ * イベントスレッドとゲームループの間でロックも使いません。通知は1つのスレッド（アプレットではイベントスレッド）から行い、
+ * 状態の問い合わせはゲームループのスレッドから行ってください。通知した入力は次のフレームから状態に反映されます。</p>
+ * <code><pre>
+ * InputSource input = game.getInput();
+ * input.moveMouse(120, 80);
+ * input.pressButton(MouseEvent.BUTTON1);
+ * runner.step();
+ * input.releaseButton(MouseEvent.BUTTON1);
+ * </pre></code>
+ */
+public class InputSource {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private Map<Integer, Key> keyMap = new HashMap<Integer, Key>();
+	private MouseButton[] btnMap = new MouseButton[3];
+	private Mouse mouse = new Mouse();
+	
+	/* latch() の対象（取得されたキーとボタン） */
+	private InputState[] states = new InputState[0];
+	
+	/* 通知されたイベントと、このフレームで取り出したイベント数 */
+	private final InputQueue queue;
+	private int eventCount;
+	
+	/* 通知する側が最後に知らせたマウスの座標 */
+	private int lastX, lastY;
+
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 既定の容量のリングバッファでイベントを受け渡す入力を作成します。
+	 */
+	public InputSource() {
+		this(InputQueue.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * 指定した容量のリングバッファでイベントを受け渡す入力を作成します。
+	 * 
+	 * @param capacity 1フレームの間に通知されるイベント数の上限
+	 */
+	public InputSource(int capacity) {
+		queue = new InputQueue(capacity);
+	}
+
+	/**
+	 * 指定したキーを取得します。
+	 * 
+	 * @param keyCode キーコード（KeyEventクラスの定数）
+	 * @return {@link Key}
+	 * @see KeyEvent
+	 */
+	public Key getKey(int keyCode) {
+		if (keyCode < 0 || keyCode >= KeyEvent.CHAR_UNDEFINED)
+			throw new IllegalArgumentException("使用できないキーです。");
+		Key key = keyMap.get(keyCode);
+		if (key == null) {
+			key = new Key(keyCode);
+			keyMap.put(keyCode, key);
+			addState(key);
+		}
+		return key;
+	}
+
+	/**
+	 * 指定したマウスボタンを取得します。
+	 * 
+	 * @param button ボタン（MouseEventクラスの定数）
+	 * @return {@link MouseButton}
+	 * @see MouseEvent
+	 */
+	public MouseButton getButton(int button) {
+		if (button <= 0 || button > MouseEvent.BUTTON3)
+			throw new IllegalArgumentException("使用できないボタンです。");
+		MouseButton btn = btnMap[button - 1];
+		if (btn == null) {
+			btn = new MouseButton(button);
+			btnMap[button - 1] = btn;
+			addState(btn);
+		}
+		return btn;
+	}
+
+	/**
+	 * マウスを取得します。
+	 * 
+	 * @return {@link Mouse}
+	 */
+	public Mouse getMouse() {
+		return mouse;
+	}
+
+	/**
+	 * これまでに通知された入力を取り出して、このフレームの状態として確定します。
+	 * ホストがフレームの始めにゲームループのスレッドから呼び出します。
+	 * 
+	 * <p>取り出したイベントは通知された順にキー・ボタン・マウスに反映され、次の呼び出しまで
+	 * {@link #getEventCount()} などで1つずつ参照できます。</p>
+	 * 
+	 * @see InputState#latch()
+	 */
+	public void latch() {
+		queue.remove(eventCount);
+		eventCount = queue.available();
+		for (int i = 0; i < eventCount; ++i) {
+			int code = queue.getCode(i);
+			switch (queue.getType(i)) {
+			case InputQueue.KEY_PRESSED: {
+				Key key = keyMap.get(code);
+				if (key != null)
+					key.press();
+				break;
+			}
+			case InputQueue.KEY_RELEASED: {
+				Key key = keyMap.get(code);
+				if (key != null)
+					key.release();
+				break;
+			}
+			case InputQueue.BUTTON_PRESSED: {
+				MouseButton btn = findButton(code);
+				if (btn != null)
+					btn.press();
+				break;
+			}
+			case InputQueue.BUTTON_RELEASED: {
+				MouseButton btn = findButton(code);
+				if (btn != null)
+					btn.release();
+				break;
+			}
+			}
+			mouse.setX(queue.getX(i));
+			mouse.setY(queue.getY(i));
+		}
+		for (InputState s : states)
+			s.latch();
+	}
+
+	/**
+	 * このフレームで取り出したイベントの数を取得します。
+	 * 
+	 * @return イベント数
+	 */
+	public int getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * このフレームで取り出した i 番目のイベントの型を取得します。
+	 * 
+	 * @param i イベントの番号（{@link #getEventCount()} 未満）
+	 * @return イベントの型（{@link InputQueue#KEY_PRESSED} など）
+	 */
+	public int getEventType(int i) {
+		return queue.getType(checkEvent(i));
+	}
+
+	/**
+	 * このフレームで取り出した i 番目のイベントのキーコードまたはボタンを取得します。
+	 * 
+	 * @param i イベントの番号（{@link #getEventCount()} 未満）
+	 * @return キーコードまたはボタン、マウスの移動の場合は 0
+	 */
+	public int getEventCode(int i) {
+		return queue.getCode(checkEvent(i));
+	}
+
+	/**
+	 * このフレームで取り出した i 番目のイベントが起きたときのマウスのX座標を取得します。
+	 * 
+	 * @param i イベントの番号（{@link #getEventCount()} 未満）
+	 * @return マウスのX座標
+	 */
+	public int getEventX(int i) {
+		return queue.getX(checkEvent(i));
+	}
+
+	/**
+	 * このフレームで取り出した i 番目のイベントが起きたときのマウスのY座標を取得します。
+	 * 
+	 * @param i イベントの番号（{@link #getEventCount()} 未満）
+	 * @return マウスのY座標
+	 */
+	public int getEventY(int i) {
+		return queue.getY(checkEvent(i));
+	}
+
+	/**
+	 * このフレームで取り出した i 番目のイベントが通知された時刻を取得します。
+	 * 
+	 * @param i イベントの番号（{@link #getEventCount()} 未満）
+	 * @return 時刻(ns、{@link System#nanoTime()} の値)
+	 */
+	public long getEventTime(int i) {
+		return queue.getTime(checkEvent(i));
+	}
+
+	/**
+	 * イベントを受け渡すリングバッファを取得します。
+	 * 
+	 * @return {@link InputQueue}
+	 */
+	public InputQueue getQueue() {
+		return queue;
+	}
+
+	/**
+	 * キーが押されたことを通知します。
+	 * {@link #getKey(int)} で取得されていないキーは無視されます。
+	 * 
+	 * @param keyCode キーコード
+	 */
+	public void pressKey(int keyCode) {
+		queue.offer(InputQueue.KEY_PRESSED, keyCode, lastX, lastY, System.nanoTime());
+	}
+
+	/**
+	 * キーが離されたことを通知します。
+	 * {@link #getKey(int)} で取得されていないキーは無視されます。
+	 * 
+	 * @param keyCode キーコード
+	 */
+	public void releaseKey(int keyCode) {
+		queue.offer(InputQueue.KEY_RELEASED, keyCode, lastX, lastY, System.nanoTime());
+	}
+
+	/**
+	 * マウスボタンが押されたことを通知します。
+	 * {@link #getButton(int)} で取得されていないボタンは無視されます。
+	 * 
+	 * @param button ボタン（MouseEventクラスの定数）
+	 */
+	public void pressButton(int button) {
+		queue.offer(InputQueue.BUTTON_PRESSED, button, lastX, lastY, System.nanoTime());
+	}
+
+	/**
+	 * マウスボタンが離されたことを通知します。
+	 * {@link #getButton(int)} で取得されていないボタンは無視されます。
+	 * 
+	 * @param button ボタン（MouseEventクラスの定数）
+	 */
+	public void releaseButton(int button) {
+		queue.offer(InputQueue.BUTTON_RELEASED, button, lastX, lastY, System.nanoTime());
+	}
+
+	/**
+	 * マウスが移動したことを通知します。
+	 * 
+	 * @param x マウスのX座標
+	 * @param y マウスのY座標
+	 */
+	public void moveMouse(int x, int y) {
+		lastX = x;
+		lastY = y;
+		queue.offer(InputQueue.MOUSE_MOVED, 0, x, y, System.nanoTime());
+	}
+
+	/**
+	 * AWTのイベントを対応する入力に変換します。
+	 * 
+	 * @param e キーイベント
+	 */
+	public void dispatch(KeyEvent e) {
+		switch (e.getID()) {
+		case KeyEvent.KEY_PRESSED:  pressKey(e.getKeyCode());   break;
+		case KeyEvent.KEY_RELEASED: releaseKey(e.getKeyCode()); break;
+		}
+	}
+
+	/**
+	 * AWTのイベントを対応する入力に変換します。
+	 * 
+	 * @param e マウスイベント
+	 */
+	public void dispatch(MouseEvent e) {
+		int id = e.getID();
+		if (e.getButton() > MouseEvent.NOBUTTON
+				&& (id == MouseEvent.MOUSE_PRESSED || id == MouseEvent.MOUSE_RELEASED)) {
+			lastX = e.getX();
+			lastY = e.getY();
+			if (id == MouseEvent.MOUSE_PRESSED)
+				pressButton(e.getButton());
+			else
+				releaseButton(e.getButton());
+		} else if (e.getX() != lastX || e.getY() != lastY) {
+			moveMouse(e.getX(), e.getY());
+		}
+	}
+
+	private int checkEvent(int i) {
+		if (i < 0 || i >= eventCount)
+			throw new IndexOutOfBoundsException("イベントの番号が範囲外です: " + i);
+		return i;
+	}
+
+	/*
+	 * 範囲外のボタンは null
+	 */
+	private MouseButton findButton(int button) {
+		return (button > 0 && button <= btnMap.length) ? btnMap[button - 1] : null;
+	}
+
+	private void addState(InputState state) {
+		InputState[] a = new InputState[states.length + 1];
+		System.arraycopy(states, 0, a, 0, states.length);
+		a[states.length] = state;
+		states = a;
+	}
+}
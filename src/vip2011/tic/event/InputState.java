@@ -1,74 +1,70 @@
 package vip2011.tic.event;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 入力状態を保持するクラスです。
+ * 
+ * <p>入力の通知（{@link #press()}、{@link #release()}）はイベントスレッドなど任意のスレッドから、
+ * 問い合わせ（{@link #isDown()} など）はゲームループのスレッドから呼び出します。
+ * 押された・離された回数は1つのアトミックなカウンタに積み上げられ、ホストがフレームの始めに呼び出す
+ * {@link #latch()} で、前のフレームからの差分がそのフレームの状態として確定します。
+ * そのため、ロックを使わずに、フレームの間に押して離された場合も含めて全ての変化を1フレームにつき1回ずつ観測できます。
+ * 問い合わせは状態を変更しないので、同じフレームの中で何度呼び出しても同じ結果になります。</p>
  */
 public class InputState {
-	/** 入力が無い状態を表す定数です。 */
-	protected static final int FREE = 0;
-	
-	/** 入力が押された瞬間を表す定数です。 */
-	protected static final int DOWN = 1;
-	
-	/** 入力が押されている状態を表す定数です。 */
-	protected static final int HOLD = 2;
+	/* 押された・離された回数の合計。奇数なら押されている */
+	private final AtomicInteger edges = new AtomicInteger();
 	
-	/** 入力が離された瞬間を表す定数です。 */
-	protected static final int UP = 3;
-	
-	public int state = FREE;
+	/* 以下はゲームループのスレッドだけが読み書きする、latch() で確定した状態 */
+	private int latched;
+	private int downCount, upCount;
+	private boolean held;
 
 	/**
 	 * 入力が無い状態かどうかを調べます。
 	 * 
 	 * @return 入力が無い状態かどうか
 	 */
-	public synchronized boolean isFree() {
-		return state == FREE;
+	public boolean isFree() {
+		return !held && downCount == 0 && upCount == 0;
 	}
 	
 	/**
-	 * 入力が押された瞬間かどうかを調べます。
+	 * このフレームで入力が押されたかどうかを調べます。
 	 * 
-	 * @return 入力が押された瞬間かどうか
+	 * @return 入力が押されたかどうか
 	 */
-	public synchronized boolean isDown() {
-		if (state == DOWN) {
-			state = HOLD;
-			return true;
-		}
-		return false;
+	public boolean isDown() {
+		return downCount > 0;
 	}
 	
 	/**
-	 * 入力が押されている状態かどうかを調べます。
+	 * 前のフレームから入力が押され続けているかどうかを調べます。
 	 * 
-	 * @return 入力が押されている状態かどうか
+	 * @return 入力が押され続けているかどうか
 	 */
-	public synchronized boolean isHold() {
-		return state == HOLD;
+	public boolean isHold() {
+		return held && downCount == 0;
 	}
 
 	/**
-	 * 入力が離された瞬間かどうかを調べます。
+	 * このフレームで入力が離されたかどうかを調べます。
 	 * 
-	 * @return 入力が離された瞬間かどうか
+	 * @return 入力が離されたかどうか
 	 */
-	public synchronized boolean isUp() {
-		if (state == UP) {
-			state = FREE;
-			return true;
-		}
-		return false;
+	public boolean isUp() {
+		return upCount > 0;
 	}
 	
 	/**
 	 * 入力が押されているどうかを調べます。
 	 * このメソッドは <code>isDown() || isHold()</code> と等価です。
+	 * フレームの間に押して離された場合も true になります。
 	 * 
 	 * @return 入力があるかどうか
 	 */
-	public synchronized boolean isPressed() {
+	public boolean isPressed() {
 		return isDown() || isHold();
 	}
 	
@@ -78,23 +74,68 @@ public class InputState {
 	 * 
 	 * @return 入力が離されたかどうか
 	 */
-	public synchronized boolean isReleased() {
+	public boolean isReleased() {
 		return isUp();
 	}
 	
+	/**
+	 * このフレームで入力が押された回数を取得します。
+	 * 
+	 * @return 押された回数
+	 */
+	public int getDownCount() {
+		return downCount;
+	}
+	
+	/**
+	 * このフレームで入力が離された回数を取得します。
+	 * 
+	 * @return 離された回数
+	 */
+	public int getUpCount() {
+		return upCount;
+	}
+	
 	/**
 	 * 入力があったことを通知します。
+	 * 既に押されている場合は何もしません。
 	 */
-	public synchronized void press() {
-		if (!isPressed())	state = DOWN;
-		else				state = HOLD;
+	public void press() {
+		while (true) {
+			int e = edges.get();
+			if ((e & 1) != 0 || edges.compareAndSet(e, e + 1))
+				return;
+		}
 	}
 	
 	/**
 	 * 入力が離されたことを通知します。
+	 * 押されていない場合は何もしません。
 	 */
-	public synchronized void release() {
-		if (isPressed())	state = UP;
-		else				state = FREE;
+	public void release() {
+		while (true) {
+			int e = edges.get();
+			if ((e & 1) == 0 || edges.compareAndSet(e, e + 1))
+				return;
+		}
+	}
+	
+	/**
+	 * 前回の呼び出しからの変化を、このフレームの状態として確定します。
+	 * ホストがフレームの始めにゲームループのスレッドから呼び出します。
+	 */
+	public void latch() {
+		int e = edges.get();
+		int d = e - latched;
+		// 押されていた状態からは「離す」が先、そうでなければ「押す」が先に来る
+		if ((latched & 1) == 0) {
+			downCount = (d + 1) >>> 1;
+			upCount = d >>> 1;
+		} else {
+			downCount = d >>> 1;
+			upCount = (d + 1) >>> 1;
+		}
+		held = (e & 1) != 0;
+		latched = e;
 	}
 }
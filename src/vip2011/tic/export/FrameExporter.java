@@ -0,0 +1,357 @@
+package vip2011.tic.export;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ゲームの描画結果を1フレームずつファイルに書き出すクラスの基底クラスです。
+ * 
+ * <p>{@link #submit(BufferedImage)} は画像の画素を使い回しのバッファにコピーするだけで戻り、
+ * 変換（PNG の圧縮や色空間の変換など）は複数の変換スレッドで並列に、書き込みは専用のスレッドで
+ * フレームの順に行われます。コピー用のバッファと書き込み待ちのフレームの数は作成時に指定した数で制限されます。
+ * 上限に達した場合、初期状態では変換と書き込みが追いつくまで {@link #submit(BufferedImage)} が待つため、
+ * 全てのフレームが書き出される代わりに、呼び出し側のスレッドも書き込みの速さに合わせて遅くなります。
+ * {@link #setDropWhenFull(boolean)} を指定すると、上限に達したフレームを捨てて直ちに戻るため、
+ * 呼び出し側のスレッドがファイルの入出力を待つことはありません。</p>
+ * <code><pre>
+ * FrameExporter exporter = new PngSequenceExporter(new File("frames"), "gomoku");
+ * HeadlessRunner runner = new HeadlessRunner(new Gomoku(), 640, 480);
+ * runner.setExporter(exporter);
+ * runner.run(600);
+ * exporter.close();
+ * </pre></code>
+ * 
+ * <p>継承したクラスでは、フレームを並列に変換する {@link #encode(int[], int, int, long)} と、
+ * 変換結果を順に書き込む {@link #write(long, byte[])}、最後に呼び出される {@link #finish()} を実装してください。</p>
+ */
+public abstract class FrameExporter {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	/** 変換スレッド数の既定値（プロセッサ数）です。 */
+	public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+	
+	/** 同時に保持するフレーム数の既定値です。 */
+	public static final int DEFAULT_CAPACITY = 16;
+	
+	/* 書き込みスレッドに終了を知らせる印 */
+	private static final Future<byte[]> END = new FutureTask<byte[]>(new Callable<byte[]>() {
+		public byte[] call() {
+			return null;
+		}
+	});
+	
+	private final int threads;
+	private final int capacity;
+	private final BlockingQueue<int[]> buffers;
+	private final BlockingQueue<Future<byte[]>> pending;
+	
+	/* 最初のフレームを受け付けたときに作成する */
+	private ExecutorService encoders;
+	private Thread writer;
+	
+	private int width = -1, height = -1;
+	private int allocated;
+	private long submitted, dropped;
+	private boolean dropWhenFull;
+	private boolean closed;
+	private volatile long written;
+	private volatile Throwable error;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 既定の変換スレッド数と保持するフレーム数で作成します。
+	 */
+	protected FrameExporter() {
+		this(DEFAULT_THREADS, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * 指定した変換スレッド数と保持するフレーム数で作成します。
+	 * 変換スレッドと書き込みスレッドは、最初のフレームを受け付けたときに開始されます。
+	 * 
+	 * @param threads 変換スレッド数
+	 * @param capacity 変換中・書き込み待ちとして同時に保持するフレーム数の上限
+	 */
+	protected FrameExporter(int threads, int capacity) {
+		if (threads <= 0 || capacity <= 0)
+			throw new IllegalArgumentException("スレッド数またはフレーム数が不正です。");
+		this.threads = threads;
+		this.capacity = capacity;
+		this.buffers = new ArrayBlockingQueue<int[]>(capacity);
+		this.pending = new ArrayBlockingQueue<Future<byte[]>>(capacity);
+	}
+	
+	/*
+	 * 変換スレッドと書き込みスレッドを開始する
+	 */
+	private void startThreads() {
+		final String name = getClass().getSimpleName();
+		encoders = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name + "-encoder");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		writer = new Thread(new Runnable() {
+			public void run() {
+				runWriter();
+			}
+		}, name + "-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * 画像を次のフレームとして書き出します。
+	 * 画素はこのメソッドの中でコピーされるので、戻った後は画像を変更して構いません。
+	 * 全てのフレームは同じ大きさでなければなりません。
+	 * 上限に達している場合、フレームを捨てる設定でなければ空きができるまで待ちます。
+	 * 
+	 * @param image 画像
+	 * @return フレームを受け付けた場合は true、上限に達していて捨てた場合は false
+	 * @throws IllegalStateException 書き出しが終了している場合や、以前のフレームの書き出しに失敗していた場合
+	 */
+	public boolean submit(BufferedImage image) {
+		if (closed)
+			throw new IllegalStateException("書き出しは終了しています。");
+		checkError();
+		if (width < 0) {
+			start(image.getWidth(), image.getHeight());
+			startThreads();
+			width = image.getWidth();
+			height = image.getHeight();
+		} else if (image.getWidth() != width || image.getHeight() != height) {
+			throw new IllegalArgumentException("フレームの大きさが一致しません。");
+		}
+		
+		final int[] buffer = obtainBuffer();
+		if (buffer == null) {
+			++dropped;
+			return false;
+		}
+		copyPixels(image, buffer);
+		
+		final long index = submitted++;
+		Future<byte[]> f = encoders.submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				try {
+					return encode(buffer, width, height, index);
+				} finally {
+					buffers.offer(buffer);
+				}
+			}
+		});
+		putPending(f);
+		return true;
+	}
+	
+	/*
+	 * 空いているバッファを取得する。上限に達していて捨てる場合は null
+	 */
+	private int[] obtainBuffer() {
+		// 送り手はこのスレッドだけなので、ここで空きがあれば putPending() で待つことはない
+		if (dropWhenFull && pending.remainingCapacity() == 0)
+			return null;
+		int[] buffer = buffers.poll();
+		if (buffer == null && allocated < capacity) {
+			++allocated;
+			return new int[width * height];
+		}
+		if (buffer != null)
+			return buffer;
+		if (dropWhenFull)
+			return null;
+		try {
+			return buffers.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private void putPending(Future<byte[]> f) {
+		try {
+			pending.put(f);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/*
+	 * 画像の画素を ARGB 形式でバッファにコピーする
+	 */
+	private static void copyPixels(BufferedImage image, int[] buffer) {
+		int w = image.getWidth(), h = image.getHeight();
+		int type = image.getType();
+		if ((type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB)
+				&& image.getRaster().getSampleModel() instanceof SinglePixelPackedSampleModel
+				&& image.getRaster().getParent() == null) {
+			int stride = ((SinglePixelPackedSampleModel)image.getRaster().getSampleModel()).getScanlineStride();
+			int[] src = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			for (int y = 0; y < h; ++y)
+				System.arraycopy(src, y * stride, buffer, y * w, w);
+		} else {
+			image.getRGB(0, 0, w, h, buffer, 0, w);
+		}
+	}
+	
+	/*
+	 * 書き込みスレッド。変換の終わったフレームを順に書き込む
+	 */
+	private void runWriter() {
+		long index = 0;
+		try {
+			while (true) {
+				Future<byte[]> f = pending.take();
+				if (f == END)
+					break;
+				byte[] data;
+				try {
+					data = f.get();
+				} catch (ExecutionException e) {
+					throw e.getCause();
+				}
+				write(index++, data);
+				written = index;
+			}
+		} catch (Throwable e) {
+			error = e;
+			// 送り手が待ち続けないように、残りを捨てる
+			pending.clear();
+		}
+	}
+	
+	private void checkError() {
+		if (error != null)
+			throw new IllegalStateException("フレームの書き出しに失敗しました。", error);
+	}
+	
+	/**
+	 * 全てのフレームの書き出しが終わるのを待ち、書き出しを終了します。
+	 * 書き出しに失敗していた場合も、{@link #finish()} は呼び出されます。
+	 * 
+	 * @throws IOException 書き出しに失敗した場合
+	 */
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (writer != null) {
+				if (error == null)
+					putPending(END);
+				try {
+					writer.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					encoders.shutdown();
+				}
+			}
+		} finally {
+			try {
+				finish();
+			} catch (IOException e) {
+				// 先に起きた失敗を優先して報告する
+				if (error == null)
+					error = e;
+			}
+		}
+		if (error instanceof IOException)
+			throw (IOException)error;
+		if (error != null)
+			throw new IOException(error);
+	}
+	
+	/**
+	 * 上限に達したときにフレームを捨てるかどうかを設定します。
+	 * 捨てない場合（初期状態）は、{@link #submit(BufferedImage)} が変換と書き込みの終わりを待って空きができるまで戻りません。
+	 * 
+	 * @param dropWhenFull 上限に達したときにフレームを捨てるかどうか
+	 */
+	public void setDropWhenFull(boolean dropWhenFull) {
+		this.dropWhenFull = dropWhenFull;
+	}
+	
+	/**
+	 * 受け付けたフレームの数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public long getSubmittedCount() {
+		return submitted;
+	}
+	
+	/**
+	 * 上限に達していたために捨てたフレームの数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+	
+	/**
+	 * 書き込みの終わったフレームの数を取得します。
+	 * 
+	 * @return フレーム数
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+	
+	/**
+	 * 最初のフレームを受け付けたときに、書き込みスレッドより前に呼び出されます。
+	 * ヘッダの準備などに利用してください。
+	 * 
+	 * @param width フレームの横幅
+	 * @param height フレームの縦幅
+	 */
+	protected void start(int width, int height) {
+	}
+	
+	/**
+	 * 1フレームを変換します。このメソッドは複数の変換スレッドから並列に呼び出されます。
+	 * 
+	 * @param pixels フレームの画素（ARGB 形式、行優先）。メソッドから戻った後は別のフレームに使われます
+	 * @param width フレームの横幅
+	 * @param height フレームの縦幅
+	 * @param index フレームの番号（0から）
+	 * @return 書き込むデータ
+	 * @throws IOException 変換に失敗した場合
+	 */
+	protected abstract byte[] encode(int[] pixels, int width, int height, long index) throws IOException;
+	
+	/**
+	 * 変換したフレームを書き込みます。このメソッドは書き込みスレッドからフレームの順に呼び出されます。
+	 * 
+	 * @param index フレームの番号（0から）
+	 * @param data {@link #encode(int[], int, int, long)} の結果
+	 * @throws IOException 書き込みに失敗した場合
+	 */
+	protected abstract void write(long index, byte[] data) throws IOException;
+	
+	/**
+	 * 全てのフレームを書き込んだ後、または書き出しに失敗した後で {@link #close()} から呼び出されます。
+	 * ファイルを閉じるなどの処理を行ってください。
+	 * 
+	 * @throws IOException 失敗した場合
+	 */
+	protected abstract void finish() throws IOException;
+}
@@ -0,0 +1,98 @@
+package vip2011.tic.export;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * フレームを連番の PNG ファイルとして書き出すクラスです。
+ * 
+ * <p>ファイル名は「接頭辞 + 6桁のフレーム番号 + .png」（例: <code>gomoku000042.png</code>）になります。
+ * PNG の圧縮は変換スレッドで並列に行われ、書き込みスレッドは圧縮済みのデータをファイルに書くだけです。
+ * アルファ値は書き出されません。</p>
+ */
+public class PngSequenceExporter extends FrameExporter {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private final File directory;
+	private final String prefix;
+	
+	/* 変換スレッドごとの作業用の画像 */
+	private final ThreadLocal<BufferedImage> images = new ThreadLocal<BufferedImage>();
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したディレクトリに書き出すクラスを、既定の変換スレッド数と保持するフレーム数で作成します。
+	 * 
+	 * @param directory 書き出し先のディレクトリ。存在しない場合は作成されます
+	 * @param prefix ファイル名の接頭辞
+	 * @throws IOException ディレクトリを作成できない場合
+	 */
+	public PngSequenceExporter(File directory, String prefix) throws IOException {
+		this(directory, prefix, DEFAULT_THREADS, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * 指定したディレクトリに書き出すクラスを作成します。
+	 * 
+	 * @param directory 書き出し先のディレクトリ。存在しない場合は作成されます
+	 * @param prefix ファイル名の接頭辞
+	 * @param threads 変換スレッド数
+	 * @param capacity 同時に保持するフレーム数の上限
+	 * @throws IOException ディレクトリを作成できない場合
+	 */
+	public PngSequenceExporter(File directory, String prefix, int threads, int capacity) throws IOException {
+		super(threads, capacity);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("ディレクトリを作成できません: " + directory);
+		this.directory = directory;
+		this.prefix = prefix;
+	}
+	
+	/**
+	 * 指定したフレームの書き出し先のファイルを取得します。
+	 * 
+	 * @param index フレームの番号（0から）
+	 * @return ファイル
+	 */
+	public File getFile(long index) {
+		return new File(directory, String.format("%s%06d.png", prefix, index));
+	}
+	
+	@Override
+	protected byte[] encode(int[] pixels, int width, int height, long index) throws IOException {
+		BufferedImage image = images.get();
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			images.set(image);
+		}
+		image.setRGB(0, 0, width, height, pixels, 0, width);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(width * height);
+		if (!ImageIO.write(image, "png", out))
+			throw new IOException("PNG の書き出しに対応していません。");
+		return out.toByteArray();
+	}
+	
+	@Override
+	protected void write(long index, byte[] data) throws IOException {
+		OutputStream out = new FileOutputStream(getFile(index));
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+	}
+	
+	@Override
+	protected void finish() {
+	}
+}
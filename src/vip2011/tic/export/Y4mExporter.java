@@ -0,0 +1,120 @@
+package vip2011.tic.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * フレームを無圧縮の動画形式 YUV4MPEG2（.y4m）で書き出すクラスです。
+ * 
+ * <p>各フレームは BT.601（限定範囲）の YUV 4:2:0 に変換されます。色空間の変換は変換スレッドで並列に行われ、
+ * 書き込みスレッドは変換済みのフレームを順にストリームへ書くだけです。
+ * 横幅・縦幅が奇数の場合、色差の平面の大きさは切り上げになります。
+ * 書き出したファイルは <code>ffmpeg -i out.y4m out.mp4</code> などで圧縮できます。</p>
+ */
+public class Y4mExporter extends FrameExporter {
+	//-------------------------------------------------------------------------
+	// フィールド
+	//-------------------------------------------------------------------------
+	private static final byte[] FRAME_HEADER = { 'F', 'R', 'A', 'M', 'E', '\n' };
+	
+	private final OutputStream out;
+	private final int fps;
+	
+	//-------------------------------------------------------------------------
+	// メソッド
+	//-------------------------------------------------------------------------
+	/**
+	 * 指定したファイルに書き出すクラスを、既定の変換スレッド数と保持するフレーム数で作成します。
+	 * 
+	 * @param file 書き出し先のファイル
+	 * @param fps 動画のフレームレート
+	 * @throws IOException ファイルを開けない場合
+	 */
+	public Y4mExporter(File file, int fps) throws IOException {
+		this(open(file, fps), fps, DEFAULT_THREADS, DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * 指定したストリームに書き出すクラスを作成します。
+	 * ストリームは {@link #close()} で閉じられます。
+	 * 
+	 * @param out 書き出し先のストリーム
+	 * @param fps 動画のフレームレート
+	 * @param threads 変換スレッド数
+	 * @param capacity 同時に保持するフレーム数の上限
+	 */
+	public Y4mExporter(OutputStream out, int fps, int threads, int capacity) {
+		super(threads, capacity);
+		this.out = new BufferedOutputStream(out, 1 << 16);
+		this.fps = checkFps(fps);
+	}
+	
+	/*
+	 * フレームレートを確かめてからファイルを開く（不正な場合にファイルを開いたままにしない）
+	 */
+	private static OutputStream open(File file, int fps) throws IOException {
+		checkFps(fps);
+		return new FileOutputStream(file);
+	}
+	
+	private static int checkFps(int fps) {
+		if (fps <= 0)
+			throw new IllegalArgumentException("不正なフレームレートです。");
+		return fps;
+	}
+	
+	@Override
+	protected void start(int width, int height) {
+		String header = "YUV4MPEG2 W" + width + " H" + height + " F" + fps + ":1 Ip A1:1 C420jpeg\n";
+		try {
+			out.write(header.getBytes("US-ASCII"));
+		} catch (IOException e) {
+			throw new IllegalStateException("ヘッダを書き出せません。", e);
+		}
+	}
+	
+	@Override
+	protected byte[] encode(int[] pixels, int width, int height, long index) {
+		int cw = (width + 1) / 2, ch = (height + 1) / 2;
+		int ySize = width * height, cSize = cw * ch;
+		byte[] data = new byte[FRAME_HEADER.length + ySize + cSize * 2];
+		System.arraycopy(FRAME_HEADER, 0, data, 0, FRAME_HEADER.length);
+		int yp = FRAME_HEADER.length, up = yp + ySize, vp = up + cSize;
+		
+		for (int i = 0; i < ySize; ++i) {
+			int c = pixels[i];
+			int r = (c >> 16) & 0xFF, g = (c >> 8) & 0xFF, b = c & 0xFF;
+			data[yp + i] = (byte)(((66 * r + 129 * g + 25 * b + 128) >> 8) + 16);
+		}
+		
+		// 2x2 の画素の平均から色差を求める
+		for (int cy = 0; cy < ch; ++cy) {
+			int y0 = cy * 2, y1 = Math.min(y0 + 1, height - 1);
+			for (int cx = 0; cx < cw; ++cx) {
+				int x0 = cx * 2, x1 = Math.min(x0 + 1, width - 1);
+				int c00 = pixels[y0 * width + x0], c01 = pixels[y0 * width + x1];
+				int c10 = pixels[y1 * width + x0], c11 = pixels[y1 * width + x1];
+				int r = (((c00 >> 16) & 0xFF) + ((c01 >> 16) & 0xFF) + ((c10 >> 16) & 0xFF) + ((c11 >> 16) & 0xFF) + 2) >> 2;
+				int g = (((c00 >>  8) & 0xFF) + ((c01 >>  8) & 0xFF) + ((c10 >>  8) & 0xFF) + ((c11 >>  8) & 0xFF) + 2) >> 2;
+				int b = (( c00        & 0xFF) + ( c01        & 0xFF) + ( c10        & 0xFF) + ( c11        & 0xFF) + 2) >> 2;
+				int i = cy * cw + cx;
+				data[up + i] = (byte)(((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+				data[vp + i] = (byte)(((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+			}
+		}
+		return data;
+	}
+	
+	@Override
+	protected void write(long index, byte[] data) throws IOException {
+		out.write(data);
+	}
+	
+	@Override
+	protected void finish() throws IOException {
+		out.close();
+	}
+}